@@ -0,0 +1,178 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.bukkit.damage.DamageSource;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Bytes allocated per call on the combat path and the upgrade path, from
+ * JMH's GC profiler ({@code -prof gc}). {@link #main} runs it and fails when
+ * gc.alloc.rate.norm is over {@link #BUDGET}, so it fits in CI:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar me.yusufkerem.AllocationBenchmark
+ * </pre>
+ *
+ * CombatBenchmark's Mockito mocks allocate on every call, so here players are
+ * plain proxies that only answer getUniqueId, and the event keeps its damage
+ * in a field: Bukkit's own damage modifier map boxes doubles, which is the
+ * server's garbage, not the plugin's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+
+    // bytes per call; the damage handler must not allocate at all
+    private static final Map<String, Double> BUDGET = Map.of(
+            "nonPlayerEntity", 0.5,
+            "fallDamage", 0.5,
+            "playerVsPlayer", 0.5,
+            // each change publishes a new PlayerData with its own level map (about 770 B with the reset)
+            "upgrade", 1024.0);
+
+    /** An EntityDamageByEntityEvent that doesn't box its damage. */
+    private static final class Hit extends EntityDamageByEntityEvent {
+        private double damage;
+
+        Hit(Entity damager, Entity victim, DamageCause cause) {
+            super(damager, victim, cause, mock(DamageSource.class), 6.0);
+            this.damage = 6.0;
+        }
+
+        @Override
+        public double getDamage() {
+            return damage;
+        }
+
+        @Override
+        public void setDamage(double damage) {
+            this.damage = damage;
+        }
+    }
+
+    private CombatListener listener;
+    private Hit mobHit;
+    private Hit fall;
+    private Hit pvpHit;
+    private PlayerProfile upgrading;
+
+    @Setup
+    public void setup() {
+        Map<UUID, PlayerProfile> profiles = new ConcurrentHashMap<>();
+        for (ProfileSnapshot snap : BenchData.profiles(1000)) {
+            profiles.put(snap.uuid(), new PlayerProfile(snap));
+        }
+
+        // as in CombatBenchmark: the attacker has no Rabies, a PotionEffect needs a live registry
+        PlayerProfile victimProf = new PlayerProfile(UUID.randomUUID(), Role.AGGRESSIVE);
+        victimProf.setLevel(Ability.PROTECTIVE_FUR, Ability.PROTECTIVE_FUR.maxLevel());
+        PlayerProfile attackerProf = new PlayerProfile(UUID.randomUUID(), Role.AGGRESSIVE);
+        profiles.put(victimProf.uuid, victimProf);
+        profiles.put(attackerProf.uuid, attackerProf);
+        // metrics on: the timer must not allocate either
+        listener = new CombatListener(profiles, new Messages(Logger.getLogger("bench")), new Metrics(true));
+
+        Player victim = entity(Player.class, victimProf.uuid);
+        Player attacker = entity(Player.class, attackerProf.uuid);
+        Entity mob = entity(Entity.class, UUID.randomUUID());
+        mobHit = new Hit(attacker, mob, DamageCause.ENTITY_ATTACK);
+        fall = new Hit(mob, victim, DamageCause.FALL);
+        pvpHit = new Hit(attacker, victim, DamageCause.ENTITY_ATTACK);
+
+        // wired into the leaderboard like a loaded profile
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.ready();
+        upgrading = new PlayerProfile(UUID.randomUUID(), Role.AGGRESSIVE, leaderboard);
+        upgrading.setBloodPoints(CATSMPMC.MAX_BP);
+    }
+
+    // answers getUniqueId and nothing else, so a new call in the handler shows up as an error
+    private static <T extends Entity> T entity(Class<T> type, UUID uuid) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getUniqueId" -> uuid;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> type.getSimpleName() + " " + uuid;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }));
+    }
+
+    @Benchmark
+    public void nonPlayerEntity() {
+        listener.onEntityDamage(mobHit);
+    }
+
+    @Benchmark
+    public void fallDamage() {
+        fall.setCancelled(false);
+        listener.onEntityDamage(fall);
+    }
+
+    @Benchmark
+    public void playerVsPlayer() {
+        pvpHit.setDamage(6.0);
+        listener.onEntityDamage(pvpHit);
+    }
+
+    // what a menu click does to the profile; once Protective Fur is maxed the level and BP are
+    // reset, so the budget is per upgrade with that reset spread over the calls
+    @Benchmark
+    public PlayerProfile.Upgrade upgrade() {
+        PlayerProfile.Upgrade result = upgrading.upgrade(Ability.PROTECTIVE_FUR);
+        if (result.result() != PlayerProfile.UpgradeResult.UPGRADED) {
+            upgrading.setLevel(Ability.PROTECTIVE_FUR, 0);
+            upgrading.setBloodPoints(CATSMPMC.MAX_BP);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(AllocationBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+        boolean over = false;
+        for (RunResult r : results) {
+            String name = r.getParams().getBenchmark();
+            name = name.substring(name.lastIndexOf('.') + 1);
+            Result<?> alloc = r.getSecondaryResults().get("gc.alloc.rate.norm");
+            if (alloc == null) {
+                System.err.println(name + ": no gc.alloc.rate.norm, is this a HotSpot JVM?");
+                over = true;
+                continue;
+            }
+            double budget = BUDGET.getOrDefault(name, 0.5);
+            boolean ok = alloc.getScore() <= budget;
+            System.out.printf(Locale.ROOT, "%-16s %10.1f B/op  (budget %.1f)%s%n", name, alloc.getScore(), budget,
+                    ok ? "" : "  OVER");
+            over |= !ok;
+        }
+        System.exit(over ? 1 : 0);
+    }
+}
@@ -0,0 +1,61 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic fake profiles and store helpers shared by the benchmarks.
+ */
+final class BenchData {
+
+    private BenchData() {
+    }
+
+    static List<ProfileSnapshot> profiles(int count) {
+        Random rnd = new Random(42);
+        List<ProfileSnapshot> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Role role = rnd.nextBoolean() ? Role.PASSIVE : Role.AGGRESSIVE;
+            byte[] levels = new byte[Ability.count()];
+            for (Ability a : Ability.values()) {
+                if (a.role() == role)
+                    levels[a.ordinal()] = (byte) rnd.nextInt(a.maxLevel() + 1);
+            }
+            list.add(new ProfileSnapshot(new UUID(rnd.nextLong(), rnd.nextLong()), role,
+                    rnd.nextInt(CATSMPMC.MAX_BP + 1), rnd.nextBoolean(), levels));
+        }
+        return list;
+    }
+
+    static ProfileStore open(String storage, Path dir) throws IOException {
+        return switch (storage) {
+            case "yaml" -> new YamlProfileStore(dir.resolve("data.yml").toFile());
+            case "sharded" -> new ShardedProfileStore(dir.resolve("players").toFile());
+            case "binary" -> new BinaryProfileStore(dir.resolve("profiles.dat").toFile());
+            case "sqlite" -> new SqliteProfileStore(dir.resolve("profiles.db").toFile(), 4);
+            case "shared" -> new SharedProfileStore(Logger.getLogger("bench"), dir.resolve("shared"),
+                    new DirectorySyncChannel(Logger.getLogger("bench"), dir.resolve("shared/bus"), "bench", 250));
+            default -> throw new IllegalArgumentException("unknown storage " + storage);
+        };
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir))
+            return;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package me.yusufkerem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The binary store against data.yml up to a million stored profiles, past
+ * where StartupBenchmark and PersistenceBenchmark stop. {@code startup} opens
+ * the store and reads one profile, as onEnable and the first pre-login do;
+ * the others run against a store that is already open.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+// a million profiles in a YamlConfiguration tree do not fit in 4 GB
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class BinaryStoreBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    int stored;
+
+    @Param({ "yaml", "binary" })
+    String storage;
+
+    private Path dir;
+    private ProfileStore store;
+    private List<ProfileSnapshot> all;
+    private UUID sample;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("catsmpmc-bench");
+        all = BenchData.profiles(stored);
+        sample = all.get(all.size() / 2).uuid();
+        store = BenchData.open(storage, dir);
+        store.save(all);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        BenchData.delete(dir);
+    }
+
+    private ProfileSnapshot nextProfile() {
+        ProfileSnapshot snap = all.get(next);
+        next = (next + 1) % all.size();
+        return snap;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    public ProfileSnapshot startup() throws IOException {
+        ProfileStore opened = BenchData.open(storage, dir);
+        try {
+            return opened.load(sample);
+        } finally {
+            opened.close();
+        }
+    }
+
+    @Benchmark
+    public ProfileSnapshot load() throws IOException {
+        return store.load(nextProfile().uuid());
+    }
+
+    @Benchmark
+    public void savePlayer() throws IOException {
+        store.save(List.of(nextProfile()));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    public void saveAllData() throws IOException {
+        store.save(all);
+    }
+}
@@ -0,0 +1,103 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The EntityDamageEvent path (formerly onEntityDamageByEntity, onEntityDamage
+ * and onFall). Players and events are Mockito mocks, so absolute numbers
+ * include mock dispatch; compare runs against each other, not against a live
+ * server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombatBenchmark {
+
+    // loaded profiles besides the two fighters, to give the map a realistic size
+    @Param({ "100", "1000" })
+    int online;
+
+    private CombatListener listener;
+    private EntityDamageEvent mobHit;
+    private EntityDamageEvent playerHit;
+    private EntityDamageEvent fall;
+    private EntityDamageByEntityEvent pvpHit;
+
+    @Setup
+    public void setup() {
+        Map<UUID, PlayerProfile> profiles = new ConcurrentHashMap<>();
+        for (ProfileSnapshot snap : BenchData.profiles(online)) {
+            profiles.put(snap.uuid(), new PlayerProfile(snap));
+        }
+
+        // aggressive victim with max Protective Fur; attacker without Rabies so no
+        // PotionEffect is ever built (that needs a live registry)
+        PlayerProfile victimProf = new PlayerProfile(UUID.randomUUID(), Role.AGGRESSIVE);
+        victimProf.setLevel(Ability.PROTECTIVE_FUR, Ability.PROTECTIVE_FUR.maxLevel());
+        PlayerProfile attackerProf = new PlayerProfile(UUID.randomUUID(), Role.AGGRESSIVE);
+        profiles.put(victimProf.uuid, victimProf);
+        profiles.put(attackerProf.uuid, attackerProf);
+        listener = new CombatListener(profiles, new Messages(Logger.getLogger("bench")), new Metrics(false));
+
+        Player victim = mock(Player.class);
+        when(victim.getUniqueId()).thenReturn(victimProf.uuid);
+        Player attacker = mock(Player.class);
+        when(attacker.getUniqueId()).thenReturn(attackerProf.uuid);
+
+        mobHit = mock(EntityDamageEvent.class);
+        when(mobHit.getEntity()).thenReturn(mock(Entity.class));
+        when(mobHit.getCause()).thenReturn(EntityDamageEvent.DamageCause.ENTITY_ATTACK);
+
+        playerHit = mock(EntityDamageEvent.class);
+        when(playerHit.getEntity()).thenReturn(victim);
+        when(playerHit.getCause()).thenReturn(EntityDamageEvent.DamageCause.ENTITY_ATTACK);
+        when(playerHit.getDamage()).thenReturn(6.0);
+
+        fall = mock(EntityDamageEvent.class);
+        when(fall.getEntity()).thenReturn(victim);
+        when(fall.getCause()).thenReturn(EntityDamageEvent.DamageCause.FALL);
+
+        pvpHit = mock(EntityDamageByEntityEvent.class);
+        when(pvpHit.getEntity()).thenReturn(victim);
+        when(pvpHit.getDamager()).thenReturn(attacker);
+        when(pvpHit.getCause()).thenReturn(EntityDamageEvent.DamageCause.ENTITY_ATTACK);
+        when(pvpHit.getDamage()).thenReturn(6.0);
+    }
+
+    @Benchmark
+    public void nonPlayerEntity() {
+        listener.onEntityDamage(mobHit);
+    }
+
+    @Benchmark
+    public void playerDamage() {
+        listener.onEntityDamage(playerHit);
+    }
+
+    @Benchmark
+    public void fallDamage() {
+        listener.onEntityDamage(fall);
+    }
+
+    @Benchmark
+    public void playerVsPlayer() {
+        listener.onEntityDamage(pvpHit);
+    }
+}
@@ -0,0 +1,622 @@
+package me.yusufkerem;
+
+import com.destroystokyo.paper.event.player.PlayerJumpEvent;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerToggleSneakEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.util.Vector;
+import org.mockito.MockSettings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Synthetic load: thousands of fake players sending a configurable mix of
+ * damage, deaths, jumps, sneak toggles, upgrade menu clicks and joins/quits
+ * through the plugin's listeners, one simulated 50 ms tick at a time. Reports
+ * per-tick cost percentiles, per-handler timings, allocation on the tick
+ * thread and GC activity. Runs on a plain JVM, so it fits in CI:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar me.yusufkerem.LoadGenerator \
+ *     --players 5000 --online 2000 --events 400 --ticks 1200 --max-p99-ms 5
+ * </pre>
+ *
+ * The components are wired up the way onEnable does it, journal and audit
+ * log included, and every event goes through the plugin's own handlers:
+ * ProfileListener (pre-login on a login thread, join, quit, death, the
+ * upgrade menu and the dash), CombatListener and ComboEngine. Left out:
+ * potion effects and attributes, since EffectReconciler needs a live
+ * registry, and for the same reason Rabies is installed with a 0% chance,
+ * so it is upgraded like any other ability but never applies Wither.
+ * <p>
+ * Players and events are stub-only Mockito mocks, so as in the JMH benchmarks
+ * absolute numbers include mock dispatch and its garbage; compare runs against
+ * each other. Ticks are paced at 50 ms like a server unless {@code --unpaced}
+ * is given; combo windows are measured in wall-clock ticks, so unpaced runs
+ * trigger more combos than a real server would.
+ */
+public final class LoadGenerator {
+
+    private static final long TICK_NANOS = 50_000_000L;
+    private static final MockSettings STUB = withSettings().stubOnly();
+
+    enum Kind {
+        DAMAGE, FALL, DEATH, JUMP, SNEAK, CLICK, JOIN
+    }
+
+    private static final class Options {
+        int players = 2000;
+        int online = 1000;
+        int events = 200; // per tick, on average
+        int ticks = 1200;
+        int warmup = 200;
+        int flushTicks = 100;
+        int offlineCache = 1000;
+        String storage = "binary";
+        long seed = 1;
+        boolean paced = true;
+        double maxP99Millis = 0; // 0: never fail
+        // weights, in Kind order
+        int[] mix = { 50, 10, 2, 15, 15, 6, 2 };
+    }
+
+    private static final class Fake {
+        final UUID uuid;
+        final Player player;
+        boolean online;
+        boolean sneaking;
+        int slot = -1; // position in the online array
+        Inventory open; // the upgrade menu, while it is open
+        Player killer; // for the next death
+
+        Fake(UUID uuid, Location look, Runnable dashed) {
+            this.uuid = uuid;
+            this.player = mock(Player.class, STUB);
+            when(player.getUniqueId()).thenReturn(uuid);
+            when(player.getName()).thenReturn("p" + uuid.toString().substring(0, 8));
+            when(player.isSneaking()).thenAnswer(i -> sneaking);
+            when(player.getKiller()).thenAnswer(i -> killer);
+            when(player.getLocation()).thenReturn(look);
+            when(player.openInventory(any(Inventory.class))).thenAnswer(i -> {
+                open = i.getArgument(0);
+                return null;
+            });
+            doAnswer(i -> {
+                open = null;
+                return null;
+            }).when(player).closeInventory();
+            doAnswer(i -> {
+                dashed.run();
+                return null;
+            }).when(player).setVelocity(any(Vector.class));
+        }
+    }
+
+    private final Options opt;
+    private final Random rnd;
+    private final Logger logger = Logger.getLogger("LoadGenerator");
+
+    // the plugin's state, wired up the way onEnable does it
+    private final Metrics metrics = new Metrics(true);
+    private final Map<UUID, PlayerProfile> profiles = new ConcurrentHashMap<>();
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final Cooldowns cooldowns = new Cooldowns();
+    private final Messages messages = new Messages(logger);
+    private final ProfileStore store;
+    private final BpJournal journal;
+    private final AuditLog audit;
+    private final ProfileWriter writer;
+    private final ProfileCache offline;
+    private final CombatListener combat;
+    private final ComboEngine combos;
+    private final ProfileListener players;
+
+    private final Fake[] fakes;
+    private final Fake[] onlineFakes;
+    private int onlineCount;
+    // pre-login reads happen off the tick thread, the join itself on the next tick
+    private final ExecutorService login = Executors.newSingleThreadExecutor();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor();
+    private final ConcurrentLinkedQueue<Fake> joins = new ConcurrentLinkedQueue<>();
+    private final int mixTotal;
+    private final Map<Kind, Long> counts = new LinkedHashMap<>();
+    private long dashes;
+
+    // one mock per event type, pointed at different players as the run goes
+    private final EntityDamageByEntityEvent hit = mock(EntityDamageByEntityEvent.class, STUB);
+    private final PlayerJumpEvent jump = mock(PlayerJumpEvent.class, STUB);
+    private final PlayerToggleSneakEvent sneak = mock(PlayerToggleSneakEvent.class, STUB);
+    private final PlayerJoinEvent joinEvent = mock(PlayerJoinEvent.class, STUB);
+    private final PlayerQuitEvent quitEvent = mock(PlayerQuitEvent.class, STUB);
+    private final PlayerDeathEvent deathEvent = mock(PlayerDeathEvent.class, STUB);
+    private final InventoryClickEvent clickEvent = mock(InventoryClickEvent.class, STUB);
+    private final Entity mob = mock(Entity.class, STUB);
+    private Fake victim;
+    private Fake attacker;
+    private EntityDamageEvent.DamageCause cause;
+    private int rawSlot;
+
+    private LoadGenerator(Options opt, Path dir) throws IOException {
+        this.opt = opt;
+        this.rnd = new Random(opt.seed);
+        this.mixTotal = Arrays.stream(opt.mix).sum();
+        this.store = BenchData.open(opt.storage, dir);
+        this.journal = new BpJournal(logger, dir.resolve("journal"), 10L);
+        this.audit = new AuditLog(logger, dir.resolve("audit"), 16384, 1000L, 16L, 90L);
+        PlayerProfile.ChangeListener changes = PlayerProfile.ChangeListener.of(journal, leaderboard);
+        this.writer = new ProfileWriter(logger, store, this::snapshot, metrics.timer("storage", "flush"));
+        this.offline = new ProfileCache(opt.offlineCache, writer::release);
+        this.combat = new CombatListener(profiles, messages, metrics);
+        // the messages.yml a fresh server starts with (action bar, rate limits)
+        try (InputStream in = CATSMPMC.class.getResourceAsStream("/messages.yml")) {
+            if (in != null)
+                messages.load(YamlConfiguration.loadConfiguration(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        }
+        this.combos = new ComboEngine(List.of(new ComboEngine.Combo("zoom", Ability.ZOOM,
+                new ComboEngine.Input[] { ComboEngine.Input.JUMP, ComboEngine.Input.SNEAK }, 6, false)),
+                this::triggerCombo, metrics);
+        this.players = new ProfileListener(logger, store, writer, profiles, offline, changes, cooldowns, combos, null,
+                messages, audit, metrics);
+
+        // everyone has played before
+        fakes = new Fake[opt.players];
+        onlineFakes = new Fake[opt.players];
+        List<ProfileSnapshot> stored = BenchData.profiles(opt.players);
+        // looking a little up and to the side, so the dash has a real direction
+        Location look = new Location(null, 0, 64, 0, 30f, -10f);
+        for (int i = 0; i < opt.players; i++) {
+            ProfileSnapshot g = stored.get(i);
+            leaderboard.seed(g.uuid(), g.bloodPoints());
+            fakes[i] = new Fake(g.uuid(), look, () -> dashes++);
+        }
+        store.save(stored);
+        leaderboard.ready();
+
+        when(hit.getEntity()).thenAnswer(i -> victim == null ? mob : victim.player);
+        when(hit.getDamager()).thenAnswer(i -> attacker == null ? mob : attacker.player);
+        when(hit.getCause()).thenAnswer(i -> cause);
+        when(hit.getDamage()).thenReturn(6.0);
+        when(jump.getPlayer()).thenAnswer(i -> victim.player);
+        when(sneak.getPlayer()).thenAnswer(i -> victim.player);
+        when(sneak.isSneaking()).thenAnswer(i -> victim.sneaking);
+        when(joinEvent.getPlayer()).thenAnswer(i -> victim.player);
+        when(quitEvent.getPlayer()).thenAnswer(i -> victim.player);
+        when(deathEvent.getEntity()).thenAnswer(i -> victim.player);
+        when(clickEvent.getInventory()).thenAnswer(i -> victim.open);
+        when(clickEvent.getWhoClicked()).thenAnswer(i -> victim.player);
+        when(clickEvent.getRawSlot()).thenAnswer(i -> rawSlot);
+        for (Kind k : Kind.values()) {
+            counts.put(k, 0L);
+        }
+
+        for (int i = 0; i < Math.min(opt.online, opt.players); i++) {
+            preLogin(fakes[i]);
+            join(fakes[i]);
+        }
+        // dirty from the joins above; written before measuring starts
+        writer.flushAndWait(60);
+    }
+
+    // -------------------------
+    // Simulation
+    // -------------------------
+    private long tick() {
+        long start = System.nanoTime();
+        for (Fake f; (f = joins.poll()) != null;) {
+            join(f);
+        }
+        int n = mixTotal == 0 ? 0 : rnd.nextInt(2 * opt.events + 1);
+        for (int i = 0; i < n && onlineCount > 0; i++) {
+            Kind kind = pick();
+            counts.merge(kind, 1L, Long::sum);
+            event(kind);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private Kind pick() {
+        int r = rnd.nextInt(mixTotal);
+        for (int k = 0; k < opt.mix.length; k++) {
+            r -= opt.mix[k];
+            if (r < 0)
+                return Kind.values()[k];
+        }
+        return Kind.DAMAGE;
+    }
+
+    private Fake anyOnline() {
+        return onlineFakes[rnd.nextInt(onlineCount)];
+    }
+
+    private void event(Kind kind) {
+        switch (kind) {
+            case DAMAGE -> {
+                victim = anyOnline();
+                // a third of the hits come from mobs
+                attacker = rnd.nextInt(3) == 0 ? null : anyOnline();
+                cause = EntityDamageEvent.DamageCause.ENTITY_ATTACK;
+                combat.onEntityDamage(hit);
+            }
+            case FALL -> {
+                victim = anyOnline();
+                attacker = null;
+                cause = EntityDamageEvent.DamageCause.FALL;
+                combat.onEntityDamage(hit);
+            }
+            case DEATH -> {
+                Fake v = anyOnline();
+                Fake k = anyOnline();
+                if (v != k)
+                    death(v, k);
+            }
+            case JUMP -> {
+                victim = anyOnline();
+                combos.onJump(jump);
+            }
+            case SNEAK -> {
+                victim = anyOnline();
+                victim.sneaking = !victim.sneaking;
+                combos.onSneakToggle(sneak);
+            }
+            case CLICK -> click(anyOnline(), rnd.nextInt(9));
+            case JOIN -> {
+                Fake f = fakes[rnd.nextInt(fakes.length)];
+                if (f.online) {
+                    quit(f);
+                } else {
+                    login.execute(() -> {
+                        preLogin(f);
+                        joins.add(f);
+                    });
+                }
+            }
+        }
+    }
+
+    private Stats run() {
+        for (int i = 0; i < opt.warmup; i++) {
+            runTick(i);
+        }
+        metrics.reset();
+        Stats stats = new Stats(opt.ticks);
+        stats.begin();
+        for (int i = 0; i < opt.ticks; i++) {
+            stats.tickNanos[i] = runTick(opt.warmup + i);
+        }
+        stats.end();
+        return stats;
+    }
+
+    private long runTick(int i) {
+        long start = System.nanoTime();
+        long cost = tick();
+        if (i % opt.flushTicks == 0)
+            flusher.execute(writer::flush);
+        if (opt.paced) {
+            long left = TICK_NANOS - (System.nanoTime() - start);
+            if (left > 0)
+                LockSupport.parkNanos(left);
+        }
+        return cost;
+    }
+
+    private void close() throws InterruptedException {
+        login.shutdown();
+        login.awaitTermination(10, TimeUnit.SECONDS);
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        for (int i = onlineCount - 1; i >= 0; i--) {
+            writer.markDirty(onlineFakes[i].uuid);
+        }
+        writer.shutdown(30);
+        journal.close();
+        audit.close();
+        store.close();
+    }
+
+    // -------------------------
+    // Events, through the plugin's handlers
+    // -------------------------
+
+    // login thread; the profile read here waits in ProfileListener for the join
+    private void preLogin(Fake f) {
+        AsyncPlayerPreLoginEvent e = mock(AsyncPlayerPreLoginEvent.class, STUB);
+        when(e.getUniqueId()).thenReturn(f.uuid);
+        when(e.getLoginResult()).thenReturn(AsyncPlayerPreLoginEvent.Result.ALLOWED);
+        players.onPreLogin(e);
+    }
+
+    private void join(Fake f) {
+        if (f.online)
+            return;
+        victim = f;
+        players.onPlayerJoin(joinEvent);
+        f.online = true;
+        f.slot = onlineCount;
+        onlineFakes[onlineCount++] = f;
+    }
+
+    private void quit(Fake f) {
+        victim = f;
+        players.onPlayerQuit(quitEvent);
+        f.online = false;
+        f.sneaking = false;
+        f.open = null;
+        Fake last = onlineFakes[--onlineCount];
+        onlineFakes[f.slot] = last;
+        last.slot = f.slot;
+        onlineFakes[onlineCount] = null;
+        f.slot = -1;
+    }
+
+    private void death(Fake v, Fake k) {
+        victim = v;
+        v.killer = k.player;
+        players.onPlayerDeath(deathEvent);
+        v.killer = null;
+    }
+
+    // the menu is opened on the first click, then clicked in
+    private void click(Fake f, int slot) {
+        if (f.open == null) {
+            players.openUpgradeMenu(f.player);
+            return;
+        }
+        victim = f;
+        rawSlot = slot;
+        players.onInventoryClick(clickEvent);
+        // players close the menu now and then
+        if (rnd.nextInt(4) == 0)
+            f.open = null;
+    }
+
+    // players is created after the combo engine it uses
+    private void triggerCombo(Player p, Ability ability) {
+        players.triggerCombo(p, ability);
+    }
+
+    private ProfileSnapshot snapshot(UUID uuid) {
+        PlayerProfile prof = profiles.get(uuid);
+        if (prof == null)
+            prof = offline.peek(uuid);
+        return prof == null ? null : prof.snapshot();
+    }
+
+    // -------------------------
+    // Measurements
+    // -------------------------
+    private static final class Stats {
+        final long[] tickNanos;
+        private long gcCount;
+        private long gcMillis;
+        private long allocated;
+        private long wallNanos;
+        private long[] sorted;
+
+        Stats(int ticks) {
+            tickNanos = new long[ticks];
+        }
+
+        void begin() {
+            gcCount = -gcCount();
+            gcMillis = -gcMillis();
+            allocated = -allocatedBytes();
+            wallNanos = -System.nanoTime();
+        }
+
+        void end() {
+            gcCount += gcCount();
+            gcMillis += gcMillis();
+            allocated += allocatedBytes();
+            wallNanos += System.nanoTime();
+        }
+
+        private static long gcCount() {
+            long n = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                n += Math.max(0, gc.getCollectionCount());
+            }
+            return n;
+        }
+
+        private static long gcMillis() {
+            long n = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                n += Math.max(0, gc.getCollectionTime());
+            }
+            return n;
+        }
+
+        // only the tick thread: that is the garbage the server's main/region threads would make
+        private static long allocatedBytes() {
+            return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean t
+                    ? t.getCurrentThreadAllocatedBytes() : 0L;
+        }
+
+        long percentile(double q) {
+            if (sorted == null) {
+                sorted = tickNanos.clone();
+                Arrays.sort(sorted);
+            }
+            return sorted[Math.max(0, Math.min(sorted.length - 1, (int) Math.ceil(q * sorted.length) - 1))];
+        }
+    }
+
+    private void report(Stats s) {
+        long over = Arrays.stream(s.tickNanos).filter(n -> n > TICK_NANOS).count();
+        System.out.printf(Locale.ROOT, "%d players (%d online at the end), %s storage, %d ticks%s%n",
+                opt.players, onlineCount, opt.storage, opt.ticks, opt.paced ? "" : " unpaced");
+        StringBuilder mix = new StringBuilder();
+        counts.forEach((k, n) -> mix.append(' ').append(k.name().toLowerCase(Locale.ROOT)).append('=').append(n));
+        System.out.println("events:" + mix + ", dashes=" + dashes);
+        System.out.printf(Locale.ROOT, "tick cost: p50 %s  p90 %s  p99 %s  p99.9 %s  max %s  (%d over 50ms)%n",
+                Metrics.formatNanos(s.percentile(0.5)), Metrics.formatNanos(s.percentile(0.9)),
+                Metrics.formatNanos(s.percentile(0.99)), Metrics.formatNanos(s.percentile(0.999)),
+                Metrics.formatNanos(s.percentile(1.0)), over);
+        System.out.printf(Locale.ROOT, "tick thread allocated %.1f MB (%.1f KB/tick, %.1f MB/s)%n",
+                s.allocated / 1048576.0, s.allocated / 1024.0 / Math.max(1, opt.ticks),
+                s.allocated / 1048576.0 / Math.max(1e-9, s.wallNanos / 1e9));
+        System.out.printf(Locale.ROOT, "GC: %d collections, %d ms (%.2f%% of %.1fs)%n", s.gcCount, s.gcMillis,
+                s.gcMillis * 100.0 / Math.max(1.0, s.wallNanos / 1e6), s.wallNanos / 1e9);
+        System.out.printf(Locale.ROOT, "%-28s %10s %10s %10s %10s%n", "handler", "count", "avg", "p99", "max");
+        for (Metrics.Timer t : metrics.timers()) {
+            if (t.count() == 0)
+                continue;
+            System.out.printf(Locale.ROOT, "%-28s %10d %10s %10s %10s%n", t.kind + "/" + t.name, t.count(),
+                    Metrics.formatNanos(t.avgNanos()), Metrics.formatNanos(t.percentileNanos(0.99)),
+                    Metrics.formatNanos(t.maxNanos()));
+        }
+        System.out.printf(Locale.ROOT, "writer: %d flushes, avg %.1f ms, max %.1f ms, %d failures%n",
+                writer.flushCount(), writer.avgFlushMillis(), writer.maxFlushMillis(), writer.failureCount());
+    }
+
+    // -------------------------
+    // Command line
+    // -------------------------
+    private static Options parse(String[] args) {
+        Options o = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("--unpaced")) {
+                o.paced = false;
+                continue;
+            }
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException(a + " needs a value");
+            String v = args[++i];
+            switch (a) {
+                case "--players" -> o.players = Integer.parseInt(v);
+                case "--online" -> o.online = Integer.parseInt(v);
+                case "--events" -> o.events = Integer.parseInt(v);
+                case "--ticks" -> o.ticks = Integer.parseInt(v);
+                case "--warmup" -> o.warmup = Integer.parseInt(v);
+                case "--flush-ticks" -> o.flushTicks = Math.max(1, Integer.parseInt(v));
+                case "--offline-cache" -> o.offlineCache = Integer.parseInt(v);
+                case "--storage" -> o.storage = v.toLowerCase(Locale.ROOT);
+                case "--seed" -> o.seed = Long.parseLong(v);
+                case "--max-p99-ms" -> o.maxP99Millis = Double.parseDouble(v);
+                case "--mix" -> o.mix = parseMix(v);
+                default -> throw new IllegalArgumentException("unknown option " + a);
+            }
+        }
+        if (o.players < 2 || o.online < 2 || o.ticks < 1)
+            throw new IllegalArgumentException("need at least 2 players online and 1 tick");
+        return o;
+    }
+
+    // "damage=50,death=2,..."; kinds left out get weight 0
+    private static int[] parseMix(String spec) {
+        int[] mix = new int[Kind.values().length];
+        for (String part : spec.split(",")) {
+            String[] kv = part.split("=", 2);
+            if (kv.length != 2)
+                throw new IllegalArgumentException("mix entries look like damage=50, not " + part);
+            mix[Kind.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = Integer.parseInt(kv[1].trim());
+        }
+        return mix;
+    }
+
+    private static void installServer() {
+        // stub-only: nothing is recorded, so millions of calls don't pile up in memory
+        Server server = mock(Server.class, withSettings().stubOnly().defaultAnswer(RETURNS_DEEP_STUBS));
+        when(server.getLogger()).thenReturn(Logger.getLogger("LoadGenerator"));
+        when(server.createInventory(any(), anyInt(), anyString())).thenAnswer(i -> {
+            // ProfileListener tells its menu apart by the holder
+            InventoryHolder holder = i.getArgument(0);
+            Inventory inv = mock(Inventory.class, STUB);
+            when(inv.getHolder(false)).thenReturn(holder);
+            return inv;
+        });
+        Bukkit.setServer(server);
+    }
+
+    // the built-in abilities.yml, except that Rabies never triggers (see the class comment)
+    private static void installAbilities() throws IOException {
+        try (InputStream in = CATSMPMC.class.getResourceAsStream("/abilities.yml")) {
+            if (in == null)
+                throw new IOException("abilities.yml is missing from the classpath");
+            YamlConfiguration cfg = YamlConfiguration.loadConfiguration(new InputStreamReader(in,
+                    StandardCharsets.UTF_8));
+            cfg.set("rabies.effect", Collections.nCopies(cfg.getInt("rabies.max-level"), 0.0));
+            AbilityTable.install(AbilityTable.compile(cfg, null));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt;
+        try {
+            opt = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadGenerator [--players n] [--online n] [--events per-tick] [--ticks n]"
+                    + " [--warmup n] [--flush-ticks n] [--offline-cache n] [--storage yaml|sharded|binary|sqlite]"
+                    + " [--seed n] [--mix damage=50,fall=10,death=2,jump=15,sneak=15,click=6,join=2]"
+                    + " [--max-p99-ms ms] [--unpaced]");
+            System.exit(2);
+            return;
+        }
+        installServer();
+        installAbilities();
+        Path dir = Files.createTempDirectory("catsmp-load");
+        Stats stats;
+        try {
+            LoadGenerator gen = new LoadGenerator(opt, dir);
+            stats = gen.run();
+            gen.close();
+            gen.report(stats);
+        } finally {
+            BenchData.delete(dir);
+        }
+        double p99 = stats.percentile(0.99) / 1e6;
+        if (opt.maxP99Millis > 0 && p99 > opt.maxP99Millis) {
+            System.err.printf(Locale.ROOT, "p99 tick cost %.2f ms is over the limit of %.2f ms%n", p99,
+                    opt.maxP99Millis);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,81 @@
+package me.yusufkerem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * savePlayer / saveAllData against a store that already holds N profiles.
+ * <p>
+ * {@code markDirty} is what savePlayer costs the tick thread now; the
+ * {@code store*} benchmarks are the writer thread's share of a flush.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    int stored;
+
+    @Param({ "yaml", "sharded", "binary", "sqlite", "shared" })
+    String storage;
+
+    private Path dir;
+    private ProfileStore store;
+    private ProfileWriter writer;
+    private List<ProfileSnapshot> all;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("catsmpmc-bench");
+        all = BenchData.profiles(stored);
+        store = BenchData.open(storage, dir);
+        store.save(all);
+        writer = new ProfileWriter(Logger.getLogger("bench"), store, uuid -> null,
+                new Metrics(false).timer("storage", "flush"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        BenchData.delete(dir);
+    }
+
+    private ProfileSnapshot nextProfile() {
+        ProfileSnapshot snap = all.get(next);
+        next = (next + 1) % all.size();
+        return snap;
+    }
+
+    @Benchmark
+    public void savePlayerMarkDirty() {
+        UUID uuid = nextProfile().uuid();
+        writer.markDirty(uuid);
+        writer.flush(); // snapshotter returns null: only the bookkeeping, no I/O
+    }
+
+    @Benchmark
+    public void savePlayerStore() throws IOException {
+        store.save(List.of(nextProfile()));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    public void saveAllData() throws IOException {
+        store.save(all);
+    }
+}
@@ -0,0 +1,59 @@
+package me.yusufkerem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What onEnable pays to get at the stored profiles. The yaml store parses the
+ * whole data.yml and the binary store maps profiles.dat and builds its index;
+ * the sharded store has nothing to open, so its number is the cost of the lazy
+ * per-player load done on pre-login instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    int stored;
+
+    @Param({ "yaml", "sharded", "binary", "sqlite", "shared" })
+    String storage;
+
+    private Path dir;
+    private UUID sample;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("catsmpmc-bench");
+        List<ProfileSnapshot> all = BenchData.profiles(stored);
+        sample = all.get(all.size() / 2).uuid();
+        ProfileStore store = BenchData.open(storage, dir);
+        store.save(all);
+        store.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchData.delete(dir);
+    }
+
+    @Benchmark
+    public ProfileSnapshot loadAllData() throws IOException {
+        ProfileStore store = BenchData.open(storage, dir);
+        try {
+            return store.load(sample);
+        } finally {
+            store.close();
+        }
+    }
+}
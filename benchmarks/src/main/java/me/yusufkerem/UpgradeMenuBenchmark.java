@@ -0,0 +1,59 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Building the upgrade menu for openUpgradeMenu. Inventories and items need a
+ * server, so a deep-stubbed Mockito server is installed; item templates are
+ * built once on class load, so this tracks the per-open cost plus mock overhead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpgradeMenuBenchmark {
+
+    @Param({ "PASSIVE", "AGGRESSIVE" })
+    Role role;
+
+    private PlayerProfile profile;
+
+    @Setup
+    public void setup() {
+        if (Bukkit.getServer() == null) {
+            Server server = mock(Server.class, RETURNS_DEEP_STUBS);
+            when(server.getLogger()).thenReturn(Logger.getLogger("bench"));
+            Bukkit.setServer(server);
+        }
+        profile = new PlayerProfile(UUID.randomUUID(), role);
+        for (Ability a : Ability.values()) {
+            if (a.role() == role)
+                profile.setLevel(a, 1);
+        }
+    }
+
+    @Benchmark
+    public Inventory openUpgradeMenu() {
+        return new UpgradeMenu(profile).getInventory();
+    }
+
+    @Benchmark
+    public ItemStack refreshSlot() {
+        return UpgradeMenu.item(role == Role.PASSIVE ? Ability.PURRING : Ability.CLAWS, 1);
+    }
+}
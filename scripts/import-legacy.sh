@@ -0,0 +1,29 @@
+#!/bin/bash
+
+# Cat SMP Minecraft Plugin - offline data.yml import
+# Converts a legacy data.yml into sharded (players/) or binary (profiles.dat)
+# storage without a running server. Stop the server first, then copy the
+# output folder's contents into plugins/CATSMPMC/.
+#
+#   ./scripts/import-legacy.sh data.yml out/                # sharded
+#   ./scripts/import-legacy.sh data.yml out/ binary
+#   ./scripts/import-legacy.sh data.yml out/ validate       # report problems only
+#
+# Large files: raise the heap with JAVA_OPTS="-Xmx2g" if needed.
+
+set -e
+if [[ $# -lt 2 ]]; then
+    echo "Usage: $0 <data.yml> <output folder> [sharded|binary|validate]"
+    exit 2
+fi
+LEGACY="$(realpath "$1")"
+OUT="$(realpath -m "$2")"
+shift 2
+cd "$(dirname "$0")/.."
+
+mvn -B -q package -DskipTests
+# paper-api and SnakeYAML are provided by the server at runtime
+mvn -B -q dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+
+java $JAVA_OPTS -cp "$(ls target/catsmpmc-*.jar | head -1):$(cat target/classpath.txt)" \
+    me.yusufkerem.LegacyMigrator "$LEGACY" "$OUT" "$@"
@@ -0,0 +1,26 @@
+#!/bin/bash
+
+# Cat SMP Minecraft Plugin - JMH benchmarks
+# Installs the plugin jar, builds benchmarks/ and runs it, writing JSON results
+# to benchmarks/results/ so two releases can be diffed.
+#
+#   ./scripts/run-benchmarks.sh                       # everything
+#   ./scripts/run-benchmarks.sh --offline Combat      # no network, only CombatBenchmark
+#   ./scripts/run-benchmarks.sh -p stored=1000        # any other args go to JMH
+
+set -e
+cd "$(dirname "$0")/.."
+
+MVN_FLAGS="-B -q"
+if [[ "$1" == "--offline" ]]; then
+    MVN_FLAGS="$MVN_FLAGS -o"
+    shift
+fi
+
+mvn $MVN_FLAGS install
+mvn $MVN_FLAGS -f benchmarks/pom.xml package
+
+mkdir -p benchmarks/results
+OUT="benchmarks/results/jmh-$(date +%Y%m%d-%H%M%S).json"
+java -jar benchmarks/target/benchmarks.jar -rf json -rff "$OUT" "$@"
+echo "Results written to $OUT"
@@ -0,0 +1,25 @@
+#!/bin/bash
+
+# Cat SMP Minecraft Plugin - synthetic load test
+# Builds benchmarks/ and drives the plugin's listeners with fake players,
+# printing per-tick cost percentiles, handler timings and GC activity.
+# Exits with 1 if --max-p99-ms is given and the p99 tick cost is over it,
+# so CI can fail on a regression.
+#
+#   ./scripts/run-loadtest.sh                                   # defaults
+#   ./scripts/run-loadtest.sh --offline --players 5000 --online 2000 --events 400
+#   ./scripts/run-loadtest.sh --mix damage=80,death=5,join=15 --unpaced --max-p99-ms 5
+
+set -e
+cd "$(dirname "$0")/.."
+
+MVN_FLAGS="-B -q"
+if [[ "$1" == "--offline" ]]; then
+    MVN_FLAGS="$MVN_FLAGS -o"
+    shift
+fi
+
+mvn $MVN_FLAGS install
+mvn $MVN_FLAGS -f benchmarks/pom.xml package
+
+java $JAVA_OPTS -cp benchmarks/target/benchmarks.jar me.yusufkerem.LoadGenerator "$@"
@@ -0,0 +1,54 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+
+/**
+ * Upgradeable abilities. {@link #key} is the name used in saved data, so it
+ * must never change once released. Role, cost, max level and effects come
+ * from abilities.yml through {@link AbilityTable}.
+ */
+public enum Ability {
+    PURRING("purring"),
+    HEALTH_KITTY("healthkitty"),
+    ZOOM("zoom"),
+    CLAWS("claws"),
+    RABIES("rabies"),
+    PROTECTIVE_FUR("protectivefur");
+
+    /**
+     * Highest max-level abilities.yml may set. Stored levels are clamped to
+     * this, not to the configured max, so lowering a max level loses nothing.
+     */
+    static final int LEVEL_LIMIT = 20;
+
+    private static final Ability[] VALUES = values();
+
+    public final String key;
+
+    Ability(String key) {
+        this.key = key;
+    }
+
+    /** Role that can upgrade and use this ability, per the table in use. */
+    public Role role() {
+        return AbilityTable.get().def(this).role();
+    }
+
+    /** Max level per the table in use. */
+    public int maxLevel() {
+        return AbilityTable.get().def(this).maxLevel();
+    }
+
+    /** @return the ability saved under this key, or null if unknown */
+    public static Ability byKey(String key) {
+        for (Ability a : VALUES) {
+            if (a.key.equals(key))
+                return a;
+        }
+        return null;
+    }
+
+    static int count() {
+        return VALUES.length;
+    }
+}
@@ -0,0 +1,215 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Balance numbers for every {@link Ability} (role, upgrade cost, max level,
+ * effect per level, menu item), compiled from abilities.yml into arrays
+ * indexed by ordinal.
+ * <p>
+ * A table is immutable once built. The one in use sits in a volatile field:
+ * handlers read it without locking, and /catsmp reload compiles a complete new
+ * table first and then swaps it in with one write, so a handler sees either
+ * the old numbers or the new ones, never a mix. Profiles only store levels, so
+ * nothing about them changes on a reload; a level above a lowered max level
+ * is kept and simply has the max level's effect.
+ * <p>
+ * Until the plugin loads its abilities.yml, the copy shipped in the jar is
+ * used, so offline tools and benchmarks see the same numbers.
+ */
+final class AbilityTable {
+
+    /**
+     * @param effect value at each level, {@code effect[0] = 0}; what it means depends on the ability
+     *               (see abilities.yml)
+     */
+    record Def(Ability ability, Role role, int cost, int maxLevel, double[] effect, long cooldownMs,
+            Material material, ChatColor color, String name, String description) {
+
+        /** Effect at a level; levels past the max count as the max. */
+        double effect(int level) {
+            return effect[Math.max(0, Math.min(level, maxLevel))];
+        }
+    }
+
+    private static volatile AbilityTable current = builtIn();
+
+    private final Def[] defs;
+    private final Ability[][] byRole; // menu order
+    // upgrade menu items by ordinal and level; built on first use, since items need a running server
+    private volatile ItemStack[][] items;
+
+    private AbilityTable(Def[] defs) {
+        this.defs = defs;
+        this.byRole = new Ability[Role.values().length][];
+        for (Role r : Role.values()) {
+            List<Ability> list = new ArrayList<>();
+            for (Def d : defs) {
+                if (d.role() == r)
+                    list.add(d.ability());
+            }
+            byRole[r.ordinal()] = list.toArray(new Ability[0]);
+        }
+    }
+
+    /** The table in use. */
+    static AbilityTable get() {
+        return current;
+    }
+
+    /** Makes {@code table} the one in use; callers re-apply online players' abilities afterwards. */
+    static void install(AbilityTable table) {
+        current = table;
+    }
+
+    Def def(Ability a) {
+        return defs[a.ordinal()];
+    }
+
+    /** Effect of an ability at a level for a player with this role; 0 if the ability belongs to the other role. */
+    double effect(Ability a, Role role, int level) {
+        Def d = defs[a.ordinal()];
+        return d.role() == role ? d.effect(level) : 0.0;
+    }
+
+    /** The abilities of a role, in menu order. */
+    Ability[] abilities(Role role) {
+        return byRole[role.ordinal()];
+    }
+
+    ItemStack item(Ability a, int level) {
+        ItemStack[][] its = items;
+        if (its == null)
+            // two threads may both build it; either copy is fine
+            items = its = UpgradeMenu.buildTemplates(this);
+        ItemStack[] levels = its[a.ordinal()];
+        return levels[Math.max(0, Math.min(level, levels.length - 1))];
+    }
+
+    // -------------------------
+    // Loading
+    // -------------------------
+
+    /**
+     * Reads and compiles abilities.yml; abilities missing from it keep the
+     * numbers of the table in use.
+     *
+     * @throws IllegalArgumentException listing every problem, if the file is broken; nothing is swapped then
+     */
+    static AbilityTable load(File file) throws IOException {
+        YamlConfiguration cfg = new YamlConfiguration();
+        try {
+            cfg.load(file);
+        } catch (InvalidConfigurationException e) {
+            throw new IllegalArgumentException(file.getName() + " is not valid YAML: " + e.getMessage(), e);
+        }
+        return compile(cfg, current);
+    }
+
+    private static AbilityTable builtIn() {
+        try (InputStream in = AbilityTable.class.getResourceAsStream("/abilities.yml")) {
+            if (in == null)
+                throw new IllegalStateException("abilities.yml is missing from the plugin jar");
+            YamlConfiguration cfg = new YamlConfiguration();
+            try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                cfg.load(reader);
+            }
+            return compile(cfg, null);
+        } catch (IOException | InvalidConfigurationException | IllegalArgumentException e) {
+            throw new IllegalStateException("Built-in abilities.yml: " + e.getMessage(), e);
+        }
+    }
+
+    static AbilityTable compile(ConfigurationSection sec, AbilityTable fallback) {
+        List<String> problems = new ArrayList<>();
+        Def[] defs = new Def[Ability.count()];
+        for (Ability a : Ability.values()) {
+            ConfigurationSection c = sec.getConfigurationSection(a.key);
+            if (c == null) {
+                if (fallback != null)
+                    defs[a.ordinal()] = fallback.def(a);
+                else
+                    problems.add(a.key + " is missing");
+                continue;
+            }
+            defs[a.ordinal()] = compile(a, c, problems);
+        }
+        for (String key : sec.getKeys(false)) {
+            if (Ability.byKey(key) == null)
+                problems.add("unknown ability " + key);
+        }
+        if (!problems.isEmpty())
+            throw new IllegalArgumentException(String.join("; ", problems));
+        return new AbilityTable(defs);
+    }
+
+    // null if broken; the reasons go to problems
+    private static Def compile(Ability a, ConfigurationSection c, List<String> problems) {
+        int before = problems.size();
+        Role role = null;
+        String roleName = c.getString("role", "");
+        for (Role r : Role.values()) {
+            if (r.name().equalsIgnoreCase(roleName))
+                role = r;
+        }
+        if (role == null)
+            problems.add(a.key + ": role must be passive or aggressive, not '" + roleName + "'");
+
+        int cost = c.getInt("cost", 1);
+        if (cost < 0 || cost > CATSMPMC.MAX_BP)
+            problems.add(a.key + ": cost must be 0-" + CATSMPMC.MAX_BP);
+
+        int maxLevel = c.getInt("max-level", 0);
+        if (maxLevel < 1 || maxLevel > Ability.LEVEL_LIMIT)
+            problems.add(a.key + ": max-level must be 1-" + Ability.LEVEL_LIMIT);
+
+        List<Double> values = c.getDoubleList("effect");
+        double[] effect = new double[Math.max(0, maxLevel) + 1];
+        if (values.size() != maxLevel) {
+            problems.add(a.key + ": effect needs one value per level (" + maxLevel + "), has " + values.size());
+        } else {
+            for (int i = 0; i < maxLevel; i++) {
+                effect[i + 1] = values.get(i);
+            }
+        }
+
+        long cooldownMs = c.getLong("cooldown-ms", 0L);
+        if (cooldownMs < 0)
+            problems.add(a.key + ": cooldown-ms can't be negative");
+
+        String materialName = c.getString("material", "");
+        Material material = Material.matchMaterial(materialName);
+        if (material == null)
+            problems.add(a.key + ": unknown material '" + materialName + "'");
+
+        ChatColor color = null;
+        String colorName = c.getString("color", "WHITE");
+        try {
+            color = ChatColor.valueOf(colorName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ignored) {
+        }
+        if (color == null || !color.isColor())
+            problems.add(a.key + ": unknown color '" + colorName + "'");
+
+        if (problems.size() > before)
+            return null;
+        return new Def(a, role, cost, maxLevel, effect, cooldownMs, material, color, c.getString("name", a.key),
+                c.getString("description", ""));
+    }
+}
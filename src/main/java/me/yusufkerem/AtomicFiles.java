@@ -0,0 +1,60 @@
+package me.yusufkerem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Temp file + rename, so a crash mid-write never leaves a truncated file behind.
+ * The temp file is forced to disk before the rename: callers (journal
+ * compaction) delete other copies of the data once a write returns.
+ */
+final class AtomicFiles {
+
+    /** Writes a file's contents to a stream, for files too big to build in memory first. */
+    interface Contents {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private AtomicFiles() {
+    }
+
+    static void write(Path target, String contents) throws IOException {
+        write(target, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void write(Path target, byte[] contents) throws IOException {
+        write(target, out -> out.write(contents));
+    }
+
+    static void write(Path target, Contents contents) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // not closed here: closing the stream would close the channel before force()
+            OutputStream out = Channels.newOutputStream(ch);
+            contents.writeTo(out);
+            out.flush();
+            ch.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        move(tmp, target);
+    }
+
+    private static void move(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package me.yusufkerem;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Who gained or lost Blood Points, when and why (kills, deaths, upgrades,
+ * CatSmpApi trySpend, admin commands, restores), for /catsmp audit.
+ * <p>
+ * Recording happens on the thread that changed the points, so it only copies
+ * six longs into a preallocated ring buffer: the producer claims a slot with
+ * one CAS and publishes it by setting the slot's sequence. No lock, no
+ * allocation, and any number of region threads may record at once. A full
+ * buffer drops the event and counts it rather than making a tick wait.
+ * <p>
+ * A consumer thread drains the ring every flush interval and writes the
+ * events, 48 bytes each:
+ *
+ * <pre>
+ *  0  time, epoch millis (long)
+ *  8  player uuid (2 longs)
+ * 24  actor uuid (2 longs): killer, victim or admin; 0 = console or nobody
+ * 40  reason (byte), ability ({@link #ABILITIES} index + 1, 0 = none) (byte),
+ *     BP before (short), BP after (short), reserved (short)
+ * </pre>
+ *
+ * Each batch is appended to audit-NNNNNNNN.log.gz as a gzip member of its
+ * own (concatenated members are still one gzip file, so zcat reads it). For
+ * every player in the batch, audit-NNNNNNNN.idx gets a 28 byte entry: uuid,
+ * offset and length of that member. {@link #history} reads the index files,
+ * newest first, and only decompresses the members that have the player in
+ * them. A file rolls over at the configured size or once it is a day old,
+ * and files past the retention period are deleted. Nothing is fsynced per
+ * batch: this is a trail for investigations, not the source of truth.
+ */
+final class AuditLog {
+
+    /** Why the points changed; the ordinal is stored, so append only, never reorder. */
+    enum Reason {
+        /** Gained by killing the actor. */
+        KILL,
+        /** Lost to the actor, who killed this player. */
+        DEATH,
+        /** Spent on an upgrade of the event's ability. */
+        UPGRADE,
+        /** Spent through CatSmpApi.trySpend (or the older trySpendBP). */
+        SPEND,
+        /** /catsmp addbp, removebp or setbp on this player; the actor is the admin. */
+        ADMIN,
+        /** The same with a selector (@a, @role:..., @file:...). */
+        BULK,
+        /** /catsmp restore; the actor is the admin. */
+        RESTORE
+    }
+
+    /** One recorded change, as read back by {@link #history}; {@code actor} and {@code ability} may be null. */
+    record Event(long timeMillis, UUID player, UUID actor, Reason reason, Ability ability, int before, int after) {
+    }
+
+    // ability codes in the log; append only, never reorder
+    private static final Ability[] ABILITIES = { Ability.PURRING, Ability.HEALTH_KITTY, Ability.ZOOM, Ability.CLAWS,
+            Ability.RABIES, Ability.PROTECTIVE_FUR };
+    private static final Reason[] REASONS = Reason.values();
+
+    private static final int SLOT_LONGS = 6;
+    private static final int EVENT_SIZE = SLOT_LONGS * 8;
+    private static final int INDEX_ENTRY_SIZE = 28;
+    // events per gzip member at most; a busier interval is written as several members
+    private static final int BATCH_EVENTS = 4096;
+    private static final long ROLL_AFTER_MILLIS = TimeUnit.DAYS.toMillis(1);
+    // fixed 10 byte gzip member header: deflate, no flags, no mtime, unknown OS
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final Logger logger;
+    private final Path dir;
+    private final long flushNanos;
+    private final long maxFileBytes;
+    private final long retentionMillis;
+
+    // ring: slot i holds sequence s when published[i] == s + 1, and is free for s when published[i] == s
+    private final int capacity;
+    private final int mask;
+    private final long[] slots;
+    private final AtomicLongArray published;
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running = true;
+
+    // only touched by the consumer thread
+    private final Thread consumer;
+    private long head;
+    private final ByteBuffer batch = ByteBuffer.allocate(BATCH_EVENTS * EVENT_SIZE).order(ByteOrder.BIG_ENDIAN);
+    private ByteBuffer member = ByteBuffer.allocate(BATCH_EVENTS * EVENT_SIZE / 2).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer indexEntries = ByteBuffer.allocate(BATCH_EVENTS * INDEX_ENTRY_SIZE)
+            .order(ByteOrder.BIG_ENDIAN);
+    private final Set<UUID> batchPlayers = new HashSet<>();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private FileChannel log;
+    private FileChannel index;
+    private long segment;
+    private long segmentOpenedMillis;
+    private boolean failing;
+
+    // stats
+    private volatile long written;
+    private volatile long segmentBytes;
+
+    AuditLog(Logger logger, Path dir, int bufferEvents, long flushIntervalMillis, long maxFileMegabytes,
+            long retentionDays) throws IOException {
+        this.logger = logger;
+        this.dir = dir;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(10L, flushIntervalMillis));
+        this.maxFileBytes = Math.max(1L, maxFileMegabytes) * 1024 * 1024;
+        this.retentionMillis = TimeUnit.DAYS.toMillis(Math.max(1L, retentionDays));
+        this.capacity = Integer.highestOneBit(Math.max(1024, Math.min(bufferEvents, 1 << 22)) - 1) << 1;
+        this.mask = capacity - 1;
+        this.slots = new long[capacity * SLOT_LONGS];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, i);
+        }
+        Files.createDirectories(dir);
+        List<Long> existing = segments(dir);
+        openSegment(existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1);
+        prune();
+        consumer = new Thread(this::run, "CATSMPMC-Audit");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Records a change of {@code player}'s Blood Points from {@code before} to
+     * {@code after}; nothing if they are equal. Lock-free and allocation-free,
+     * safe from any thread.
+     *
+     * @param actor   the other player or the admin, or null
+     * @param ability the upgraded ability, or null
+     */
+    void record(UUID player, Reason reason, UUID actor, int before, int after, Ability ability) {
+        if (before == after || !running)
+            return;
+        long seq;
+        int slot;
+        while (true) {
+            seq = tail.get();
+            slot = (int) (seq & mask);
+            long state = published.getAcquire(slot);
+            if (state < seq) {
+                // still holds the event from one lap ago: the consumer is behind
+                dropped.increment();
+                return;
+            }
+            if (state == seq && tail.compareAndSet(seq, seq + 1))
+                break;
+        }
+        int base = slot * SLOT_LONGS;
+        slots[base] = System.currentTimeMillis();
+        slots[base + 1] = player.getMostSignificantBits();
+        slots[base + 2] = player.getLeastSignificantBits();
+        slots[base + 3] = actor == null ? 0L : actor.getMostSignificantBits();
+        slots[base + 4] = actor == null ? 0L : actor.getLeastSignificantBits();
+        slots[base + 5] = (long) reason.ordinal() << 56 | (long) abilityCode(ability) << 48
+                | (before & 0xFFFFL) << 32 | (after & 0xFFFFL) << 16;
+        published.setRelease(slot, seq + 1);
+    }
+
+    private static int abilityCode(Ability a) {
+        if (a == null)
+            return 0;
+        for (int i = 0; i < ABILITIES.length; i++) {
+            if (ABILITIES[i] == a)
+                return i + 1;
+        }
+        return 0;
+    }
+
+    /** Writes what is still buffered and stops the consumer (on disable). */
+    void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(10));
+            log.force(false);
+            log.close();
+            index.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+        }
+        deflater.end();
+    }
+
+    // -------------------------
+    // Consumer thread
+    // -------------------------
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, flushNanos);
+            flush();
+        }
+        flush();
+    }
+
+    private void flush() {
+        try {
+            // a full batch means there may be more waiting
+            while (drain() > 0) {
+                write();
+                if (batch.limit() < batch.capacity())
+                    break;
+            }
+            if (segmentBytes >= maxFileBytes
+                    || System.currentTimeMillis() - segmentOpenedMillis >= ROLL_AFTER_MILLIS) {
+                log.force(false);
+                log.close();
+                index.close();
+                openSegment(segment + 1);
+                prune();
+            }
+            if (failing) {
+                logger.info("Audit log writes are working again.");
+                failing = false;
+            }
+        } catch (IOException e) {
+            // events in this batch are lost; the next one tries again
+            if (!failing)
+                logger.severe("Could not write the audit log: " + e.getMessage());
+            failing = true;
+        }
+    }
+
+    // moves published events from the ring into batch; returns how many
+    private int drain() {
+        batch.clear();
+        int n = 0;
+        while (n < BATCH_EVENTS) {
+            int slot = (int) (head & mask);
+            if (published.getAcquire(slot) != head + 1)
+                break;
+            int base = slot * SLOT_LONGS;
+            for (int i = 0; i < SLOT_LONGS; i++) {
+                batch.putLong(slots[base + i]);
+            }
+            published.setRelease(slot, head + capacity);
+            head++;
+            n++;
+        }
+        batch.flip();
+        return n;
+    }
+
+    // batch as one gzip member at the end of the log, then its players into the index
+    private void write() throws IOException {
+        byte[] raw = batch.array();
+        int len = batch.limit();
+        deflater.reset();
+        deflater.setInput(raw, 0, len);
+        deflater.finish();
+        crc.reset();
+        crc.update(raw, 0, len);
+        member.clear();
+        member.put(GZIP_HEADER);
+        while (!deflater.finished()) {
+            // room for some output plus the 8 byte trailer
+            if (member.remaining() < 64) {
+                ByteBuffer bigger = ByteBuffer.allocate(member.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+                member.flip();
+                member = bigger.put(member);
+            }
+            int n = deflater.deflate(member.array(), member.position(), member.remaining() - 8);
+            member.position(member.position() + n);
+        }
+        member.putInt((int) crc.getValue()).putInt(len);
+        member.flip();
+
+        long offset = log.position();
+        int memberLength = member.limit();
+        while (member.hasRemaining()) {
+            log.write(member);
+        }
+
+        batchPlayers.clear();
+        indexEntries.clear();
+        for (int pos = 0; pos < len; pos += EVENT_SIZE) {
+            long msb = batch.getLong(pos + 8);
+            long lsb = batch.getLong(pos + 16);
+            if (batchPlayers.add(new UUID(msb, lsb)))
+                indexEntries.putLong(msb).putLong(lsb).putLong(offset).putInt(memberLength);
+        }
+        indexEntries.flip();
+        while (indexEntries.hasRemaining()) {
+            index.write(indexEntries);
+        }
+        written += len / EVENT_SIZE;
+        segmentBytes = log.position();
+    }
+
+    private void openSegment(long seq) throws IOException {
+        log = FileChannel.open(dir.resolve(logName(seq)), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        index = FileChannel.open(dir.resolve(indexName(seq)), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        segment = seq;
+        segmentOpenedMillis = System.currentTimeMillis();
+        segmentBytes = 0;
+    }
+
+    // deletes files past the retention period; never the one being written
+    private void prune() throws IOException {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        for (long seq : segments(dir)) {
+            Path file = dir.resolve(logName(seq));
+            if (seq != segment && Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(dir.resolve(indexName(seq)));
+            }
+        }
+    }
+
+    // -------------------------
+    // Queries (/catsmp audit), run off the tick thread
+    // -------------------------
+
+    /**
+     * The player's newest events, newest first, at most {@code limit}. Only
+     * the index files and the log members they point at are read. Events
+     * from the last flush interval may still be in the ring and are not
+     * included.
+     */
+    List<Event> history(UUID player, int limit) throws IOException {
+        List<Event> out = new ArrayList<>();
+        List<Long> segs = segments(dir);
+        for (int s = segs.size() - 1; s >= 0 && out.size() < limit; s--) {
+            long seq = segs.get(s);
+            List<long[]> members = members(seq, player);
+            if (members.isEmpty())
+                continue;
+            try (FileChannel in = FileChannel.open(dir.resolve(logName(seq)), StandardOpenOption.READ)) {
+                for (int m = members.size() - 1; m >= 0 && out.size() < limit; m--) {
+                    List<Event> events = readMember(in, members.get(m), player);
+                    for (int i = events.size() - 1; i >= 0 && out.size() < limit; i--) {
+                        out.add(events.get(i));
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    // {offset, length} of each member with the player in it, oldest first
+    private List<long[]> members(long seq, UUID player) throws IOException {
+        ByteBuffer idx = ByteBuffer.wrap(Files.readAllBytes(dir.resolve(indexName(seq)))).order(ByteOrder.BIG_ENDIAN);
+        List<long[]> out = new ArrayList<>();
+        long msb = player.getMostSignificantBits();
+        long lsb = player.getLeastSignificantBits();
+        // the last entry may be half written
+        int end = idx.limit() - idx.limit() % INDEX_ENTRY_SIZE;
+        for (int pos = 0; pos < end; pos += INDEX_ENTRY_SIZE) {
+            if (idx.getLong(pos) == msb && idx.getLong(pos + 8) == lsb)
+                out.add(new long[] { idx.getLong(pos + 16), idx.getInt(pos + 24) });
+        }
+        return out;
+    }
+
+    private static List<Event> readMember(FileChannel in, long[] member, UUID player) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate((int) member[1]);
+        while (compressed.hasRemaining()) {
+            if (in.read(compressed, member[0] + compressed.position()) < 0)
+                throw new EOFException("Audit log ends inside a batch");
+        }
+        List<Event> out = new ArrayList<>();
+        try (DataInputStream data = new DataInputStream(
+                new GZIPInputStream(new ByteArrayInputStream(compressed.array())))) {
+            while (true) {
+                long time;
+                try {
+                    time = data.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                UUID uuid = new UUID(data.readLong(), data.readLong());
+                long actorMsb = data.readLong();
+                long actorLsb = data.readLong();
+                long packed = data.readLong();
+                if (!uuid.equals(player))
+                    continue;
+                int reason = (int) (packed >>> 56);
+                int ability = (int) (packed >>> 48) & 0xFF;
+                out.add(new Event(time, uuid, actorMsb == 0L && actorLsb == 0L ? null : new UUID(actorMsb, actorLsb),
+                        reason < REASONS.length ? REASONS[reason] : null,
+                        ability > 0 && ability <= ABILITIES.length ? ABILITIES[ability - 1] : null,
+                        (short) (packed >>> 32), (short) (packed >>> 16)));
+            }
+        }
+        return out;
+    }
+
+    private static String logName(long seq) {
+        return String.format("audit-%08d.log.gz", seq);
+    }
+
+    private static String indexName(long seq) {
+        return String.format("audit-%08d.idx", seq);
+    }
+
+    private static List<Long> segments(Path dir) throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "audit-*.log.gz")) {
+            for (Path f : files) {
+                String n = f.getFileName().toString();
+                try {
+                    seqs.add(Long.parseLong(n.substring(6, n.length() - 7)));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        seqs.sort(null);
+        return seqs;
+    }
+
+    // -------------------------
+    // Stats (/catsmp storage)
+    // -------------------------
+
+    /** Events recorded since startup, including dropped ones. */
+    long recordedCount() {
+        return tail.get() + dropped.sum();
+    }
+
+    /** Events dropped because the consumer fell a whole buffer behind. */
+    long droppedCount() {
+        return dropped.sum();
+    }
+
+    long writtenCount() {
+        return written;
+    }
+
+    long segmentBytes() {
+        return segmentBytes;
+    }
+}
@@ -0,0 +1,252 @@
+package me.yusufkerem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Fixed-width binary profile store (storage.type: binary).
+ * <p>
+ * Every profile is a 32 byte record in one memory-mapped file:
+ *
+ * <pre>
+ *  0  uuid most significant bits  (long)
+ *  8  uuid least significant bits (long)
+ * 16  flags: 1 = used, 2 = zoomcombo, 4 = aggressive
+ * 17  blood points
+ * 18  ability levels, one byte each in {@link #LAYOUT} order
+ * 24  reserved
+ * 28  CRC32C of bytes 0-27 (int)
+ * </pre>
+ *
+ * Startup maps the file and scans the records once to build the UUID to slot
+ * index; there is no YAML parsing anywhere on this path. The index is an
+ * open-addressing table of slot numbers whose keys are the UUIDs in the
+ * records themselves, so it costs 8 to 16 bytes per profile and a lookup
+ * boxes nothing. Saving allocates nothing, and a load only the snapshot it returns.
+ * <p>
+ * A record that fails its checksum (a write torn by a crash, a bad block) is
+ * left out of the index and counted in {@link #corruptRecords()}; every load
+ * checks it again. Version 1 files, from before the checksum, are upgraded in
+ * place on open. The file grows by doubling and is never compacted, since
+ * profiles are never deleted.
+ */
+final class BinaryProfileStore implements ProfileStore {
+
+    private static final int MAGIC = 0x43415450; // "CATP"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+    private static final int CRC_OFFSET = 28;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int FLAG_USED = 1;
+    private static final int FLAG_ZOOMCOMBO = 2;
+    private static final int FLAG_AGGRESSIVE = 4;
+
+    // on-disk order of the level bytes; append only, never reorder
+    private static final Ability[] LAYOUT = { Ability.PURRING, Ability.HEALTH_KITTY, Ability.ZOOM, Ability.CLAWS,
+            Ability.RABIES, Ability.PROTECTIVE_FUR };
+
+    private final FileChannel channel;
+    private MappedByteBuffer buf;
+    private int capacity;
+    private int count;
+    // linear probing; slot + 1, 0 = empty. Kept under half full
+    private int[] index = new int[2 * INITIAL_CAPACITY];
+    private int indexed;
+    private int corrupt;
+    private final CRC32C crc = new CRC32C();
+    private final byte[] crcScratch = new byte[CRC_OFFSET];
+
+    BinaryProfileStore(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            capacity = INITIAL_CAPACITY;
+            map();
+            buf.putInt(0, MAGIC);
+            buf.putInt(4, VERSION);
+            buf.putInt(8, 0);
+            return;
+        }
+        capacity = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+        map();
+        int version = buf.getInt(4);
+        if (buf.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+            channel.close();
+            throw new IOException(file.getName() + " is not a CATSMPMC profile file (or an unsupported version)");
+        }
+        count = buf.getInt(8);
+        index = new int[Math.max(2 * INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, count)) << 2)];
+        for (int slot = 0; slot < count; slot++) {
+            int off = offset(slot);
+            if ((buf.get(off + 16) & FLAG_USED) == 0)
+                continue;
+            // version 1 had no checksum: write it now
+            if (version == 1)
+                buf.putInt(off + CRC_OFFSET, checksum(off));
+            if (buf.getInt(off + CRC_OFFSET) != checksum(off)) {
+                corrupt++;
+                continue;
+            }
+            insert(slot, buf.getLong(off), buf.getLong(off + 8));
+        }
+        if (version == 1) {
+            buf.putInt(4, VERSION);
+            buf.force();
+        }
+    }
+
+    private void map() throws IOException {
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        buf.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private int checksum(int off) {
+        buf.get(off, crcScratch);
+        crc.reset();
+        crc.update(crcScratch);
+        return (int) crc.getValue();
+    }
+
+    int size() {
+        return indexed;
+    }
+
+    /** Records skipped at startup because they failed their checksum. */
+    int corruptRecords() {
+        return corrupt;
+    }
+
+    @Override
+    public synchronized ProfileSnapshot load(UUID uuid) throws IOException {
+        int slot = find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        if (slot < 0)
+            return null;
+        int off = offset(slot);
+        if (buf.getInt(off + CRC_OFFSET) != checksum(off))
+            throw new IOException("record " + slot + " of profiles.dat (" + uuid + ") failed its checksum");
+        int flags = buf.get(off + 16);
+        byte[] levels = new byte[Ability.count()];
+        for (int i = 0; i < LAYOUT.length; i++) {
+            levels[LAYOUT[i].ordinal()] = buf.get(off + 18 + i);
+        }
+        return ProfileSnapshot.owning(uuid,
+                (flags & FLAG_AGGRESSIVE) != 0 ? CATSMPMC.Role.AGGRESSIVE : CATSMPMC.Role.PASSIVE,
+                buf.get(off + 17), (flags & FLAG_ZOOMCOMBO) != 0, levels);
+    }
+
+    @Override
+    public synchronized void save(List<ProfileSnapshot> batch) throws IOException {
+        for (ProfileSnapshot snap : batch) {
+            long hi = snap.uuid().getMostSignificantBits(), lo = snap.uuid().getLeastSignificantBits();
+            int slot = find(hi, lo);
+            int off;
+            if (slot < 0) {
+                if (count == capacity) {
+                    capacity *= 2;
+                    map();
+                }
+                slot = count++;
+                off = offset(slot);
+                // the key has to be in the record before the index can compare against it
+                buf.putLong(off, hi);
+                buf.putLong(off + 8, lo);
+                insert(slot, hi, lo);
+                buf.putInt(8, count);
+            } else {
+                off = offset(slot);
+            }
+            int flags = FLAG_USED;
+            if (snap.zoomCombo())
+                flags |= FLAG_ZOOMCOMBO;
+            if (snap.role() == CATSMPMC.Role.AGGRESSIVE)
+                flags |= FLAG_AGGRESSIVE;
+            buf.put(off + 16, (byte) flags);
+            buf.put(off + 17, (byte) snap.bloodPoints());
+            for (int i = 0; i < LAYOUT.length; i++) {
+                buf.put(off + 18 + i, (byte) snap.level(LAYOUT[i]));
+            }
+            buf.putInt(off + CRC_OFFSET, checksum(off));
+        }
+        buf.force();
+    }
+
+    @Override
+    public synchronized void scanBloodPoints(ObjIntConsumer<UUID> action) {
+        for (int entry : index) {
+            if (entry == 0)
+                continue;
+            int off = offset(entry - 1);
+            action.accept(new UUID(buf.getLong(off), buf.getLong(off + 8)), buf.get(off + 17));
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            buf.force();
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // -------------------------
+    // Index (open addressing over record slots)
+    // -------------------------
+    private static int hash(long hi, long lo) {
+        long h = hi ^ lo;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    // the record slot holding this UUID, or -1
+    private int find(long hi, long lo) {
+        int mask = index.length - 1;
+        for (int i = hash(hi, lo) & mask; index[i] != 0; i = (i + 1) & mask) {
+            int off = offset(index[i] - 1);
+            if (buf.getLong(off) == hi && buf.getLong(off + 8) == lo)
+                return index[i] - 1;
+        }
+        return -1;
+    }
+
+    private void insert(int slot, long hi, long lo) {
+        if ((indexed + 1) * 2 > index.length)
+            rehash(index.length * 2);
+        int mask = index.length - 1;
+        int i = hash(hi, lo) & mask;
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+        indexed++;
+    }
+
+    private void rehash(int size) {
+        int[] old = index;
+        index = new int[size];
+        indexed = 0;
+        for (int entry : old) {
+            if (entry == 0)
+                continue;
+            int off = offset(entry - 1);
+            insert(entry - 1, buf.getLong(off), buf.getLong(off + 8));
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal for Blood Points, ability levels and roles.
+ * <p>
+ * {@link PlayerProfile} appends a 40 byte record for every change:
+ *
+ * <pre>
+ *  0  uuid most significant bits  (long)
+ *  8  uuid least significant bits (long)
+ * 16  field: 0 = blood points, 1 = role, 2.. = ability level in {@link #ABILITIES} order
+ * 17  reserved
+ * 20  old value (int, -1 for a new player)
+ * 24  new value (int)
+ * 28  timestamp, epoch millis (long)
+ * 36  CRC32 of bytes 0..35
+ * </pre>
+ *
+ * Appending only copies the record into a memory buffer. A syncer thread
+ * writes everything appended since its last pass and fsyncs once
+ * (group commit), so a change is on disk at most one commit interval later.
+ * If a write or fsync fails, the segment is cut back to its last good record
+ * (or a new segment is started when even that fails) and the records are
+ * written again on the next pass, ahead of anything appended since. Replay
+ * stops at the first bad record of a segment, so a torn record must never be
+ * followed by good ones.
+ * <p>
+ * The profile store is the snapshot. At startup {@link #replay} applies all
+ * journal segments to it and deletes them. {@link #compact} runs in the
+ * background: it starts a new segment, waits until the write-behind writer
+ * has saved every profile, then deletes the old segments.
+ */
+final class BpJournal implements PlayerProfile.ChangeListener {
+
+    static final int FIELD_BP = 0;
+    static final int FIELD_ROLE = 1;
+    private static final int FIELD_FIRST_ABILITY = 2;
+    // field codes of the ability levels; append only, never reorder
+    private static final Ability[] ABILITIES = { Ability.PURRING, Ability.HEALTH_KITTY, Ability.ZOOM, Ability.CLAWS,
+            Ability.RABIES, Ability.PROTECTIVE_FUR };
+    private static final int FIELDS = FIELD_FIRST_ABILITY + ABILITIES.length;
+
+    private static final int MAGIC = 0x4341544A; // "CATJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 40;
+    private static final int INITIAL_BUFFER = 1024 * RECORD_SIZE;
+    private static final int REPLAY_BATCH = 500;
+
+    private final Logger logger;
+    private final Path dir;
+    private final long commitNanos;
+    private final Thread syncer;
+    private volatile boolean running = true;
+
+    // guarded by lock; swapped by the syncer
+    private final Object lock = new Object();
+    private ByteBuffer active = newBuffer(INITIAL_BUFFER);
+    private ByteBuffer standby = newBuffer(INITIAL_BUFFER);
+    private final CRC32 crc = new CRC32();
+    private CompletableFuture<Long> rotateRequest;
+
+    // only touched by the syncer thread
+    private FileChannel channel;
+    private long segment;
+    private long goodBytes; // end of the last record known to be on disk
+    private boolean failing;
+
+    // stats
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private volatile long segmentBytes;
+    private volatile long lastCompactMillis;
+
+    // compaction state, only touched inside compact()
+    private long appendedAtCompact;
+    private long writerFailures;
+    private boolean keepSegments;
+
+    BpJournal(Logger logger, Path dir, long commitIntervalMillis) throws IOException {
+        this.logger = logger;
+        this.dir = dir;
+        this.commitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, commitIntervalMillis));
+        Files.createDirectories(dir);
+        List<Long> existing = segments(dir);
+        openSegment(existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1);
+        syncer = new Thread(this::run, "CATSMPMC-Journal");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    static int field(Ability a) {
+        for (int i = 0; i < ABILITIES.length; i++) {
+            if (ABILITIES[i] == a)
+                return FIELD_FIRST_ABILITY + i;
+        }
+        throw new IllegalArgumentException(a.name());
+    }
+
+    // every profile change is a record
+    @Override
+    public void changed(UUID uuid, int field, int oldValue, int newValue) {
+        append(uuid, field, oldValue, newValue);
+    }
+
+    /** Queues one record; durable after the next group commit. Safe from any thread. */
+    void append(UUID uuid, int field, int oldValue, int newValue) {
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            if (active.remaining() < RECORD_SIZE) {
+                ByteBuffer bigger = newBuffer(active.capacity() * 2);
+                active.flip();
+                bigger.put(active);
+                active = bigger;
+            }
+            int start = active.position();
+            active.putLong(uuid.getMostSignificantBits());
+            active.putLong(uuid.getLeastSignificantBits());
+            active.put((byte) field).put((byte) 0).put((byte) 0).put((byte) 0);
+            active.putInt(oldValue);
+            active.putInt(newValue);
+            active.putLong(now);
+            crc.reset();
+            crc.update(active.array(), start, RECORD_SIZE - 4);
+            active.putInt((int) crc.getValue());
+        }
+        appended.incrementAndGet();
+    }
+
+    // -------------------------
+    // Syncer thread
+    // -------------------------
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, commitNanos);
+            sync();
+        }
+        sync();
+    }
+
+    private void sync() {
+        ByteBuffer batch;
+        CompletableFuture<Long> rotation;
+        synchronized (lock) {
+            if (active.position() == 0 && rotateRequest == null)
+                return;
+            batch = active;
+            active = standby;
+            standby = batch;
+            rotation = rotateRequest;
+            rotateRequest = null;
+        }
+        int end = batch.position();
+        boolean written = false;
+        try {
+            batch.flip();
+            if (batch.hasRemaining()) {
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+                goodBytes = channel.position();
+                segmentBytes = goodBytes;
+                syncs.incrementAndGet();
+            }
+            written = true;
+            if (failing) {
+                logger.info("Journal writes are working again.");
+                failing = false;
+            }
+            if (rotation != null) {
+                long old = segment;
+                channel.close();
+                openSegment(old + 1);
+                rotation.complete(old);
+            }
+        } catch (IOException e) {
+            // keep running: the write-behind store still has the data, just not as promptly
+            if (!failing)
+                logger.severe("Could not write the BP journal, retrying: " + e.getMessage());
+            failing = true;
+            if (!written)
+                requeue(batch, end);
+            recover();
+            if (rotation != null)
+                rotation.completeExceptionally(e);
+        } finally {
+            if (written)
+                batch.clear();
+        }
+    }
+
+    // puts a batch that didn't make it to disk back in front of everything appended since
+    private void requeue(ByteBuffer batch, int end) {
+        synchronized (lock) {
+            batch.limit(batch.capacity()).position(end);
+            active.flip();
+            if (batch.remaining() < active.remaining()) {
+                ByteBuffer bigger = newBuffer(Math.max(batch.capacity() * 2, end + active.remaining()));
+                batch.flip();
+                bigger.put(batch);
+                batch = bigger;
+            }
+            batch.put(active);
+            active.clear();
+            standby = active;
+            active = batch;
+        }
+    }
+
+    // cuts a torn record off the segment; if that fails too, the rest goes into a new segment
+    private void recover() {
+        try {
+            if (channel.isOpen()) {
+                channel.truncate(goodBytes);
+                channel.position(goodBytes);
+                return;
+            }
+        } catch (IOException ignored) {
+        }
+        try {
+            channel.close();
+            openSegment(segment + 1);
+        } catch (IOException e) {
+            // tried again after the next failed write
+        }
+    }
+
+    private void openSegment(long seq) throws IOException {
+        Path file = dir.resolve(name(seq));
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).position(HEADER_SIZE);
+            header.flip();
+            ch.write(header);
+            ch.force(true);
+        } catch (IOException e) {
+            ch.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        channel = ch;
+        segment = seq;
+        goodBytes = HEADER_SIZE;
+        segmentBytes = HEADER_SIZE;
+    }
+
+    /** Final group commit on disable. Segments are kept and replayed on the next start. */
+    void close() {
+        running = false;
+        LockSupport.unpark(syncer);
+        try {
+            syncer.join(TimeUnit.SECONDS.toMillis(10));
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // -------------------------
+    // Compaction
+    // -------------------------
+
+    /**
+     * Folds the journal into the store: switches appends to a new segment,
+     * has the writer save every loaded profile, and deletes the old segments
+     * once that save went through. Runs on a background thread.
+     */
+    synchronized void compact(ProfileWriter writer, Collection<UUID> loaded, long timeoutSeconds) {
+        if (keepSegments || appended.get() == appendedAtCompact)
+            return;
+        long old;
+        CompletableFuture<Long> rotation = new CompletableFuture<>();
+        synchronized (lock) {
+            rotateRequest = rotation;
+        }
+        LockSupport.unpark(syncer);
+        try {
+            old = rotation.get(timeoutSeconds, TimeUnit.SECONDS);
+            // every record in the old segments was applied in memory before the rotation,
+            // so snapshots taken from here on contain it
+            for (UUID uuid : loaded) {
+                writer.markDirty(uuid);
+            }
+            if (!writer.flushAndWait(timeoutSeconds)) {
+                logger.warning("Journal compaction: writer did not finish in " + timeoutSeconds + "s, keeping "
+                        + name(old));
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warning("Journal compaction: could not start a new segment: " + e.getMessage());
+            return;
+        }
+        if (writer.failureCount() != writerFailures) {
+            // a profile that failed to save may only exist in the journal now. Deleting
+            // later segments alone would let replay apply stale values, so keep them all.
+            keepSegments = true;
+            logger.warning("Journal compaction: player data failed to save, keeping the journal until restart");
+            return;
+        }
+        appendedAtCompact = appended.get();
+        try {
+            for (long seq : segments(dir)) {
+                if (seq <= old)
+                    Files.deleteIfExists(dir.resolve(name(seq)));
+            }
+            lastCompactMillis = System.currentTimeMillis();
+        } catch (IOException e) {
+            logger.warning("Journal compaction: could not delete old segments: " + e.getMessage());
+        }
+    }
+
+    // -------------------------
+    // Replay
+    // -------------------------
+
+    /**
+     * Applies every segment in {@code dir} to the store, in order, and deletes
+     * them once the store has saved the result. Must run before any profile
+     * is loaded.
+     *
+     * @return number of profiles that were updated
+     */
+    static int replay(Logger logger, Path dir, ProfileStore store) throws IOException {
+        if (!Files.isDirectory(dir))
+            return 0;
+        List<Long> segs = segments(dir);
+        if (segs.isEmpty())
+            return 0;
+
+        // last value per field; Integer.MIN_VALUE = untouched
+        Map<UUID, int[]> latest = new HashMap<>();
+        long records = 0;
+        for (long seq : segs) {
+            records += readSegment(logger, dir.resolve(name(seq)), latest);
+        }
+
+        List<ProfileSnapshot> batch = new ArrayList<>(REPLAY_BATCH);
+        int updated = 0;
+        for (Map.Entry<UUID, int[]> en : latest.entrySet()) {
+            ProfileSnapshot base = store.load(en.getKey());
+            ProfileSnapshot merged = apply(en.getKey(), base, en.getValue());
+            if (merged == null)
+                continue;
+            batch.add(merged);
+            updated++;
+            if (batch.size() == REPLAY_BATCH) {
+                store.replace(batch);
+                batch.clear();
+            }
+        }
+        store.replace(batch);
+
+        for (long seq : segs) {
+            Files.deleteIfExists(dir.resolve(name(seq)));
+        }
+        logger.info("Replayed " + records + " journal records from " + segs.size() + " segment(s), " + updated
+                + " profiles updated.");
+        return updated;
+    }
+
+    private static long readSegment(Logger logger, Path file, Map<UUID, int[]> latest) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.BIG_ENDIAN);
+        if (buf.remaining() < HEADER_SIZE || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            logger.warning("Skipping " + file.getFileName() + ": not a journal segment");
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        long n = 0;
+        for (int off = HEADER_SIZE; off + RECORD_SIZE <= buf.limit(); off += RECORD_SIZE) {
+            crc.reset();
+            crc.update(buf.array(), off, RECORD_SIZE - 4);
+            if ((int) crc.getValue() != buf.getInt(off + 36)) {
+                // torn write at the tail from a crash; nothing after it was acknowledged
+                logger.warning(file.getFileName() + ": bad record at byte " + off + ", ignoring the rest");
+                break;
+            }
+            int field = buf.get(off + 16);
+            if (field < 0 || field >= FIELDS)
+                continue;
+            UUID uuid = new UUID(buf.getLong(off), buf.getLong(off + 8));
+            int[] values = latest.computeIfAbsent(uuid, k -> {
+                int[] v = new int[FIELDS];
+                Arrays.fill(v, Integer.MIN_VALUE);
+                return v;
+            });
+            values[field] = buf.getInt(off + 24);
+            n++;
+        }
+        return n;
+    }
+
+    // returns null when the store already holds these values. The result keeps the version it was read at,
+    // so a versioned store compare-and-sets it like any other save instead of writing it over a newer one.
+    private static ProfileSnapshot apply(UUID uuid, ProfileSnapshot base, int[] values) {
+        Role role = base != null ? base.role() : Role.PASSIVE;
+        int bp = base != null ? base.bloodPoints() : 3;
+        boolean zoomCombo = base == null || base.zoomCombo();
+        byte[] levels = new byte[Ability.count()];
+        for (Ability a : Ability.values()) {
+            levels[a.ordinal()] = (byte) (base != null ? base.level(a) : 0);
+        }
+
+        boolean changed = base == null;
+        if (values[FIELD_BP] != Integer.MIN_VALUE && values[FIELD_BP] != bp) {
+            bp = Math.max(0, Math.min(values[FIELD_BP], CATSMPMC.MAX_BP));
+            changed = true;
+        }
+        if (values[FIELD_ROLE] != Integer.MIN_VALUE && values[FIELD_ROLE] != role.ordinal()) {
+            role = values[FIELD_ROLE] == Role.AGGRESSIVE.ordinal() ? Role.AGGRESSIVE : Role.PASSIVE;
+            changed = true;
+        }
+        for (int i = 0; i < ABILITIES.length; i++) {
+            int v = values[FIELD_FIRST_ABILITY + i];
+            Ability a = ABILITIES[i];
+            if (v != Integer.MIN_VALUE && v != levels[a.ordinal()]) {
+                levels[a.ordinal()] = (byte) Math.max(0, Math.min(v, Ability.LEVEL_LIMIT));
+                changed = true;
+            }
+        }
+        return changed ? new ProfileSnapshot(uuid, role, bp, zoomCombo, levels, base != null ? base.version() : 0L)
+                : null;
+    }
+
+    // -------------------------
+    // Segment files
+    // -------------------------
+    private static String name(long seq) {
+        return String.format("bp-%08d.log", seq);
+    }
+
+    private static List<Long> segments(Path dir) throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "bp-*.log")) {
+            for (Path f : files) {
+                String n = f.getFileName().toString();
+                try {
+                    seqs.add(Long.parseLong(n.substring(3, n.length() - 4)));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        seqs.sort(null);
+        return seqs;
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    // -------------------------
+    // Stats (/catsmp storage)
+    // -------------------------
+    long appendedCount() {
+        return appended.get();
+    }
+
+    long syncCount() {
+        return syncs.get();
+    }
+
+    long segmentBytes() {
+        return segmentBytes;
+    }
+
+    long lastCompactMillis() {
+        return lastCompactMillis;
+    }
+}
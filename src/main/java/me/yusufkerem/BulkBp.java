@@ -0,0 +1,145 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Parsing for the bulk form of /catsmp addbp, removebp and setbp: a selector
+ * instead of a player name, and a relative or absolute amount.
+ *
+ * <pre>
+ * &#64;a              online players
+ * &#64;all            everyone who has ever played (one scan of the store)
+ * &#64;role:passive   everyone with that role (reads every profile)
+ * &#64;file:list.txt  UUIDs, one per line, from a file in the plugin folder
+ * </pre>
+ *
+ * The plugin applies an operation to every target and then writes them all
+ * in one flush; this class only holds the pieces that don't need the plugin.
+ */
+final class BulkBp {
+
+    private BulkBp() {
+    }
+
+    enum Kind {
+        ONLINE, EVERYONE, ROLE, FILE
+    }
+
+    record Selector(Kind kind, Role role, File file) {
+
+        /**
+         * @return null if {@code arg} is a player name rather than a selector
+         * @throws IllegalArgumentException with a message for the sender if it is a broken selector
+         */
+        static Selector parse(String arg, File dataFolder) {
+            if (!arg.startsWith("@"))
+                return null;
+            String s = arg.toLowerCase(Locale.ROOT);
+            if (s.equals("@a"))
+                return new Selector(Kind.ONLINE, null, null);
+            if (s.equals("@all"))
+                return new Selector(Kind.EVERYONE, null, null);
+            if (s.startsWith("@role:")) {
+                String role = s.substring(6);
+                for (Role r : Role.values()) {
+                    if (r.name().equalsIgnoreCase(role))
+                        return new Selector(Kind.ROLE, r, null);
+                }
+                throw new IllegalArgumentException("Unknown role '" + role + "' (passive or aggressive).");
+            }
+            if (s.startsWith("@file:")) {
+                File file = new File(dataFolder, arg.substring(6));
+                // only files directly inside the plugin folder
+                if (!dataFolder.equals(file.getParentFile()) || !file.isFile())
+                    throw new IllegalArgumentException("No file named " + arg.substring(6) + " in the plugin folder.");
+                return new Selector(Kind.FILE, null, file);
+            }
+            throw new IllegalArgumentException("Unknown selector " + arg + " (@a, @all, @role:<role>, @file:<name>).");
+        }
+
+        @Override
+        public String toString() {
+            return switch (kind) {
+                case ONLINE -> "online players";
+                case EVERYONE -> "all players";
+                case ROLE -> role.name().toLowerCase(Locale.ROOT) + " players";
+                case FILE -> file.getName();
+            };
+        }
+    }
+
+    /** Either "add {@code amount}" (may be negative) or "set to {@code amount}". */
+    record Op(boolean relative, int amount) {
+
+        /** "3" sets, "+3" and "-3" add; null if it isn't a number. */
+        static Op parseSet(String arg) {
+            try {
+                int n = Integer.parseInt(arg);
+                return arg.startsWith("+") || arg.startsWith("-") ? new Op(true, n) : new Op(false, n);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /** @return the Blood Points after the change, given the value before it */
+        int result(int prev) {
+            return Math.max(0, Math.min(relative ? prev + amount : amount, CATSMPMC.MAX_BP));
+        }
+
+        /** @return the Blood Points before the change (clamped to 0..MAX_BP like every other change) */
+        int apply(PlayerProfile prof) {
+            return relative ? prof.getAndAddBloodPoints(amount) : prof.getAndSetBloodPoints(amount);
+        }
+
+        @Override
+        public String toString() {
+            return relative ? (amount >= 0 ? "+" + amount : String.valueOf(amount)) : "=" + amount;
+        }
+    }
+
+    /** What a bulk operation did, for the summary message and the log. */
+    static final class Report {
+        int changed;
+        int unchanged; // already at the cap, or already at the value
+        int notFound; // never played, or not a UUID
+        int online;
+        int offline;
+        int bloodPointsDelta;
+
+        @Override
+        public String toString() {
+            return changed + " changed (" + online + " online, " + offline + " offline), " + unchanged
+                    + " unchanged, " + notFound + " not found, net " + (bloodPointsDelta >= 0 ? "+" : "")
+                    + bloodPointsDelta + " BP";
+        }
+    }
+
+    /** UUIDs from a list file; blank lines and # comments are skipped, anything else counts as not found. */
+    static List<UUID> readUuids(File file, Report report) throws IOException {
+        List<UUID> out = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                try {
+                    out.add(UUID.fromString(line));
+                } catch (IllegalArgumentException e) {
+                    report.notFound++;
+                }
+            }
+        }
+        return out;
+    }
+}
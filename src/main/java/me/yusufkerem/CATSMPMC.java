@@ -2,112 +2,177 @@ package me.yusufkerem;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
-import org.bukkit.Material;
-import org.bukkit.attribute.Attribute;
-import org.bukkit.attribute.AttributeInstance;
-import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
-import org.bukkit.event.entity.EntityDamageByEntityEvent;
-import org.bukkit.event.entity.EntityDamageEvent;
-import org.bukkit.event.entity.PlayerDeathEvent;
-import org.bukkit.event.inventory.InventoryClickEvent;
-import org.bukkit.event.player.PlayerJoinEvent;
-import org.bukkit.event.player.PlayerToggleSneakEvent;
-import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.potion.PotionEffect;
-import org.bukkit.potion.PotionEffectType;
-import org.bukkit.util.Vector;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
-public class CATSMPMC extends JavaPlugin implements Listener {
+public class CATSMPMC extends JavaPlugin {
 
     // ----- enums & constants -----
     public enum Role {
         PASSIVE, AGGRESSIVE
     }
 
-    private static final int MAX_BP = 5;
-    private static final long DASH_COOLDOWN_MS = 5000L; // 5 seconds
-
-    // ability caps
-    private static final int MAX_CLAWS = 2; // Strength up to II
-    private static final int MAX_RABIES = 5; // up to 25% (5 * 5%)
-    private static final int MAX_PROTECTIVE = 3; // up to 30% (3 * 10%)
-    private static final int MAX_PURRING = 2; // Regen up to II
-    private static final int MAX_HEALTHKITTY = 5; // up to +10 HP (5 hearts)
-    private static final int MAX_ZOOM = 3; // up to 12 blocks (3*4)
+    /** One line of the Blood Point leaderboard; {@code rank} starts at 1. */
+    public record BloodPointRank(int rank, UUID uuid, int bloodPoints) {
+    }
 
-    // items used in GUI (simple)
-    private static final String UPGRADE_INV_TITLE = ChatColor.DARK_PURPLE + "CATSMP Upgrade Menu";
+    static final int MAX_BP = 5;
+    private static final int TOP_PAGE_SIZE = 10;
+    private static final DateTimeFormatter AUDIT_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss", Locale.ROOT)
+            .withZone(ZoneId.systemDefault());
 
     // ----- runtime data -----
-    private File dataFile;
-    private FileConfiguration data;
-
-    private final Random random = new Random();
-
-    // in-memory caches (for quick access)
-    // not strictly necessary but convenient
-    private final Map<UUID, Role> roles = new HashMap<>();
-    private final Map<UUID, Integer> bloodPoints = new HashMap<>();
-    private final Map<UUID, Map<String, Integer>> abilityLevels = new HashMap<>();
-    private final Map<UUID, Boolean> zoomComboEnabled = new HashMap<>();
-    private final Map<UUID, Long> lastDash = new HashMap<>();
+    private ProfileStore store;
+    private ProfileWriter writer;
+    private BpJournal journal; // null when journal.enabled is false or it failed to open
+    private ProfileBackups backups; // null when backups.enabled is false
+    private AuditLog audit; // null when audit.enabled is false or it failed to open
+    // every BP change goes through here into the leaderboard (and the journal)
+    private final Leaderboard leaderboard = new Leaderboard();
+    private PlayerProfile.ChangeListener profileChanges;
+    // CatSmpApi for other plugins; also sees every profile change
+    private ProfileApi api;
+    // one /catsmp migrate at a time
+    private final AtomicBoolean migrating = new AtomicBoolean();
+    // one bulk addbp/removebp/setbp at a time
+    private final AtomicBoolean bulkRunning = new AtomicBoolean();
+    // one /catsmp restore at a time
+    private final AtomicBoolean restoring = new AtomicBoolean();
+
+    // ----- instrumentation (/catsmp stats) -----
+    private final Metrics metrics = new Metrics(false);
+    private final Metrics.Timer saveAllTimer = metrics.timer("storage", "saveAllData");
+
+    // in-memory profiles of online players (loaded on join, dropped on quit)
+    // concurrent: on Folia handlers for different players run on different region threads
+    private final Map<UUID, PlayerProfile> profiles = new ConcurrentHashMap<>();
+    // players who left recently or were looked up by an admin command; bounded LRU
+    private ProfileCache offline;
+    // active-ability cooldowns of online players
+    private final Cooldowns cooldowns = new Cooldowns();
+    private ComboEngine combos;
+    private EffectReconciler effects;
+    private Messages messages;
+    // join/quit, kills, the upgrade menu and the dash
+    private ProfileListener players;
 
     @Override
     public void onEnable() {
         getLogger().info("CATSMPMC enabling...");
 
-        // create data file if needed
-        dataFile = new File(getDataFolder(), "data.yml");
-        if (!dataFile.exists()) {
-            getDataFolder().mkdirs();
+        saveDefaultConfig();
+        metrics.setEnabled(getConfig().getBoolean("metrics.enabled", false));
+
+        getDataFolder().mkdirs();
+        String abilityProblem = loadAbilities();
+        if (abilityProblem != null)
+            getLogger().warning("abilities.yml not loaded, using the built-in numbers: " + abilityProblem);
+        store = openStore();
+        journal = openJournal();
+        audit = openAudit();
+        api = new ProfileApi(getLogger(), apiHost());
+        profileChanges = PlayerProfile.ChangeListener.of(journal, leaderboard, api);
+        buildLeaderboard();
+
+        // write-behind: changes are batched and written off the main thread
+        writer = new ProfileWriter(getLogger(), store, this::snapshot, metrics.timer("storage", "flush"));
+        // snapshots are thread-safe, so the flush doesn't need a tick thread (50ms per tick)
+        long flushMs = Math.max(1L, getConfig().getLong("storage.flush-interval-ticks", 100L)) * 50L;
+        Bukkit.getAsyncScheduler().runAtFixedRate(this, task -> writer.flush(), flushMs, flushMs,
+                TimeUnit.MILLISECONDS);
+        // an evicted profile may still be dirty: release() snapshots it for the next flush
+        offline = new ProfileCache(getConfig().getInt("storage.offline-cache-size", 1000), writer::release);
+        if (store instanceof SharedProfileStore shared)
+            shared.start(sharedLocal());
+
+        if (journal != null) {
+            long compactSecs = Math.max(10L, getConfig().getLong("journal.compact-interval-seconds", 300L));
+            Bukkit.getAsyncScheduler().runAtFixedRate(this,
+                    task -> journal.compact(writer, profiles.keySet(),
+                            getConfig().getLong("storage.shutdown-timeout-seconds", 10L)),
+                    compactSecs, compactSecs, TimeUnit.SECONDS);
+        }
+
+        if (getConfig().getBoolean("backups.enabled", true)) {
+            backups = new ProfileBackups(getLogger(), new File(getDataFolder(), "backups").toPath(), store, writer,
+                    getConfig().getInt("backups.full-every", 24), getConfig().getLong("backups.retention-hours", 168L));
+            long backupMins = Math.max(1L, getConfig().getLong("backups.interval-minutes", 30L));
+            Bukkit.getAsyncScheduler().runAtFixedRate(this, task -> takeBackup(false), backupMins, backupMins,
+                    TimeUnit.MINUTES);
+        }
+
+        // Prometheus text file for scraping (node_exporter textfile collector or similar)
+        long exportSecs = Math.max(1L, getConfig().getLong("metrics.export-interval-seconds", 60L));
+        File promFile = new File(getDataFolder(), "metrics.prom");
+        Bukkit.getAsyncScheduler().runAtFixedRate(this, task -> {
+            if (!metrics.isEnabled())
+                return;
             try {
-                dataFile.createNewFile();
+                metrics.export(promFile.toPath());
             } catch (IOException e) {
-                getLogger().severe("Could not create data.yml: " + e.getMessage());
+                getLogger().warning("Could not write metrics.prom: " + e.getMessage());
             }
-        }
-        data = YamlConfiguration.loadConfiguration(dataFile);
+        }, exportSecs, exportSecs, TimeUnit.SECONDS);
 
-        // load existing saved data into memory
+        messages = new Messages(getLogger());
+        loadMessages();
+
+        effects = new EffectReconciler(this, p -> players.applyAbilities(p));
+        combos = new ComboEngine(ComboEngine.parse(getConfig().getConfigurationSection("combos"), getLogger()),
+                (p, ability) -> players.triggerCombo(p, ability), metrics);
+        players = new ProfileListener(getLogger(), store, writer, profiles, offline, profileChanges, cooldowns,
+                combos, effects, messages, audit, metrics);
+
+        // players already online (e.g. after /reload)
         loadAllData();
 
         // register command executor for catsmp and zoom and role
-        Objects.requireNonNull(getCommand("catsmp")).setExecutor((sender, command, label, args) -> {
+        Objects.requireNonNull(getCommand("catsmp")).setExecutor(timed("catsmp", (sender, command, label, args) -> {
             return handleCatsmpCommand(sender, command.getName(), args);
-        });
-        Objects.requireNonNull(getCommand("zoom")).setExecutor((sender, command, label, args) -> {
+        }));
+        Objects.requireNonNull(getCommand("zoom")).setExecutor(timed("zoom", (sender, command, label, args) -> {
             if (sender instanceof Player p) {
-                triggerDash(p);
+                players.triggerDash(p);
                 return true;
             }
             sender.sendMessage("Only players can use /zoom");
             return true;
-        });
-        Objects.requireNonNull(getCommand("zoomcombo")).setExecutor((sender, command, label, args) -> {
+        }));
+        Objects.requireNonNull(getCommand("zoomcombo")).setExecutor(timed("zoomcombo",
+                (sender, command, label, args) -> {
             if (sender instanceof Player p) {
-                boolean cur = zoomComboEnabled.getOrDefault(p.getUniqueId(), true);
-                zoomComboEnabled.put(p.getUniqueId(), !cur);
+                PlayerProfile prof = players.profile(p.getUniqueId());
+                boolean now = prof.toggleZoomCombo();
+                combos.refresh(p, prof);
                 p.sendMessage(ChatColor.GREEN + "Sneak+Jump combo zoom is now: "
-                        + (!cur ? ChatColor.AQUA + "enabled" : ChatColor.RED + "disabled"));
-                savePlayer(p.getUniqueId());
+                        + (now ? ChatColor.AQUA + "enabled" : ChatColor.RED + "disabled"));
+                players.savePlayer(p.getUniqueId());
                 return true;
             }
             sender.sendMessage("Only players can toggle zoom combo");
             return true;
-        });
-        Objects.requireNonNull(getCommand("role")).setExecutor((sender, command, label, args) -> {
+        }));
+        Objects.requireNonNull(getCommand("role")).setExecutor(timed("role", (sender, command, label, args) -> {
             if (args.length >= 3 && args[0].equalsIgnoreCase("set") && sender.hasPermission("catsmp.admin")) {
                 Player target = Bukkit.getPlayerExact(args[1]);
                 if (target == null) {
@@ -115,128 +180,347 @@ public class CATSMPMC extends JavaPlugin implements Listener {
                     return true;
                 }
                 Role r = args[2].equalsIgnoreCase("passive") ? Role.PASSIVE : Role.AGGRESSIVE;
-                roles.put(target.getUniqueId(), r);
-                // ensure data keys exist
-                bloodPoints.putIfAbsent(target.getUniqueId(), 3);
-                abilityLevels.putIfAbsent(target.getUniqueId(), new HashMap<>());
-                zoomComboEnabled.putIfAbsent(target.getUniqueId(), true);
-                applyAbilities(target);
-                savePlayer(target.getUniqueId());
+                players.profile(target.getUniqueId()).setRole(r);
+                // the target may be ticked by another region thread than this command
+                target.getScheduler().run(this, task -> players.applyAbilities(target), null);
+                players.savePlayer(target.getUniqueId());
                 sender.sendMessage(ChatColor.GREEN + "Set role of " + target.getName() + " to " + r.name());
                 return true;
             }
             sender.sendMessage(ChatColor.YELLOW + "Usage: /role set <player> <passive|aggressive> (admin only)");
             return true;
-        });
+        }));
 
         // register events
-        getServer().getPluginManager().registerEvents(this, this);
+        getServer().getPluginManager().registerEvents(players, this);
+        getServer().getPluginManager().registerEvents(new CombatListener(profiles, messages, metrics), this);
+        getServer().getPluginManager().registerEvents(combos, this);
+        getServer().getPluginManager().registerEvents(effects, this);
+        getServer().getServicesManager().register(CatSmpApi.class, api, this, ServicePriority.Normal);
 
         getLogger().info("CATSMPMC enabled!");
     }
 
     @Override
     public void onDisable() {
+        getServer().getServicesManager().unregisterAll(this);
+        if (api != null)
+            api.close();
         // save all player data
-        saveAllData();
+        if (writer != null) {
+            Bukkit.getAsyncScheduler().cancelTasks(this);
+            saveAllData();
+            writer.shutdown(getConfig().getLong("storage.shutdown-timeout-seconds", 10L));
+        }
+        // after the writer: anything it could not save is still in the journal for the next start
+        if (journal != null)
+            journal.close();
+        if (audit != null)
+            audit.close();
         getLogger().info("CATSMPMC disabled and data saved.");
     }
 
     // -------------------------
     // Data load/save
     // -------------------------
-    private void loadAllData() {
-        if (data == null)
-            return;
-
-        ConfigurationSection playersSection = data.getConfigurationSection("players");
-        if (playersSection == null)
-            return;
+    private ProfileStore openStore() {
+        String type = getConfig().getString("storage.type", "sharded").toLowerCase(Locale.ROOT);
+        File legacy = new File(getDataFolder(), "data.yml");
+        if (type.equals("yaml")) {
+            return new YamlProfileStore(legacy);
+        }
 
-        for (String uuidStr : playersSection.getKeys(false)) {
+        ProfileStore target = null;
+        if (type.equals("binary")) {
             try {
-                UUID uuid = UUID.fromString(uuidStr);
-                String roleStr = data.getString("players." + uuidStr + ".role", "PASSIVE");
-                roles.put(uuid, Role.valueOf(roleStr));
-                int bp = data.getInt("players." + uuidStr + ".bloodpoints", 3);
-                bloodPoints.put(uuid, Math.min(bp, MAX_BP));
-
-                // abilities
-                Map<String, Integer> map = new HashMap<>();
-                if (data.contains("players." + uuidStr + ".abilities")) {
-                    ConfigurationSection abilities = data.getConfigurationSection("players." + uuidStr + ".abilities");
-                    for (String ability : abilities.getKeys(false)) {
-                        int lvl = abilities.getInt(ability, 0);
-                        map.put(ability, lvl);
-                    }
-                }
-                abilityLevels.put(uuid, map);
+                BinaryProfileStore binary = new BinaryProfileStore(new File(getDataFolder(), "profiles.dat"));
+                if (binary.corruptRecords() > 0)
+                    getLogger().warning(binary.corruptRecords() + " record(s) in profiles.dat failed their checksum"
+                            + " and were skipped; those players start over unless a backup is restored");
+                target = binary;
+            } catch (IOException e) {
+                getLogger().severe("Could not open profiles.dat, falling back to sharded storage: " + e.getMessage());
+            }
+        } else if (type.equals("sqlite")) {
+            try {
+                target = new SqliteProfileStore(new File(getDataFolder(), "profiles.db"),
+                        getConfig().getInt("storage.sqlite.read-connections", 4));
+            } catch (IOException e) {
+                getLogger().severe("Could not open profiles.db, falling back to sharded storage: " + e.getMessage());
+            }
+        } else if (type.equals("shared")) {
+            String dir = getConfig().getString("storage.shared.directory", "shared");
+            String node = getConfig().getString("storage.shared.node-id", "");
+            if (node.isBlank())
+                node = UUID.randomUUID().toString().substring(0, 8);
+            try {
+                // relative paths are relative to the plugin folder
+                Path shared = getDataFolder().toPath().resolve(dir).normalize();
+                SyncChannel channel = new DirectorySyncChannel(getLogger(), shared.resolve("bus"), node,
+                        getConfig().getLong("storage.shared.poll-interval-ms", 250L));
+                target = new SharedProfileStore(getLogger(), shared, channel);
+                getLogger().info("Shared storage in " + shared + " as node " + node);
+            } catch (IOException e) {
+                getLogger().severe("Could not open shared storage, falling back to sharded storage: "
+                        + e.getMessage());
+            }
+        } else if (!type.equals("sharded")) {
+            getLogger().warning("Unknown storage.type '" + type + "', using sharded");
+        }
+        if (target == null)
+            target = new ShardedProfileStore(new File(getDataFolder(), "players"));
 
-                zoomComboEnabled.put(uuid, data.getBoolean("players." + uuidStr + ".zoomcombo", true));
-            } catch (IllegalArgumentException ex) {
-                getLogger().warning("Bad UUID in data.yml: " + uuidStr);
+        if (legacy.isFile()) {
+            try {
+                int n = LegacyMigrator.migrate(getLogger(), legacy, target);
+                getLogger().info("Migrated " + n + " profiles from data.yml to " + type + " storage.");
+            } catch (IOException e) {
+                getLogger().severe("Could not migrate data.yml: " + e.getMessage());
             }
         }
+        return target;
     }
 
-    private void saveAllData() {
-        if (data == null)
-            data = new YamlConfiguration();
-        // clear players section
-        data.set("players", null);
+    // what the shared store may see and do on this server
+    private SharedProfileStore.Local sharedLocal() {
+        return new SharedProfileStore.Local() {
+            @Override
+            public PlayerProfile loaded(UUID uuid) {
+                return CATSMPMC.this.loaded(uuid);
+            }
 
-        for (UUID uuid : roles.keySet()) {
-            String path = "players." + uuid.toString();
-            data.set(path + ".role", roles.getOrDefault(uuid, Role.PASSIVE).name());
-            data.set(path + ".bloodpoints", bloodPoints.getOrDefault(uuid, 3));
-            data.set(path + ".zoomcombo", zoomComboEnabled.getOrDefault(uuid, true));
+            @Override
+            public boolean hasUnsaved(UUID uuid) {
+                return writer.unsaved(uuid) != null;
+            }
+
+            @Override
+            public void resave(UUID uuid) {
+                writer.markDirty(uuid);
+            }
+
+            @Override
+            public void rebased(UUID uuid) {
+                Player p = Bukkit.getPlayer(uuid);
+                if (p != null)
+                    p.getScheduler().run(CATSMPMC.this, task -> players.applyAbilities(p), null);
+            }
+        };
+    }
 
-            Map<String, Integer> map = abilityLevels.getOrDefault(uuid, new HashMap<>());
-            for (Map.Entry<String, Integer> e : map.entrySet()) {
-                data.set(path + ".abilities." + e.getKey(), e.getValue());
+    /**
+     * Replays leftover journal segments into the store (a crash last time),
+     * then starts a fresh journal. If the replay fails the old segments are
+     * kept and journaling stays off, so compaction can't delete them.
+     */
+    private BpJournal openJournal() {
+        if (!getConfig().getBoolean("journal.enabled", true))
+            return null;
+        Path dir = new File(getDataFolder(), "journal").toPath();
+        try {
+            BpJournal.replay(getLogger(), dir, store);
+            if (store instanceof SharedProfileStore) {
+                // records are absolute values; replaying them after a crash would undo what other servers saved since
+                getLogger().info("The BP journal is not used with shared storage.");
+                return null;
             }
+            return new BpJournal(getLogger(), dir, getConfig().getLong("journal.commit-interval-ms", 10L));
+        } catch (IOException e) {
+            getLogger().severe("Could not replay the BP journal, running without it: " + e.getMessage());
+            return null;
         }
+    }
 
+    private AuditLog openAudit() {
+        if (!getConfig().getBoolean("audit.enabled", true))
+            return null;
         try {
-            data.save(dataFile);
+            return new AuditLog(getLogger(), new File(getDataFolder(), "audit").toPath(),
+                    getConfig().getInt("audit.buffer-events", 16384),
+                    getConfig().getLong("audit.flush-interval-ms", 1000L),
+                    getConfig().getLong("audit.max-file-mb", 16L),
+                    getConfig().getLong("audit.retention-days", 90L));
         } catch (IOException e) {
-            getLogger().severe("Failed to save data.yml: " + e.getMessage());
+            getLogger().severe("Could not open the audit log, running without it: " + e.getMessage());
+            return null;
         }
     }
 
-    private void savePlayer(UUID uuid) {
-        if (data == null)
-            data = new YamlConfiguration();
-        String path = "players." + uuid.toString();
-        data.set(path + ".role", roles.getOrDefault(uuid, Role.PASSIVE).name());
-        data.set(path + ".bloodpoints", bloodPoints.getOrDefault(uuid, 3));
-        data.set(path + ".zoomcombo", zoomComboEnabled.getOrDefault(uuid, true));
-        Map<String, Integer> map = abilityLevels.getOrDefault(uuid, new HashMap<>());
-        data.set(path + ".abilities", null); // clear then repopulate
-        for (Map.Entry<String, Integer> e : map.entrySet()) {
-            data.set(path + ".abilities." + e.getKey(), e.getValue());
+    // offline players come from one scan of the store; changes from then on arrive through profileChanges
+    private void buildLeaderboard() {
+        Bukkit.getAsyncScheduler().runNow(this, task -> {
+            long start = System.nanoTime();
+            try {
+                store.scanBloodPoints(leaderboard::seed);
+                getLogger().info("Leaderboard: " + leaderboard.size() + " players in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            } catch (IOException | RuntimeException e) {
+                getLogger().warning("Could not build the leaderboard, it only has players seen since: "
+                        + e.getMessage());
+            } finally {
+                leaderboard.ready();
+            }
+        });
+    }
+
+    // only online players are kept in memory; everyone else stays in the store
+    private void loadAllData() {
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            players.loadProfile(p.getUniqueId());
+            p.getScheduler().run(this, task -> players.applyAbilities(p), null);
         }
+    }
+
+    // online profile, else the offline cache, else the store (cached from then on); null if never saved.
+    // May block on a storage read
+    private PlayerProfile lookup(UUID uuid) {
+        PlayerProfile prof = cached(uuid);
+        if (prof != null)
+            return prof;
+        ProfileSnapshot snap = players.readProfile(uuid);
+        if (snap == null)
+            return null;
+        prof = offline.putIfAbsent(uuid, new PlayerProfile(snap, profileChanges));
+        PlayerProfile online = profiles.get(uuid);
+        if (online != null) {
+            // joined while we were reading: the pinned profile wins
+            offline.remove(uuid);
+            return online;
+        }
+        return prof;
+    }
+
+    // marks every loaded profile dirty; the writer picks them up on its next flush
+    private void saveAllData() {
+        long t = saveAllTimer.start();
+        try {
+            for (UUID uuid : profiles.keySet()) {
+                writer.markDirty(uuid);
+            }
+        } finally {
+            saveAllTimer.stop(t);
+        }
+    }
+
+    // online profile, else the offline cache (which counts as a use for its LRU order); never reads storage
+    private PlayerProfile cached(UUID uuid) {
+        PlayerProfile prof = profiles.get(uuid);
+        return prof != null ? prof : offline.get(uuid);
+    }
+
+    // online profile, else the offline cache; never blocks or reads storage
+    private PlayerProfile loaded(UUID uuid) {
+        PlayerProfile prof = profiles.get(uuid);
+        return prof != null ? prof : offline.peek(uuid);
+    }
+
+    private ProfileSnapshot snapshot(UUID uuid) {
+        PlayerProfile prof = loaded(uuid);
+        return prof == null ? null : prof.snapshot();
+    }
+
+    // what CatSmpApi may see and do
+    private ProfileApi.Host apiHost() {
+        return new ProfileApi.Host() {
+            @Override
+            public PlayerProfile loaded(UUID uuid) {
+                return CATSMPMC.this.loaded(uuid);
+            }
+
+            @Override
+            public PlayerProfile lookup(UUID uuid) {
+                return CATSMPMC.this.lookup(uuid);
+            }
+
+            @Override
+            public void spent(UUID uuid, int before, int after) {
+                audit(uuid, AuditLog.Reason.SPEND, null, before, after, null);
+                players.savePlayer(uuid);
+            }
+
+            @Override
+            public void runAsync(Runnable task) {
+                Bukkit.getAsyncScheduler().runNow(CATSMPMC.this, t -> task.run());
+            }
+        };
+    }
+
+    // background threads only: waits for the writer and writes the file; null if it failed (logged)
+    private ProfileBackups.Backup takeBackup(boolean full) {
         try {
-            data.save(dataFile);
+            return backups.take(full);
         } catch (IOException e) {
-            getLogger().severe("Failed to save player data for " + uuid + ": " + e.getMessage());
+            getLogger().warning("Backup failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // compiles abilities.yml and swaps it in; returns what is wrong with it instead if it can't be used.
+    // Like messages.yml it is written once with the built-in contents, and edits are kept across updates.
+    private String loadAbilities() {
+        File file = new File(getDataFolder(), "abilities.yml");
+        if (!file.exists())
+            saveResource("abilities.yml", false);
+        try {
+            AbilityTable.install(AbilityTable.load(file));
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            return e.getMessage();
         }
     }
 
+    private void loadMessages() {
+        File file = new File(getDataFolder(), "messages.yml");
+        if (!file.exists())
+            saveResource("messages.yml", false);
+        messages.load(file);
+    }
+
     // -------------------------
     // Commands
     // -------------------------
-    private boolean handleCatsmpCommand(org.bukkit.command.CommandSender sender, String name, String[] args) {
+    private CommandExecutor timed(String name, CommandExecutor executor) {
+        Metrics.Timer timer = metrics.timer("command", name);
+        return (sender, command, label, args) -> {
+            long t = timer.start();
+            try {
+                return executor.onCommand(sender, command, label, args);
+            } finally {
+                timer.stop(t);
+            }
+        };
+    }
+
+    private boolean handleCatsmpCommand(CommandSender sender, String name, String[] args) {
         // /catsmp ...
         if (args.length == 0) {
             sender.sendMessage(ChatColor.GREEN + "CATSMP Commands:");
             sender.sendMessage(ChatColor.YELLOW + "/catsmp upgrade" + ChatColor.WHITE + " - Open upgrade GUI");
             sender.sendMessage(ChatColor.YELLOW + "/catsmp checkbp [player]" + ChatColor.WHITE + " - Check BP");
-            sender.sendMessage(ChatColor.YELLOW + "/catsmp addbp <player>" + ChatColor.WHITE + " - Add BP (admin)");
+            sender.sendMessage(ChatColor.YELLOW + "/catsmp top [page]" + ChatColor.WHITE + " - BP leaderboard");
+            sender.sendMessage(
+                    ChatColor.YELLOW + "/catsmp addbp <player> [amt]" + ChatColor.WHITE + " - Add BP (admin)");
             sender.sendMessage(
-                    ChatColor.YELLOW + "/catsmp removebp <player>" + ChatColor.WHITE + " - Remove BP (admin)");
+                    ChatColor.YELLOW + "/catsmp removebp <player> [amt]" + ChatColor.WHITE + " - Remove BP (admin)");
             sender.sendMessage(
-                    ChatColor.YELLOW + "/catsmp setbp <player> <amt>" + ChatColor.WHITE + " - Set BP (admin)");
+                    ChatColor.YELLOW + "/catsmp setbp <player> <amt|+n|-n>" + ChatColor.WHITE + " - Set BP (admin)");
+            sender.sendMessage(ChatColor.GRAY + "  <player> may also be @a, @all, @role:<role> or @file:<uuid list>");
+            sender.sendMessage(
+                    ChatColor.YELLOW + "/catsmp storage" + ChatColor.WHITE + " - Persistence stats (admin)");
+            sender.sendMessage(
+                    ChatColor.YELLOW + "/catsmp stats [on|off|reset]" + ChatColor.WHITE + " - Timings (admin)");
+            sender.sendMessage(ChatColor.YELLOW + "/catsmp migrate <file> [validate]" + ChatColor.WHITE
+                    + " - Import a legacy data.yml (admin)");
+            sender.sendMessage(ChatColor.YELLOW + "/catsmp query <top [n]|maxed <ability> [n]>" + ChatColor.WHITE
+                    + " - Query stored profiles (admin, sqlite)");
+            sender.sendMessage(ChatColor.YELLOW + "/catsmp reload" + ChatColor.WHITE
+                    + " - Reload abilities.yml and messages.yml (admin)");
+            sender.sendMessage(ChatColor.YELLOW + "/catsmp backup [full]" + ChatColor.WHITE
+                    + " - Back up all profiles now (admin)");
+            sender.sendMessage(ChatColor.YELLOW + "/catsmp restore [<backup> [player]]" + ChatColor.WHITE
+                    + " - List backups, or roll back a player or everyone (admin)");
+            sender.sendMessage(ChatColor.YELLOW + "/catsmp audit <player> [n]" + ChatColor.WHITE
+                    + " - Recent Blood Point changes of a player (admin)");
             return true;
         }
 
@@ -259,7 +543,7 @@ public class CATSMPMC extends JavaPlugin implements Listener {
                     return true;
                 }
                 Player p = (Player) sender;
-                int bp = bloodPoints.getOrDefault(p.getUniqueId(), 3);
+                int bp = getBP(p.getUniqueId());
                 p.sendMessage(ChatColor.GOLD + "You have " + ChatColor.AQUA + bp + ChatColor.GOLD + "/" + MAX_BP
                         + " Blood Points.");
                 return true;
@@ -269,105 +553,355 @@ public class CATSMPMC extends JavaPlugin implements Listener {
                     return true;
                 }
                 Player target = Bukkit.getPlayer(args[1]);
-                if (target == null) {
-                    sender.sendMessage(ChatColor.RED + "Player not found.");
+                if (target != null) {
+                    int bp = getBP(target.getUniqueId());
+                    sender.sendMessage(ChatColor.GOLD + target.getName() + " has " + ChatColor.AQUA + bp
+                            + ChatColor.GOLD + "/" + MAX_BP + " Blood Points.");
                     return true;
                 }
-                int bp = bloodPoints.getOrDefault(target.getUniqueId(), 3);
-                sender.sendMessage(ChatColor.GOLD + target.getName() + " has " + ChatColor.AQUA + bp + ChatColor.GOLD
-                        + "/" + MAX_BP + " Blood Points.");
+                // offline: served from the offline cache, read into it in the background on a miss
+                withTarget(args[1], t -> {
+                    if (t == null)
+                        sender.sendMessage(ChatColor.RED + "Player not found.");
+                    else
+                        sender.sendMessage(ChatColor.GOLD + t.name() + " has " + ChatColor.AQUA
+                                + t.profile().bloodPoints() + ChatColor.GOLD + "/" + MAX_BP + " Blood Points.");
+                });
                 return true;
             }
         }
 
-        if (sub.equals("addbp")) {
-            if (!sender.hasPermission("catsmp.addbp")) {
+        if (sub.equals("addbp") || sub.equals("removebp")) {
+            if (!sender.hasPermission("catsmp." + sub)) {
                 sender.sendMessage(ChatColor.RED + "You don't have permission.");
                 return true;
             }
             if (args.length < 2) {
-                sender.sendMessage(ChatColor.RED + "Usage: /catsmp addbp <player>");
+                sender.sendMessage(ChatColor.RED + "Usage: /catsmp " + sub + " <player|selector> [amount]");
                 return true;
             }
-            Player target = Bukkit.getPlayerExact(args[1]);
-            if (target == null) {
-                sender.sendMessage(ChatColor.RED + "Player not found.");
+            int amount = 1;
+            if (args.length >= 3) {
+                try {
+                    amount = Integer.parseInt(args[2]);
+                } catch (NumberFormatException ex) {
+                    amount = 0;
+                }
+                if (amount < 1) {
+                    sender.sendMessage(ChatColor.RED + "Amount must be a positive number.");
+                    return true;
+                }
+            }
+            changeBloodPoints(sender, args[1], new BulkBp.Op(true, sub.equals("addbp") ? amount : -amount));
+            return true;
+        }
+
+        if (sub.equals("setbp")) {
+            if (!sender.hasPermission("catsmp.setbp")) {
+                sender.sendMessage(ChatColor.RED + "You don't have permission.");
                 return true;
             }
-            UUID uuid = target.getUniqueId();
-            int cur = bloodPoints.getOrDefault(uuid, 3);
-            if (cur >= MAX_BP) {
-                sender.sendMessage(ChatColor.YELLOW + target.getName() + " already has max BP (" + MAX_BP + ").");
+            if (args.length < 3) {
+                sender.sendMessage(ChatColor.RED + "Usage: /catsmp setbp <player|selector> <amount|+n|-n>");
                 return true;
             }
-            int next = Math.min(cur + 1, MAX_BP);
-            bloodPoints.put(uuid, next);
-            savePlayer(uuid);
-            sender.sendMessage(
-                    ChatColor.GREEN + "Added 1 BP to " + target.getName() + " (" + next + "/" + MAX_BP + ")");
-            target.sendMessage(ChatColor.GOLD + "You received 1 Blood Point! (" + next + "/" + MAX_BP + ")");
+            BulkBp.Op op = BulkBp.Op.parseSet(args[2]);
+            if (op == null) {
+                sender.sendMessage(ChatColor.RED + "Amount must be a number.");
+                return true;
+            }
+            if (!op.relative() && (op.amount() < 0 || op.amount() > MAX_BP)) {
+                sender.sendMessage(ChatColor.RED + "Amount must be between 0 and " + MAX_BP);
+                return true;
+            }
+            changeBloodPoints(sender, args[1], op);
+            return true;
+        }
+
+        if (sub.equals("top")) {
+            int page = 1;
+            if (args.length >= 2) {
+                try {
+                    page = Math.max(1, Integer.parseInt(args[1]));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid page number.");
+                    return true;
+                }
+            }
+            int pages = Math.max(1, (leaderboard.size() + TOP_PAGE_SIZE - 1) / TOP_PAGE_SIZE);
+            page = Math.min(page, pages);
+            sender.sendMessage(ChatColor.GREEN + "Blood Point leaderboard (page " + page + "/" + pages + "):");
+            for (BloodPointRank r : leaderboard.page((page - 1) * TOP_PAGE_SIZE, TOP_PAGE_SIZE)) {
+                String rowName = Bukkit.getOfflinePlayer(r.uuid()).getName();
+                sender.sendMessage(ChatColor.YELLOW + "" + r.rank() + ". " + ChatColor.WHITE
+                        + (rowName != null ? rowName : r.uuid().toString()) + ChatColor.GRAY + " - "
+                        + r.bloodPoints() + " BP");
+            }
+            if (sender instanceof Player p) {
+                int rank = leaderboard.rank(p.getUniqueId());
+                sender.sendMessage(rank == 0 ? ChatColor.GOLD + "You are not ranked: you have no Blood Points."
+                        : ChatColor.GOLD + "Your rank: " + ChatColor.AQUA + rank + ChatColor.GOLD + " of "
+                                + leaderboard.size());
+            }
+            if (!leaderboard.isReady())
+                sender.sendMessage(ChatColor.GRAY + "(still reading offline players, try again in a moment)");
             return true;
         }
 
-        if (sub.equals("removebp")) {
-            if (!sender.hasPermission("catsmp.removebp")) {
+        if (sub.equals("storage")) {
+            if (!sender.hasPermission("catsmp.admin")) {
+                sender.sendMessage(ChatColor.RED + "You don't have permission.");
+                return true;
+            }
+            sender.sendMessage(ChatColor.GREEN + "CATSMP storage:");
+            sender.sendMessage(ChatColor.YELLOW + "Queue: " + ChatColor.WHITE + writer.dirtyCount() + " dirty, "
+                    + writer.inFlightCount() + " being written");
+            sender.sendMessage(ChatColor.YELLOW + "Flushes: " + ChatColor.WHITE + writer.flushCount()
+                    + " (last batch " + writer.lastBatchSize() + " profiles)");
+            sender.sendMessage(ChatColor.YELLOW + "Flush latency: " + ChatColor.WHITE
+                    + String.format(Locale.ROOT, "last %.2fms, avg %.2fms, max %.2fms", writer.lastFlushMillis(),
+                            writer.avgFlushMillis(), writer.maxFlushMillis()));
+            sender.sendMessage(ChatColor.YELLOW + "Offline cache: " + ChatColor.WHITE + offline.size() + "/"
+                    + offline.capacity() + " profiles, " + offline.hits() + " hits, " + offline.misses()
+                    + " misses, " + offline.evictions() + " evictions");
+            if (store instanceof SharedProfileStore shared) {
+                sender.sendMessage(ChatColor.YELLOW + "Shared store: " + ChatColor.WHITE + shared.saveCount()
+                        + " saves, " + shared.mergeCount() + " merged with other servers, " + shared.resaveCount()
+                        + " resaved, " + shared.conflictCount() + " reloaded without a merge base, "
+                        + shared.remoteUpdateCount() + " remote updates applied");
+            }
+            if (journal != null) {
+                long ago = journal.lastCompactMillis() == 0 ? -1
+                        : (System.currentTimeMillis() - journal.lastCompactMillis()) / 1000;
+                sender.sendMessage(ChatColor.YELLOW + "Journal: " + ChatColor.WHITE + journal.appendedCount()
+                        + " records, " + journal.syncCount() + " fsyncs, segment " + journal.segmentBytes() / 1024
+                        + " KB, compacted " + (ago < 0 ? "never" : ago + "s ago"));
+            } else {
+                sender.sendMessage(ChatColor.YELLOW + "Journal: " + ChatColor.WHITE + "off");
+            }
+            if (backups == null) {
+                sender.sendMessage(ChatColor.YELLOW + "Backups: " + ChatColor.WHITE + "off");
+            } else if (backups.lastId() == null) {
+                sender.sendMessage(ChatColor.YELLOW + "Backups: " + ChatColor.WHITE + "none taken since startup, "
+                        + backups.failureCount() + " failed");
+            } else {
+                sender.sendMessage(ChatColor.YELLOW + "Backups: " + ChatColor.WHITE + "last " + backups.lastId() + " ("
+                        + backups.lastProfiles() + " profiles, " + backups.lastBytes() / 1024 + " KB, "
+                        + backups.lastMillis() + "ms), " + backups.failureCount() + " failed");
+            }
+            if (audit != null) {
+                sender.sendMessage(ChatColor.YELLOW + "Audit log: " + ChatColor.WHITE + audit.recordedCount()
+                        + " events, " + audit.writtenCount() + " written, " + audit.droppedCount() + " dropped, file "
+                        + audit.segmentBytes() / 1024 + " KB");
+            } else {
+                sender.sendMessage(ChatColor.YELLOW + "Audit log: " + ChatColor.WHITE + "off");
+            }
+            return true;
+        }
+
+        if (sub.equals("stats")) {
+            if (!sender.hasPermission("catsmp.admin")) {
+                sender.sendMessage(ChatColor.RED + "You don't have permission.");
+                return true;
+            }
+            if (args.length >= 2) {
+                switch (args[1].toLowerCase(Locale.ROOT)) {
+                    case "on" -> metrics.setEnabled(true);
+                    case "off" -> metrics.setEnabled(false);
+                    case "reset" -> metrics.reset();
+                    default -> {
+                        sender.sendMessage(ChatColor.RED + "Usage: /catsmp stats [on|off|reset]");
+                        return true;
+                    }
+                }
+            }
+            sender.sendMessage(ChatColor.GREEN + "CATSMP stats (recording "
+                    + (metrics.isEnabled() ? ChatColor.AQUA + "on" : ChatColor.RED + "off") + ChatColor.GREEN + "):");
+            for (Metrics.Timer timer : metrics.timers()) {
+                if (timer.count() == 0)
+                    continue;
+                sender.sendMessage(ChatColor.YELLOW + timer.kind + " " + timer.name + ": " + ChatColor.WHITE
+                        + timer.count() + " calls, avg " + Metrics.formatNanos(timer.avgNanos())
+                        + ", p50 " + Metrics.formatNanos(timer.percentileNanos(0.50))
+                        + ", p99 " + Metrics.formatNanos(timer.percentileNanos(0.99))
+                        + ", max " + Metrics.formatNanos(timer.maxNanos()));
+            }
+            return true;
+        }
+
+        if (sub.equals("migrate")) {
+            if (!sender.hasPermission("catsmp.admin")) {
                 sender.sendMessage(ChatColor.RED + "You don't have permission.");
                 return true;
             }
             if (args.length < 2) {
-                sender.sendMessage(ChatColor.RED + "Usage: /catsmp removebp <player>");
+                sender.sendMessage(ChatColor.RED + "Usage: /catsmp migrate <file in the plugin folder> [validate]");
                 return true;
             }
-            Player target = Bukkit.getPlayerExact(args[1]);
-            if (target == null) {
-                sender.sendMessage(ChatColor.RED + "Player not found.");
+            boolean validateOnly = args.length >= 3 && args[2].equalsIgnoreCase("validate");
+            if (store instanceof YamlProfileStore && !validateOnly) {
+                sender.sendMessage(ChatColor.RED + "storage.type is yaml; there is nothing to migrate into.");
                 return true;
             }
-            UUID uuid = target.getUniqueId();
-            int cur = bloodPoints.getOrDefault(uuid, 3);
-            if (cur <= 0) {
-                sender.sendMessage(ChatColor.YELLOW + target.getName() + " already has 0 BP.");
+            File legacy = new File(getDataFolder(), args[1]);
+            // only files directly inside the plugin folder
+            if (!legacy.getParentFile().equals(getDataFolder()) || !legacy.isFile()) {
+                sender.sendMessage(ChatColor.RED + "No file named " + args[1] + " in the plugin folder.");
                 return true;
             }
-            int next = Math.max(cur - 1, 0);
-            bloodPoints.put(uuid, next);
-            savePlayer(uuid);
-            sender.sendMessage(
-                    ChatColor.GREEN + "Removed 1 BP from " + target.getName() + " (" + next + "/" + MAX_BP + ")");
-            target.sendMessage(ChatColor.RED + "You lost 1 Blood Point! (" + next + "/" + MAX_BP + ")");
+            if (!migrating.compareAndSet(false, true)) {
+                sender.sendMessage(ChatColor.RED + "A migration is already running.");
+                return true;
+            }
+            sender.sendMessage(ChatColor.GREEN + (validateOnly ? "Validating " : "Importing ") + legacy.getName()
+                    + " in the background...");
+            Bukkit.getAsyncScheduler().runNow(this, task -> {
+                try {
+                    // online players keep what they have in memory; everyone else gets the file's data
+                    LegacyMigrator.Report report = LegacyMigrator.importFile(legacy,
+                            validateOnly ? null : this::importBatch,
+                            uuid -> profiles.containsKey(uuid) || players.isPreloaded(uuid),
+                            (read, total, records) -> sender.sendMessage(ChatColor.GRAY
+                                    + String.format(Locale.ROOT, "%s: %d%% (%d records)", legacy.getName(),
+                                            total == 0 ? 100 : read * 100 / total, records)));
+                    LegacyMigrator.log(getLogger(), legacy, report);
+                    if (!validateOnly)
+                        LegacyMigrator.markMigrated(legacy);
+                    sender.sendMessage(ChatColor.GREEN + legacy.getName() + ": " + report);
+                    if (report.problemCount() > 0)
+                        sender.sendMessage(ChatColor.YELLOW + "" + report.problemCount()
+                                + " problems, see the server log.");
+                } catch (IOException e) {
+                    getLogger().severe("Could not migrate " + legacy.getName() + ": " + e.getMessage());
+                    sender.sendMessage(ChatColor.RED + "Migration failed: " + e.getMessage());
+                } finally {
+                    migrating.set(false);
+                }
+            });
             return true;
         }
 
-        if (sub.equals("setbp")) {
-            if (!sender.hasPermission("catsmp.setbp")) {
+        if (sub.equals("query")) {
+            if (!sender.hasPermission("catsmp.admin")) {
                 sender.sendMessage(ChatColor.RED + "You don't have permission.");
                 return true;
             }
-            if (args.length < 3) {
-                sender.sendMessage(ChatColor.RED + "Usage: /catsmp setbp <player> <amount>");
+            if (!(store instanceof SqliteProfileStore sql)) {
+                sender.sendMessage(ChatColor.RED + "Queries need storage.type: sqlite.");
                 return true;
             }
-            Player target = Bukkit.getPlayerExact(args[1]);
-            if (target == null) {
-                sender.sendMessage(ChatColor.RED + "Player not found.");
+            boolean top = args.length >= 2 && args[1].equalsIgnoreCase("top");
+            Ability ability = !top && args.length >= 3 && args[1].equalsIgnoreCase("maxed") ? Ability.byKey(args[2])
+                    : null;
+            if (!top && ability == null) {
+                sender.sendMessage(ChatColor.RED + "Usage: /catsmp query top [n] | /catsmp query maxed <ability> [n]");
                 return true;
             }
-            int amount;
-            try {
-                amount = Integer.parseInt(args[2]);
-            } catch (NumberFormatException ex) {
-                sender.sendMessage(ChatColor.RED + "Amount must be a number.");
+            int limitArg = top ? 2 : 3;
+            int limit = 10;
+            if (args.length > limitArg) {
+                try {
+                    limit = Math.max(1, Math.min(100, Integer.parseInt(args[limitArg])));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid number.");
+                    return true;
+                }
+            }
+            int n = limit;
+            // the database may be busy with a flush; never wait for it on a tick thread
+            Bukkit.getAsyncScheduler().runNow(this, task -> {
+                try {
+                    List<ProfileSnapshot> rows = top ? sql.topBloodPoints(n) : sql.maxedOut(ability, n);
+                    sender.sendMessage(ChatColor.GREEN + (top ? "Top " + n + " by Blood Points:"
+                            : "Max level " + ability.key + " (" + rows.size() + " shown):"));
+                    int rank = 1;
+                    for (ProfileSnapshot row : rows) {
+                        String rowName = Bukkit.getOfflinePlayer(row.uuid()).getName();
+                        sender.sendMessage(ChatColor.YELLOW + "" + rank++ + ". " + ChatColor.WHITE
+                                + (rowName != null ? rowName : row.uuid().toString()) + ChatColor.GRAY + " - "
+                                + row.bloodPoints() + " BP, " + row.role().name().toLowerCase(Locale.ROOT));
+                    }
+                } catch (IOException e) {
+                    sender.sendMessage(ChatColor.RED + "Query failed: " + e.getMessage());
+                }
+            });
+            return true;
+        }
+
+        if (sub.equals("reload")) {
+            if (!sender.hasPermission("catsmp.admin")) {
+                sender.sendMessage(ChatColor.RED + "You don't have permission.");
                 return true;
             }
-            if (amount < 0 || amount > MAX_BP) {
-                sender.sendMessage(ChatColor.RED + "Amount must be between 0 and " + MAX_BP);
+            loadMessages();
+            String problem = loadAbilities();
+            if (problem != null) {
+                sender.sendMessage(ChatColor.GREEN + "Reloaded messages.yml.");
+                sender.sendMessage(ChatColor.RED + "abilities.yml not reloaded, the current numbers stay: " + problem);
+                return true;
+            }
+            // new effect values: re-apply everyone online, each on their own thread
+            for (Player p : Bukkit.getOnlinePlayers()) {
+                p.getScheduler().run(this, task -> players.applyAbilities(p), null);
+            }
+            sender.sendMessage(ChatColor.GREEN + "Reloaded abilities.yml and messages.yml.");
+            return true;
+        }
+
+        if (sub.equals("backup") || sub.equals("restore")) {
+            if (!sender.hasPermission("catsmp.admin")) {
+                sender.sendMessage(ChatColor.RED + "You don't have permission.");
+                return true;
+            }
+            if (backups == null) {
+                sender.sendMessage(ChatColor.RED + "Backups are off (backups.enabled in config.yml).");
+                return true;
+            }
+            if (sub.equals("backup")) {
+                boolean full = args.length >= 2 && args[1].equalsIgnoreCase("full");
+                sender.sendMessage(ChatColor.GREEN + "Taking a " + (full ? "full " : "")
+                        + "backup in the background...");
+                Bukkit.getAsyncScheduler().runNow(this, task -> {
+                    ProfileBackups.Backup b = takeBackup(full);
+                    sender.sendMessage(b != null ? ChatColor.GREEN + "Wrote backup " + b.id() + "."
+                            : ChatColor.RED + "Backup failed, see the server log.");
+                });
+            } else if (args.length < 2) {
+                listBackups(sender);
+            } else {
+                restore(sender, args[1], args.length >= 3 ? args[2] : null);
+            }
+            return true;
+        }
+
+        if (sub.equals("audit")) {
+            if (!sender.hasPermission("catsmp.admin")) {
+                sender.sendMessage(ChatColor.RED + "You don't have permission.");
+                return true;
+            }
+            if (audit == null) {
+                sender.sendMessage(ChatColor.RED + "The audit log is off (audit.enabled in config.yml).");
+                return true;
+            }
+            if (args.length < 2) {
+                sender.sendMessage(ChatColor.RED + "Usage: /catsmp audit <player> [n]");
+                return true;
+            }
+            UUID uuid = playerUuid(args[1]);
+            if (uuid == null) {
+                sender.sendMessage(ChatColor.RED + "Player not found (a UUID works too).");
                 return true;
             }
-            UUID uuid = target.getUniqueId();
-            bloodPoints.put(uuid, amount);
-            savePlayer(uuid);
-            sender.sendMessage(ChatColor.GREEN + "Set " + target.getName() + "'s BP to " + amount + "/" + MAX_BP);
-            target.sendMessage(ChatColor.GOLD + "Your Blood Points were set to " + amount + "/" + MAX_BP);
+            int limit = 10;
+            if (args.length >= 3) {
+                try {
+                    limit = Math.max(1, Math.min(100, Integer.parseInt(args[2])));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid number.");
+                    return true;
+                }
+            }
+            showAudit(sender, uuid, args[1], limit);
             return true;
         }
 
@@ -376,416 +910,407 @@ public class CATSMPMC extends JavaPlugin implements Listener {
     }
 
     // -------------------------
-    // Player join / role assign / apply abilities
+    // Backups: /catsmp restore
     // -------------------------
-    @EventHandler
-    public void onPlayerJoin(PlayerJoinEvent e) {
-        Player p = e.getPlayer();
-        UUID uuid = p.getUniqueId();
+    private void listBackups(CommandSender sender) {
+        Bukkit.getAsyncScheduler().runNow(this, task -> {
+            try {
+                List<ProfileBackups.Backup> all = backups.list();
+                sender.sendMessage(ChatColor.YELLOW + "Usage: /catsmp restore <backup> [player]"
+                        + " (without a player, everyone is rolled back)");
+                if (all.isEmpty()) {
+                    sender.sendMessage(ChatColor.GRAY + "No backups yet.");
+                    return;
+                }
+                sender.sendMessage(ChatColor.GREEN + "Newest backups (UTC) of " + all.size() + ":");
+                for (ProfileBackups.Backup b : all.subList(Math.max(0, all.size() - TOP_PAGE_SIZE), all.size())) {
+                    sender.sendMessage(ChatColor.WHITE + b.id() + ChatColor.GRAY + (b.full() ? " full" : " delta"));
+                }
+            } catch (IOException e) {
+                sender.sendMessage(ChatColor.RED + "Could not list backups: " + e.getMessage());
+            }
+        });
+    }
 
-        // if not in saved data -> new player; random role and starting BP 3
-        if (!roles.containsKey(uuid)) {
-            Role assigned = random.nextBoolean() ? Role.PASSIVE : Role.AGGRESSIVE;
-            roles.put(uuid, assigned);
+    /**
+     * Rolls one player (or, without {@code playerArg}, everyone in the backup)
+     * back to backup {@code id}, off the tick thread. Nobody else's profile is
+     * touched. A backup is taken first, so the restore can be undone the same
+     * way.
+     */
+    private void restore(CommandSender sender, String id, String playerArg) {
+        UUID only = null;
+        if (playerArg != null) {
+            only = playerUuid(playerArg);
+            if (only == null) {
+                sender.sendMessage(ChatColor.RED + "Player not found (a UUID works too).");
+                return;
+            }
         }
-        bloodPoints.putIfAbsent(uuid, 3);
-        abilityLevels.putIfAbsent(uuid, new HashMap<>());
-        zoomComboEnabled.putIfAbsent(uuid, true);
-
-        // apply abilities to the player
-        applyAbilities(p);
-
-        // ensure saved data exists
-        savePlayer(uuid);
+        if (!restoring.compareAndSet(false, true)) {
+            sender.sendMessage(ChatColor.RED + "A restore is already running.");
+            return;
+        }
+        String who = playerArg != null ? playerArg : "everyone";
+        UUID target = only;
+        sender.sendMessage(ChatColor.GREEN + "Restoring " + who + " from backup " + id + " in the background...");
+        Bukkit.getAsyncScheduler().runNow(this, task -> {
+            try {
+                Map<UUID, ProfileSnapshot> restored = backups.read(id, target);
+                if (restored.isEmpty()) {
+                    sender.sendMessage(ChatColor.RED + (target != null ? who + " is not in backup " + id + "."
+                            : "Backup " + id + " has no profiles."));
+                    return;
+                }
+                ProfileBackups.Backup undo = backups.take(false);
+                UUID actor = actor(sender);
+                for (ProfileSnapshot snap : restored.values()) {
+                    restoreProfile(snap, actor);
+                }
+                boolean saved = writer.flushAndWait(getConfig().getLong("storage.shutdown-timeout-seconds", 10L));
+                getLogger().info("Restored " + who + " (" + restored.size() + " profiles) from backup " + id + " by "
+                        + sender.getName() + "; the state before is backup " + undo.id());
+                sender.sendMessage(ChatColor.GREEN + "Restored " + restored.size() + " profile"
+                        + (restored.size() == 1 ? "" : "s") + " from " + id + ". To undo: /catsmp restore " + undo.id()
+                        + (playerArg != null ? " " + playerArg : ""));
+                if (!saved)
+                    sender.sendMessage(ChatColor.YELLOW + "Storage is still writing; the changes are queued.");
+            } catch (IOException e) {
+                sender.sendMessage(ChatColor.RED + "Restore failed: " + e.getMessage());
+            } finally {
+                restoring.set(false);
+            }
+        });
     }
 
     // -------------------------
-    // Death handling for BP gain/loss
+    // Audit log: /catsmp audit
     // -------------------------
-    @EventHandler
-    public void onPlayerDeath(PlayerDeathEvent e) {
-        Player victim = e.getEntity();
-        Player killer = victim.getKiller();
-        if (killer != null && killer.getUniqueId() != null) {
-            UUID vUuid = victim.getUniqueId();
-            UUID kUuid = killer.getUniqueId();
-
-            int vBP = bloodPoints.getOrDefault(vUuid, 0);
-            if (vBP > 0) {
-                int kBP = bloodPoints.getOrDefault(kUuid, 0);
-                bloodPoints.put(kUuid, Math.min(kBP + 1, MAX_BP));
-                killer.sendMessage(
-                        ChatColor.GOLD + "You gained 1 Blood Point! (" + bloodPoints.get(kUuid) + "/" + MAX_BP + ")");
-            }
-            // victim loses 1 (down to 0)
-            bloodPoints.put(vUuid, Math.max(vBP - 1, 0));
+    private void audit(UUID player, AuditLog.Reason reason, UUID actor, int before, int after, Ability ability) {
+        if (audit != null)
+            audit.record(player, reason, actor, before, after, ability);
+    }
 
-            // save both
-            savePlayer(kUuid);
-            savePlayer(vUuid);
-        }
+    // the admin behind a command, or null for the console
+    private static UUID actor(CommandSender sender) {
+        return sender instanceof Player p ? p.getUniqueId() : null;
     }
 
-    // -------------------------
-    // Combat: Claws & Rabies & Protective Fur damage reduction
-    // -------------------------
-    @EventHandler
-    public void onEntityDamageByEntity(EntityDamageByEntityEvent e) {
-        if (e.getDamager() instanceof Player attacker && e.getEntity() instanceof Player victim) {
-            UUID a = attacker.getUniqueId();
-            Role role = roles.getOrDefault(a, Role.AGGRESSIVE);
-
-            // Aggressive abilities only
-            if (role == Role.AGGRESSIVE) {
-                Map<String, Integer> levels = abilityLevels.getOrDefault(a, new HashMap<>());
-
-                // Claws -> Strength effect already applied permanently via applyAbilities()
-                // Rabies -> chance to apply Wither III for 2 seconds
-                int rabies = levels.getOrDefault("rabies", 0);
-                if (rabies > 0) {
-                    int chance = Math.min(rabies * 5, 25); // 5% per level
-                    if (random.nextInt(100) < chance) {
-                        victim.addPotionEffect(new PotionEffect(PotionEffectType.WITHER, 40, 2, true, false, true)); // 2s
-                                                                                                                     // Wither
-                                                                                                                     // III
-                        attacker.sendMessage(ChatColor.DARK_RED + "Rabies triggered!");
-                    }
+    private void showAudit(CommandSender sender, UUID uuid, String name, int limit) {
+        // reads the index and a few compressed blocks from disk
+        Bukkit.getAsyncScheduler().runNow(this, task -> {
+            try {
+                List<AuditLog.Event> events = audit.history(uuid, limit);
+                if (events.isEmpty()) {
+                    sender.sendMessage(ChatColor.YELLOW + "No Blood Point changes recorded for " + name + ".");
+                    return;
                 }
+                sender.sendMessage(ChatColor.GREEN + "Blood Point changes of " + name + ", newest first:");
+                for (AuditLog.Event e : events) {
+                    int d = e.after() - e.before();
+                    sender.sendMessage(ChatColor.GRAY + AUDIT_TIME.format(Instant.ofEpochMilli(e.timeMillis())) + " "
+                            + (d > 0 ? ChatColor.GREEN + "+" + d : ChatColor.RED + "" + d) + ChatColor.WHITE + " ("
+                            + e.before() + "→" + e.after() + ") " + describe(e));
+                }
+            } catch (IOException e) {
+                sender.sendMessage(ChatColor.RED + "Could not read the audit log: " + e.getMessage());
             }
-        }
+        });
     }
 
-    // custom damage reduction for Protective Fur (aggressive)
-    @EventHandler
-    public void onEntityDamage(EntityDamageEvent e) {
-        if (!(e.getEntity() instanceof Player victim))
-            return;
-        UUID uuid = victim.getUniqueId();
-        Role role = roles.getOrDefault(uuid, Role.PASSIVE);
-        if (role != Role.AGGRESSIVE)
-            return;
+    private static String describe(AuditLog.Event e) {
+        String actor = e.actor() == null ? "console" : playerName(e.actor());
+        if (e.reason() == null)
+            return "unknown reason";
+        return switch (e.reason()) {
+            case KILL -> "killed " + actor;
+            case DEATH -> "killed by " + actor;
+            case UPGRADE -> "upgraded " + (e.ability() != null ? UpgradeMenu.label(e.ability()) : "an ability");
+            case SPEND -> "spent through the API";
+            case ADMIN -> "set by " + actor;
+            case BULK -> "bulk change by " + actor;
+            case RESTORE -> "restored from a backup by " + actor;
+        };
+    }
 
-        Map<String, Integer> levels = abilityLevels.getOrDefault(uuid, new HashMap<>());
-        int protLvl = levels.getOrDefault("protectivefur", 0);
-        if (protLvl <= 0)
-            return;
+    private static String playerName(UUID uuid) {
+        String n = Bukkit.getOfflinePlayer(uuid).getName();
+        return n != null ? n : uuid.toString();
+    }
 
-        // reduce damage by 10% per level (max 30%)
-        double reduce = Math.min(protLvl * 0.10, 0.30);
-        double orig = e.getDamage();
-        double newDamage = orig * (1.0 - reduce);
-        e.setDamage(newDamage);
+    // one /catsmp migrate batch. Whatever this server still holds for those players is older than the file,
+    // so it is dropped, and the batch is saved on the writer thread behind everything already queued
+    private void importBatch(List<ProfileSnapshot> batch) throws IOException {
+        for (ProfileSnapshot snap : batch) {
+            offline.remove(snap.uuid());
+        }
+        try {
+            writer.whenIdle(() -> {
+                for (ProfileSnapshot snap : batch) {
+                    writer.forget(snap.uuid());
+                }
+                store.replace(batch);
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the profile writer");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+        for (ProfileSnapshot snap : batch) {
+            leaderboard.update(snap.uuid(), snap.bloodPoints());
+        }
     }
 
-    // -------------------------
-    // No fall damage for cats
-    // -------------------------
-    @EventHandler
-    public void onFall(EntityDamageEvent e) {
-        if (e.getEntity() instanceof Player player && e.getCause() == EntityDamageEvent.DamageCause.FALL) {
-            // Only cancel fall damage for players who have a role in the cat SMP system
-            UUID uuid = player.getUniqueId();
-            if (roles.containsKey(uuid)) {
-                e.setCancelled(true);
-            }
+    // changed in place, so the journal and leaderboard see it; offline players go through the offline cache
+    private void restoreProfile(ProfileSnapshot snap, UUID actor) {
+        UUID uuid = snap.uuid();
+        PlayerProfile prof = lookup(uuid);
+        if (prof == null)
+            prof = offline.putIfAbsent(uuid, new PlayerProfile(snap, profileChanges));
+        int before = prof.bloodPoints();
+        prof.assign(snap);
+        audit(uuid, AuditLog.Reason.RESTORE, actor, before, snap.bloodPoints(), null);
+        writer.markDirty(uuid);
+        Player p = Bukkit.getPlayer(uuid);
+        if (p != null) {
+            p.getScheduler().run(this, task -> players.applyAbilities(p), null);
+            p.sendMessage(ChatColor.GOLD + "Your Blood Points and abilities were restored from a backup.");
         }
     }
 
     // -------------------------
-    // Upgrade GUI
+    // Admin BP changes: one player, or a selector in the background
     // -------------------------
-    public void openUpgradeMenu(Player p) {
-        Role role = roles.getOrDefault(p.getUniqueId(), Role.PASSIVE);
-        Map<String, Integer> playerLevels = abilityLevels.getOrDefault(p.getUniqueId(), new HashMap<>());
-        Inventory inv = Bukkit.createInventory(null, 9, UPGRADE_INV_TITLE);
-
-        // build items depending on role
-        List<ItemStack> items = new ArrayList<>();
-
-        if (role == Role.PASSIVE) {
-            items.add(makeGuiItemWithLevel(Material.POTION, ChatColor.AQUA + "Purring (Regen)",
-                    "Permanent Regeneration", "purring", playerLevels.getOrDefault("purring", 0), MAX_PURRING));
-            items.add(makeGuiItemWithLevel(Material.APPLE, ChatColor.GREEN + "Health Kitty",
-                    "Increase max hearts", "healthkitty", playerLevels.getOrDefault("healthkitty", 0),
-                    MAX_HEALTHKITTY));
-            items.add(makeGuiItemWithLevel(Material.RABBIT_FOOT, ChatColor.LIGHT_PURPLE + "Zoom (Dash)",
-                    "Dash forward. +4 blocks per level", "zoom", playerLevels.getOrDefault("zoom", 0), MAX_ZOOM));
-        } else {
-            // aggressive
-            items.add(makeGuiItemWithLevel(Material.IRON_AXE, ChatColor.RED + "Claws",
-                    "Permanent Strength", "claws", playerLevels.getOrDefault("claws", 0), MAX_CLAWS));
-            items.add(makeGuiItemWithLevel(Material.POISONOUS_POTATO, ChatColor.DARK_PURPLE + "Rabies",
-                    "Chance to Wither III on hit. +5% per level", "rabies", playerLevels.getOrDefault("rabies", 0),
-                    MAX_RABIES));
-            items.add(makeGuiItemWithLevel(Material.LEATHER, ChatColor.GRAY + "Protective Fur",
-                    "Permanent damage reduction. +10% per level", "protectivefur",
-                    playerLevels.getOrDefault("protectivefur", 0), MAX_PROTECTIVE));
-        }
-
-        // put items into inventory
-        int slot = 1;
-        for (ItemStack is : items) {
-            inv.setItem(slot, is);
-            slot += 2;
-        }
-
-        p.openInventory(inv);
-    }
-
-    private ItemStack makeGuiItemWithLevel(Material m, String name, String description, String abilityKey,
-            int currentLevel, int maxLevel) {
-        ItemStack it = new ItemStack(m);
-        ItemMeta meta = it.getItemMeta();
-        if (meta != null) {
-            meta.setDisplayName(name);
-
-            List<String> lore = new ArrayList<>();
-            lore.add(ChatColor.GRAY + description);
-            lore.add(ChatColor.YELLOW + "Current Level: " + ChatColor.WHITE + currentLevel + "/" + maxLevel);
-
-            if (currentLevel >= maxLevel) {
-                lore.add(ChatColor.GREEN + "✓ MAX LEVEL");
-            } else {
-                lore.add(ChatColor.AQUA + "Click to upgrade! (Costs 1 BP)");
-            }
-
-            meta.setLore(lore);
-            it.setItemMeta(meta);
+    private void changeBloodPoints(CommandSender sender, String targetArg, BulkBp.Op op) {
+        BulkBp.Selector selector;
+        try {
+            selector = BulkBp.Selector.parse(targetArg, getDataFolder());
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(ChatColor.RED + e.getMessage());
+            return;
         }
-        return it;
+        if (selector != null) {
+            runBulk(sender, selector, op);
+            return;
+        }
+        withTarget(targetArg, target -> changeBloodPoints(sender, target, op));
     }
 
-    @EventHandler
-    public void onInventoryClick(InventoryClickEvent event) {
-        if (!(event.getWhoClicked() instanceof Player player))
+    // runs on the command's thread, or on an async one if the player had to be read from storage
+    private void changeBloodPoints(CommandSender sender, Target target, BulkBp.Op op) {
+        if (target == null) {
+            sender.sendMessage(ChatColor.RED + "Player not found.");
             return;
+        }
+        int prev = op.apply(target.profile());
+        int next = op.result(prev);
+        if (next == prev) {
+            sender.sendMessage(ChatColor.YELLOW + target.name() + " already has " + prev + "/" + MAX_BP + " BP.");
+            return;
+        }
+        players.savePlayer(target.uuid());
+        audit(target.uuid(), AuditLog.Reason.ADMIN, actor(sender), prev, next, null);
+        sender.sendMessage(ChatColor.GREEN + describe(op, target.name(), prev, next));
+        if (target.online() != null)
+            target.online().sendMessage(notice(op, prev, next));
+    }
 
-        // Make sure they are clicking inside the upgrade menu
-        if (event.getView().getTitle().equals(UPGRADE_INV_TITLE)) {
-            event.setCancelled(true); // Prevent taking items
-
-            ItemStack clicked = event.getCurrentItem();
-            if (clicked == null || !clicked.hasItemMeta())
-                return;
-
-            String name = ChatColor.stripColor(clicked.getItemMeta().getDisplayName());
-            UUID uuid = player.getUniqueId();
-            Role role = roles.getOrDefault(uuid, Role.PASSIVE);
-
-            // Check if player has blood points
-            int currentBP = bloodPoints.getOrDefault(uuid, 3);
-            if (currentBP <= 0) {
-                player.sendMessage(ChatColor.RED + "You don't have enough Blood Points!");
-                return;
-            }
+    // every player with a stored profile, from one scan of the store. The leaderboard can't tell:
+    // it leaves out players at 0 BP. Flushed first, so players whose first save was still queued count too
+    private List<UUID> everyone() throws IOException {
+        writer.flushAndWait(getConfig().getLong("storage.shutdown-timeout-seconds", 10L));
+        Set<UUID> all = ConcurrentHashMap.newKeySet();
+        all.addAll(profiles.keySet());
+        store.scanBloodPoints((uuid, bp) -> all.add(uuid));
+        return new ArrayList<>(all);
+    }
 
-            Map<String, Integer> levels = abilityLevels.getOrDefault(uuid, new HashMap<>());
-            String abilityKey = null;
-            int maxLevel = 0;
-            boolean upgraded = false;
-
-            // Determine which ability was clicked and its constraints
-            if (role == Role.PASSIVE) {
-                if (name.contains("Purring")) {
-                    abilityKey = "purring";
-                    maxLevel = MAX_PURRING;
-                } else if (name.contains("Health Kitty")) {
-                    abilityKey = "healthkitty";
-                    maxLevel = MAX_HEALTHKITTY;
-                } else if (name.contains("Zoom")) {
-                    abilityKey = "zoom";
-                    maxLevel = MAX_ZOOM;
-                }
-            } else { // AGGRESSIVE
-                if (name.contains("Claws")) {
-                    abilityKey = "claws";
-                    maxLevel = MAX_CLAWS;
-                } else if (name.contains("Rabies")) {
-                    abilityKey = "rabies";
-                    maxLevel = MAX_RABIES;
-                } else if (name.contains("Protective Fur")) {
-                    abilityKey = "protectivefur";
-                    maxLevel = MAX_PROTECTIVE;
-                }
-            }
+    private static String describe(BulkBp.Op op, String name, int prev, int next) {
+        if (!op.relative())
+            return "Set " + name + "'s BP to " + next + "/" + MAX_BP;
+        return (next > prev ? "Added " + (next - prev) + " BP to " : "Removed " + (prev - next) + " BP from ") + name
+                + " (" + next + "/" + MAX_BP + ")";
+    }
 
-            // Process the upgrade
-            if (abilityKey != null) {
-                int currentLevel = levels.getOrDefault(abilityKey, 0);
+    // what the affected player sees
+    private static String notice(BulkBp.Op op, int prev, int next) {
+        if (!op.relative())
+            return ChatColor.GOLD + "Your Blood Points were set to " + next + "/" + MAX_BP;
+        int d = Math.abs(next - prev);
+        String points = d + " Blood Point" + (d == 1 ? "" : "s");
+        return next > prev ? ChatColor.GOLD + "You received " + points + "! (" + next + "/" + MAX_BP + ")"
+                : ChatColor.RED + "You lost " + points + "! (" + next + "/" + MAX_BP + ")";
+    }
 
-                if (currentLevel >= maxLevel) {
-                    player.sendMessage(ChatColor.YELLOW + "This ability is already at max level!");
-                    return;
+    /**
+     * Applies {@code op} to every player the selector matches, off the tick
+     * thread, then writes all of them in a single flush instead of one save per
+     * player. Offline players go through the offline cache like any other
+     * lookup; its evictions snapshot them for that same flush.
+     */
+    private void runBulk(CommandSender sender, BulkBp.Selector selector, BulkBp.Op op) {
+        if (!bulkRunning.compareAndSet(false, true)) {
+            sender.sendMessage(ChatColor.RED + "A bulk BP change is already running.");
+            return;
+        }
+        sender.sendMessage(ChatColor.GREEN + "Applying " + op + " BP to " + selector + " in the background...");
+        UUID actor = actor(sender);
+        Bukkit.getAsyncScheduler().runNow(this, task -> {
+            long start = System.nanoTime();
+            BulkBp.Report report = new BulkBp.Report();
+            try {
+                List<UUID> targets = switch (selector.kind()) {
+                    case ONLINE -> Bukkit.getOnlinePlayers().stream().map(Player::getUniqueId).toList();
+                    // every known player; @role has to read each profile to see the role
+                    case EVERYONE, ROLE -> everyone();
+                    case FILE -> BulkBp.readUuids(selector.file(), report);
+                };
+                for (UUID uuid : targets) {
+                    PlayerProfile prof = lookup(uuid);
+                    if (prof == null) {
+                        report.notFound++;
+                        continue;
+                    }
+                    if (selector.kind() == BulkBp.Kind.ROLE && prof.role() != selector.role())
+                        continue;
+                    int prev = op.apply(prof);
+                    int next = op.result(prev);
+                    if (next == prev) {
+                        report.unchanged++;
+                        continue;
+                    }
+                    writer.markDirty(uuid);
+                    audit(uuid, AuditLog.Reason.BULK, actor, prev, next, null);
+                    report.changed++;
+                    report.bloodPointsDelta += next - prev;
+                    Player online = Bukkit.getPlayer(uuid);
+                    if (online != null) {
+                        report.online++;
+                        online.sendMessage(notice(op, prev, next));
+                    } else {
+                        report.offline++;
+                    }
                 }
-
-                // Upgrade the ability
-                levels.put(abilityKey, currentLevel + 1);
-                abilityLevels.put(uuid, levels);
-
-                // Spend blood point
-                bloodPoints.put(uuid, currentBP - 1);
-
-                upgraded = true;
-                player.sendMessage(ChatColor.GREEN + "Upgraded " + name + " to level " + (currentLevel + 1) + "!");
-                player.sendMessage(ChatColor.GOLD + "Blood Points: " + (currentBP - 1) + "/" + MAX_BP);
+                boolean saved = writer.flushAndWait(getConfig().getLong("storage.shutdown-timeout-seconds", 10L));
+                long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                getLogger().info("Bulk BP " + op + " on " + selector + " by " + sender.getName() + ": " + report);
+                sender.sendMessage(ChatColor.GREEN + "Done in " + ms + "ms: " + ChatColor.WHITE + report);
+                if (!saved)
+                    sender.sendMessage(ChatColor.YELLOW + "Storage is still writing; the changes are queued.");
+            } catch (IOException e) {
+                sender.sendMessage(ChatColor.RED + "Could not read " + selector + ": " + e.getMessage());
+            } finally {
+                bulkRunning.set(false);
             }
+        });
+    }
 
-            if (upgraded) {
-                // Apply new abilities
-                applyAbilities(player);
-
-                // Save player data
-                savePlayer(uuid);
-            }
+    /** Opens the Blood Point upgrade menu for this player. */
+    public void openUpgradeMenu(Player p) {
+        players.openUpgradeMenu(p);
+    }
 
-            // Refresh menu
-            player.closeInventory();
-            Bukkit.getScheduler().runTaskLater(this, () -> openUpgradeMenu(player), 5L);
-        }
+    /** Time until the given ability can be used again, 0 if ready. For action bars and other plugins. */
+    public long getCooldownRemainingMillis(UUID uuid, Ability ability) {
+        return cooldowns.remainingMillis(uuid, ability);
     }
 
     // -------------------------
-    // Apply abilities to player (auto apply on join and after upgrades)
+    // Helpers: get / set defaults for players
     // -------------------------
-    private void applyAbilities(Player p) {
-        UUID uuid = p.getUniqueId();
-        Role role = roles.getOrDefault(uuid, Role.PASSIVE);
-        Map<String, Integer> lvlMap = abilityLevels.getOrDefault(uuid, new HashMap<>());
-
-        // First remove effects we may have added earlier to avoid stacking
-        p.removePotionEffect(PotionEffectType.REGENERATION);
-        p.removePotionEffect(PotionEffectType.STRENGTH);
-        p.removePotionEffect(PotionEffectType.WITHER); // typically applied transiently
-        // Note: we handle protective fur with event-based damage reduction (no potion)
-
-        if (role == Role.PASSIVE) {
-            // Purring -> Regen
-            int purr = Math.min(lvlMap.getOrDefault("purring", 0), MAX_PURRING);
-            if (purr > 0) {
-                int amp = Math.max(0, purr - 1); // level 1 => amp 0, level 2 => amp 1
-                p.addPotionEffect(
-                        new PotionEffect(PotionEffectType.REGENERATION, Integer.MAX_VALUE, amp, true, false, true));
-            }
-
-            // Health Kitty -> Max HP increase
-            int healthLvl = Math.min(lvlMap.getOrDefault("healthkitty", 0), MAX_HEALTHKITTY);
-            AttributeInstance maxHealth = p.getAttribute(Attribute.MAX_HEALTH);
-            if (maxHealth != null) {
-                double base = 20.0;
-                double extra = 2.0 * healthLvl; // each level +2 HP (1 heart)
-                maxHealth.setBaseValue(base + extra);
-                if (p.getHealth() > maxHealth.getValue())
-                    p.setHealth(maxHealth.getValue());
-                else
-                    p.setHealth(Math.min(p.getHealth(), maxHealth.getValue()));
-            }
-
-            // Zoom -> (no ongoing potion) - handled on dash trigger
-        } else {
-            // Aggressive
-            int clawsLvl = Math.min(lvlMap.getOrDefault("claws", 0), MAX_CLAWS);
-            if (clawsLvl > 0) {
-                int amp = Math.max(0, clawsLvl - 1); // 1->amp0, 2->amp1
-                p.addPotionEffect(
-                        new PotionEffect(PotionEffectType.STRENGTH, Integer.MAX_VALUE, amp, true, false, true));
-            }
-
-            // Protective Fur -> handled in damage event (no potion effect)
-            // Rabies -> applied on hit (no persistent effect here)
+    // player named in an admin command; offline players are looked up by name via the server's cache
+    private record Target(UUID uuid, String name, Player online, PlayerProfile profile) {
+    }
+
+    // UUID of a player who may never have been seen by this server, for backups and the audit log
+    private static UUID playerUuid(String nameOrUuid) {
+        OfflinePlayer off = Bukkit.getPlayerExact(nameOrUuid);
+        if (off == null)
+            off = Bukkit.getOfflinePlayerIfCached(nameOrUuid);
+        if (off != null)
+            return off.getUniqueId();
+        try {
+            return UUID.fromString(nameOrUuid);
+        } catch (IllegalArgumentException e) {
+            return null;
         }
     }
 
-    // -------------------------
-    // Dash / Zoom logic
-    // -------------------------
-    private void triggerDash(Player p) {
-        UUID uuid = p.getUniqueId();
-        int zoomLvl = Math.min(abilityLevels.getOrDefault(uuid, new HashMap<>()).getOrDefault("zoom", 0), MAX_ZOOM);
-        if (zoomLvl <= 0) {
-            p.sendMessage(ChatColor.RED + "You have not upgraded Zoom yet.");
+    /**
+     * Hands {@code then} the named player, or null if they have never played.
+     * Online and cached players are resolved right away, on this thread; an
+     * offline player who has to be read from storage is read on an async
+     * thread, and {@code then} runs there, so the tick never waits on disk.
+     */
+    private void withTarget(String name, Consumer<Target> then) {
+        Player p = Bukkit.getPlayerExact(name);
+        if (p != null) {
+            then.accept(new Target(p.getUniqueId(), p.getName(), p, players.profile(p.getUniqueId())));
             return;
         }
-
-        long now = System.currentTimeMillis();
-        long last = lastDash.getOrDefault(uuid, 0L);
-        if (now - last < DASH_COOLDOWN_MS) {
-            long left = (DASH_COOLDOWN_MS - (now - last)) / 1000;
-            p.sendMessage(ChatColor.YELLOW + "Zoom is on cooldown. " + left + "s remaining.");
+        OfflinePlayer off = Bukkit.getOfflinePlayerIfCached(name);
+        if (off == null) {
+            then.accept(null);
             return;
         }
-
-        lastDash.put(uuid, now);
-        // distance = 4 * level; cap already by MAX_ZOOM
-        double dist = Math.min(4.0 * zoomLvl, 12.0);
-        Vector dir = p.getLocation().getDirection().clone().normalize().multiply(dist);
-        // small upward push so player doesn't immediately hit ground if they dash on
-        // ground
-        dir.setY(Math.max(0.2, dir.getY()));
-        p.setVelocity(dir);
-        p.sendMessage(ChatColor.AQUA + "Zoom!");
-    }
-
-    // attempt to detect sneak + jump -> PlayerToggleSneakEvent is fired when
-    // toggling sneak
-    // we'll check whether player's upward velocity is positive (just jumped) when
-    // toggled into sneak
-    @EventHandler
-    public void onSneakToggle(PlayerToggleSneakEvent e) {
-        Player p = e.getPlayer();
-        boolean comboEnabled = zoomComboEnabled.getOrDefault(p.getUniqueId(), true);
-        if (!comboEnabled)
+        UUID uuid = off.getUniqueId();
+        PlayerProfile prof = cached(uuid);
+        if (prof != null) {
+            then.accept(new Target(uuid, off.getName(), null, prof));
             return;
-
-        // Fix: Check if player is NOW sneaking (e.isSneaking() gives new state)
-        if (e.isSneaking()) {
-            // Player just started sneaking, check if they have upward velocity (jumping)
-            Vector vel = p.getVelocity();
-            if (vel.getY() > 0.1) { // Slight threshold to avoid false triggers
-                triggerDash(p);
-            }
         }
+        Bukkit.getAsyncScheduler().runNow(this, task -> {
+            PlayerProfile read = lookup(uuid);
+            // they may have joined while we were reading
+            then.accept(read == null ? null : new Target(uuid, off.getName(), Bukkit.getPlayer(uuid), read));
+        });
     }
 
     // -------------------------
-    // Helpers: get / set defaults for players
+    // Helper to get player's BP (external usage). Answered from memory only,
+    // so it is safe on any thread: online and cached players, 3 for anyone
+    // else. CatSmpApi#load reads storage for players who are not loaded.
     // -------------------------
-    private void ensurePlayerDefaults(UUID uuid) {
-        roles.putIfAbsent(uuid, random.nextBoolean() ? Role.PASSIVE : Role.AGGRESSIVE);
-        bloodPoints.putIfAbsent(uuid, 3);
-        abilityLevels.putIfAbsent(uuid, new HashMap<>());
-        zoomComboEnabled.putIfAbsent(uuid, true);
+    public int getBP(UUID uuid) {
+        PlayerProfile prof = loaded(uuid);
+        return prof == null ? 3 : prof.bloodPoints();
     }
 
     // -------------------------
-    // Utility: save single player's data (wraps savePlayer)
+    // Leaderboard (external usage). Highest BP first; equal BP is ranked by
+    // who got there first. Both are cheap enough to call every tick from any
+    // thread, e.g. for a scoreboard.
     // -------------------------
-    // (already provided above: savePlayer(UUID uuid))
 
-    // -------------------------
-    // Helper to get player's BP (external usage)
-    // -------------------------
-    public int getBP(UUID uuid) {
-        return bloodPoints.getOrDefault(uuid, 3);
+    /** @return 1-based rank, or 0 for a player with no Blood Points (or who has never played) */
+    public int getBloodPointRank(UUID uuid) {
+        return leaderboard.rank(uuid);
+    }
+
+    /** @return the first ten ranks (fewer on a small server), immutable */
+    public List<BloodPointRank> getTopBloodPoints() {
+        return leaderboard.top();
     }
 
     // -------------------------
     // Utility: applying upgrades via commands (if you want CLI upgrade
     // implementation later)
     // -------------------------
+    /** Same as {@code trySpend(uuid, 1)} on the {@link CatSmpApi} service. */
     public boolean trySpendBP(UUID uuid) {
-        int cur = bloodPoints.getOrDefault(uuid, 3);
-        if (cur <= 0)
-            return false;
-        bloodPoints.put(uuid, cur - 1);
-        savePlayer(uuid);
-        return true;
+        return api.trySpend(uuid, 1);
     }
 
     // -------------------------
-    // Extra safety: save all players periodically? (optional)
+    // Raw data.yml access. Only available with storage.type: yaml (empty
+    // otherwise). Writes are applied by the background writer thread, so treat
+    // it as read-only and expect it to lag slightly.
     // -------------------------
+    @Deprecated
     public FileConfiguration getData() {
-        return this.data; // assuming 'data' is your custom config FileConfiguration
+        return store instanceof YamlProfileStore yaml ? yaml.config() : new YamlConfiguration();
     }
 
 }
@@ -0,0 +1,81 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * CATSMP player data for other plugins (scoreboards, placeholders, chat
+ * bridges), registered with Bukkit's ServicesManager:
+ *
+ * <pre>
+ * CatSmpApi api = Bukkit.getServicesManager().load(CatSmpApi.class);
+ * CatSmpApi.PlayerData data = api.get(player.getUniqueId());
+ * </pre>
+ *
+ * Every method may be called from any thread. Each loaded profile publishes an
+ * immutable {@link PlayerData} after every change, so {@link #get} is a map
+ * lookup and a volatile read: it never takes a lock, never waits for a tick
+ * and never sees half of a change.
+ */
+public interface CatSmpApi {
+
+    /** A player's data at one moment; never changes once handed out. */
+    record PlayerData(UUID uuid, Role role, int bloodPoints, boolean zoomCombo, Map<Ability, Integer> levels) {
+
+        public PlayerData {
+            levels = Map.copyOf(levels);
+        }
+
+        /** @return the ability's level, 0 if never upgraded */
+        public int level(Ability a) {
+            return levels.getOrDefault(a, 0);
+        }
+    }
+
+    /** Called after a loaded player's data changed. */
+    @FunctionalInterface
+    interface ChangeListener {
+        void changed(PlayerData before, PlayerData after);
+    }
+
+    /**
+     * The player's data if it is in memory: always for online players, and
+     * for offline players someone looked up recently. Never blocks.
+     *
+     * @return null if the player's data is not in memory; see {@link #load}
+     */
+    PlayerData get(UUID uuid);
+
+    /**
+     * The player's data, read from storage in the background if it is not in
+     * memory.
+     *
+     * @return completes with null if the player has never played here
+     */
+    CompletableFuture<PlayerData> load(UUID uuid);
+
+    /**
+     * Takes {@code amount} Blood Points if the player has at least that many,
+     * as one step: two callers can never spend the same point. The change is
+     * saved and shows up in /catsmp audit. For a player who is not in memory
+     * this reads storage first, so call it off the main thread for offline
+     * players.
+     *
+     * @return false if the player has fewer points (nothing is taken) or has never played
+     * @throws IllegalArgumentException if {@code amount} is not positive
+     */
+    boolean trySpend(UUID uuid, int amount);
+
+    /**
+     * Calls {@code listener} after every change to a loaded player's data,
+     * with the data before and after. Listeners run one at a time on a
+     * CATSMP background thread, in the order the changes happened; they may
+     * call back into this API but should not block for long.
+     */
+    void addListener(ChangeListener listener);
+
+    void removeListener(ChangeListener listener);
+}
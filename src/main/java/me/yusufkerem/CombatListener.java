@@ -0,0 +1,69 @@
+package me.yusufkerem;
+
+import me.yusufkerem.Messages.Key;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Rabies, Protective Fur damage reduction and no fall damage for cats.
+ * One handler for every EntityDamageEvent on the server: it only reads the
+ * precomputed {@link CombatModifiers}, so keep it allocation free.
+ * (Claws -> Strength effect is applied permanently via applyAbilities())
+ */
+final class CombatListener implements Listener {
+
+    private final Map<UUID, PlayerProfile> profiles;
+    private final Messages messages;
+    private final Metrics.Timer timer;
+
+    CombatListener(Map<UUID, PlayerProfile> profiles, Messages messages, Metrics metrics) {
+        this.profiles = profiles;
+        this.messages = messages;
+        this.timer = metrics.timer("event", "onEntityDamage");
+    }
+
+    @EventHandler
+    public void onEntityDamage(EntityDamageEvent e) {
+        // mobs are most of the traffic: bail out before even reading the clock
+        if (!(e.getEntity() instanceof Player victim))
+            return;
+        long t = timer.start();
+        try {
+            PlayerProfile vProf = profiles.get(victim.getUniqueId());
+            if (vProf == null)
+                return;
+            CombatModifiers mods = vProf.combat();
+
+            if (e.getCause() == EntityDamageEvent.DamageCause.FALL && mods.fallImmune()) {
+                e.setCancelled(true);
+                return;
+            }
+
+            if (mods.damageTakenMultiplier() != 1.0)
+                e.setDamage(e.getDamage() * mods.damageTakenMultiplier());
+
+            // Rabies -> chance to apply Wither III for 2 seconds
+            if (e instanceof EntityDamageByEntityEvent byEntity && byEntity.getDamager() instanceof Player attacker) {
+                PlayerProfile aProf = profiles.get(attacker.getUniqueId());
+                if (aProf == null)
+                    return;
+                int chance = aProf.combat().rabiesChance();
+                if (chance > 0 && ThreadLocalRandom.current().nextInt(100) < chance) {
+                    victim.addPotionEffect(new PotionEffect(PotionEffectType.WITHER, 40, 2, true, false, true));
+                    messages.send(attacker, Key.RABIES_TRIGGERED);
+                }
+            }
+        } finally {
+            timer.stop(t);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+
+import static me.yusufkerem.Ability.PROTECTIVE_FUR;
+import static me.yusufkerem.Ability.RABIES;
+
+/**
+ * Everything the damage listener needs about one player, precomputed so a hit
+ * costs a field read instead of redoing the ability math. Rebuilt by
+ * {@link PlayerProfile} whenever its role or an ability level changes.
+ *
+ * @param damageTakenMultiplier Protective Fur: incoming damage is multiplied by this
+ * @param rabiesChance          percent chance (0-100) to inflict Wither on hit
+ * @param fallImmune            cats take no fall damage
+ */
+record CombatModifiers(double damageTakenMultiplier, int rabiesChance, boolean fallImmune) {
+
+    static CombatModifiers of(AbilityTable table, Role role, int protectiveFur, int rabies) {
+        // both are percentages per level in abilities.yml
+        double reduce = Math.max(0.0, Math.min(table.effect(PROTECTIVE_FUR, role, protectiveFur) / 100.0, 1.0));
+        int chance = (int) Math.max(0, Math.min(table.effect(RABIES, role, rabies), 100));
+        return new CombatModifiers(1.0 - reduce, chance, true);
+    }
+}
@@ -0,0 +1,217 @@
+package me.yusufkerem;
+
+import com.destroystokyo.paper.event.player.PlayerJumpEvent;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerToggleSneakEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Key-combo input for active abilities, driven by Paper's jump event and sneak
+ * toggles instead of guessing a jump from the player's velocity.
+ * <p>
+ * Combos come from the {@code combos} config section: an ability plus an
+ * ordered list of inputs that must all arrive within a window of ticks (other
+ * inputs may come in between). Only players who currently have at least one
+ * combo ability are tracked; for everyone else the handlers stop at a single
+ * map lookup. Per-player state is a sneak bit, a bitmask of enabled combos and
+ * a small ring of recent inputs in primitive arrays.
+ * <p>
+ * Input events for a player arrive on that player's region thread, so the
+ * ring needs no locking; {@link #refresh} may come from elsewhere and only
+ * swaps the volatile combo mask.
+ */
+final class ComboEngine implements Listener {
+
+    enum Input {
+        JUMP, SNEAK, UNSNEAK
+    }
+
+    record Combo(String name, Ability ability, Input[] inputs, int windowTicks, boolean whileSneaking) {
+    }
+
+    private static final long TICK_NANOS = 50_000_000L;
+    // longest combo that can be matched
+    private static final int HISTORY = 8;
+    private static final int FLAG_SNEAKING = 1;
+
+    private final List<Combo> combos;
+    private final BiConsumer<Player, Ability> trigger;
+    private final Map<UUID, State> states = new ConcurrentHashMap<>();
+    private final Metrics.Timer jumpTimer;
+    private final Metrics.Timer sneakTimer;
+
+    private static final class State {
+        volatile long comboMask;
+        int flags;
+        final byte[] inputs = new byte[HISTORY];
+        final long[] ticks = new long[HISTORY];
+        int head; // next write position
+        int count;
+    }
+
+    ComboEngine(List<Combo> combos, BiConsumer<Player, Ability> trigger, Metrics metrics) {
+        if (combos.size() > Long.SIZE)
+            throw new IllegalArgumentException("at most " + Long.SIZE + " combos");
+        this.combos = List.copyOf(combos);
+        this.trigger = trigger;
+        this.jumpTimer = metrics.timer("event", "onJump");
+        this.sneakTimer = metrics.timer("event", "onSneakToggle");
+    }
+
+    /**
+     * <pre>
+     * combos:
+     *   zoom:
+     *     ability: zoom
+     *     inputs: [jump, sneak]
+     *     window-ticks: 6
+     *     while-sneaking: false   # only fire if the player is sneaking when the last input arrives
+     * </pre>
+     */
+    static List<Combo> parse(ConfigurationSection sec, Logger logger) {
+        List<Combo> out = new ArrayList<>();
+        if (sec == null)
+            return out;
+        for (String name : sec.getKeys(false)) {
+            ConfigurationSection c = sec.getConfigurationSection(name);
+            if (c == null)
+                continue;
+            Ability ability = Ability.byKey(c.getString("ability", ""));
+            List<String> raw = c.getStringList("inputs");
+            if (ability == null || raw.isEmpty() || raw.size() > HISTORY) {
+                logger.warning("Ignoring combo '" + name + "': needs an ability and 1-" + HISTORY + " inputs");
+                continue;
+            }
+            Input[] inputs = new Input[raw.size()];
+            try {
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = Input.valueOf(raw.get(i).toUpperCase(Locale.ROOT));
+                }
+            } catch (IllegalArgumentException e) {
+                logger.warning("Ignoring combo '" + name + "': inputs are jump, sneak and unsneak");
+                continue;
+            }
+            out.add(new Combo(name, ability, inputs, Math.max(1, c.getInt("window-ticks", 6)),
+                    c.getBoolean("while-sneaking", false)));
+        }
+        return out;
+    }
+
+    List<Combo> combos() {
+        return combos;
+    }
+
+    /**
+     * Recomputes which combos a player can use: call after join, upgrades,
+     * role changes and /zoomcombo. Players left with none are dropped.
+     */
+    void refresh(Player p, PlayerProfile prof) {
+        long mask = 0;
+        if (prof != null && prof.zoomCombo()) {
+            for (int i = 0; i < combos.size(); i++) {
+                Ability a = combos.get(i).ability();
+                if (a.role() == prof.role() && prof.level(a) > 0)
+                    mask |= 1L << i;
+            }
+        }
+        if (mask == 0) {
+            states.remove(p.getUniqueId());
+            return;
+        }
+        State st = states.computeIfAbsent(p.getUniqueId(), k -> new State());
+        if (p.isSneaking())
+            st.flags |= FLAG_SNEAKING;
+        st.comboMask = mask;
+    }
+
+    void remove(UUID uuid) {
+        states.remove(uuid);
+    }
+
+    int tracked() {
+        return states.size();
+    }
+
+    // -------------------------
+    // Input events
+    // -------------------------
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onJump(PlayerJumpEvent e) {
+        State st = states.get(e.getPlayer().getUniqueId());
+        if (st == null)
+            return;
+        long t = jumpTimer.start();
+        try {
+            input(e.getPlayer(), st, Input.JUMP);
+        } finally {
+            jumpTimer.stop(t);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onSneakToggle(PlayerToggleSneakEvent e) {
+        State st = states.get(e.getPlayer().getUniqueId());
+        if (st == null)
+            return;
+        long t = sneakTimer.start();
+        try {
+            if (e.isSneaking()) {
+                st.flags |= FLAG_SNEAKING;
+                input(e.getPlayer(), st, Input.SNEAK);
+            } else {
+                st.flags &= ~FLAG_SNEAKING;
+                input(e.getPlayer(), st, Input.UNSNEAK);
+            }
+        } finally {
+            sneakTimer.stop(t);
+        }
+    }
+
+    private void input(Player p, State st, Input in) {
+        long tick = System.nanoTime() / TICK_NANOS;
+        st.inputs[st.head] = (byte) in.ordinal();
+        st.ticks[st.head] = tick;
+        st.head = (st.head + 1) % HISTORY;
+        if (st.count < HISTORY)
+            st.count++;
+
+        long mask = st.comboMask;
+        for (int i = 0; i < combos.size(); i++) {
+            if ((mask & (1L << i)) == 0)
+                continue;
+            Combo c = combos.get(i);
+            if (c.inputs()[c.inputs().length - 1] == in
+                    && (!c.whileSneaking() || (st.flags & FLAG_SNEAKING) != 0) && matches(st, c, tick)) {
+                // one input never completes two combos, and never the same combo twice
+                st.count = 0;
+                trigger.accept(p, c.ability());
+                return;
+            }
+        }
+    }
+
+    // walks the ring backwards from the newest input looking for the steps in reverse order
+    private static boolean matches(State st, Combo c, long now) {
+        int step = c.inputs().length - 1;
+        for (int k = 0; k < st.count && step >= 0; k++) {
+            int idx = (st.head - 1 - k + HISTORY) % HISTORY;
+            if (now - st.ticks[idx] > c.windowTicks())
+                return false;
+            if (st.inputs[idx] == c.inputs()[step].ordinal())
+                step--;
+        }
+        return step < 0;
+    }
+}
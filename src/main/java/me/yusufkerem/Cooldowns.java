@@ -0,0 +1,192 @@
+package me.yusufkerem;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-player, per-{@link Ability} cooldowns in an open-addressing table of
+ * primitive arrays: no boxing, no per-check allocation, O(1) lookups.
+ * <p>
+ * Expiry is {@link System#nanoTime()} based, so wall clock changes don't
+ * matter. A player's entry disappears on {@link #clear(UUID)} (quit) or as
+ * soon as a lookup finds all of its cooldowns expired, so the table only
+ * holds players who are online and recently used an ability.
+ * <p>
+ * All methods are synchronized; each holds the lock for a handful of array
+ * reads, which is cheaper than anything lock-free when Folia regions rarely
+ * collide here.
+ */
+final class Cooldowns {
+
+    private static final int KINDS = Ability.count();
+    private static final int INITIAL_CAPACITY = 64; // power of two
+
+    // linear probing; used[i] marks live slots since the nil UUID is a valid key
+    private boolean[] used;
+    private long[] msb;
+    private long[] lsb;
+    // expiry[slot * KINDS + ability.ordinal()], in nanoTime
+    private long[] expiry;
+    private int size;
+
+    Cooldowns() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        used = new boolean[capacity];
+        msb = new long[capacity];
+        lsb = new long[capacity];
+        expiry = new long[capacity * KINDS];
+        size = 0;
+    }
+
+    /**
+     * Starts the cooldown if it isn't running.
+     *
+     * @return true if the ability may be used now (and the cooldown has been started)
+     */
+    synchronized boolean tryStart(UUID uuid, Ability a, long duration, TimeUnit unit) {
+        long now = System.nanoTime();
+        int slot = find(uuid);
+        if (slot >= 0 && expiry[slot * KINDS + a.ordinal()] - now > 0)
+            return false;
+        if (slot < 0)
+            slot = insert(uuid, now);
+        expiry[slot * KINDS + a.ordinal()] = now + unit.toNanos(duration);
+        return true;
+    }
+
+    /** @return nanoseconds until the ability is ready, 0 if it is ready now */
+    synchronized long remainingNanos(UUID uuid, Ability a) {
+        int slot = find(uuid);
+        if (slot < 0)
+            return 0L;
+        long now = System.nanoTime();
+        long left = expiry[slot * KINDS + a.ordinal()] - now;
+        if (left > 0)
+            return left;
+        if (allExpired(slot, now))
+            remove(slot);
+        return 0L;
+    }
+
+    long remainingMillis(UUID uuid, Ability a) {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos(uuid, a));
+    }
+
+    /** Drops every cooldown of this player, e.g. on quit. */
+    synchronized void clear(UUID uuid) {
+        int slot = find(uuid);
+        if (slot >= 0)
+            remove(slot);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    // -------------------------
+    // Open addressing
+    // -------------------------
+    private static int hash(long hi, long lo) {
+        long h = hi ^ lo;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private int find(UUID uuid) {
+        long hi = uuid.getMostSignificantBits(), lo = uuid.getLeastSignificantBits();
+        int mask = used.length - 1;
+        for (int i = hash(hi, lo) & mask; used[i]; i = (i + 1) & mask) {
+            if (msb[i] == hi && lsb[i] == lo)
+                return i;
+        }
+        return -1;
+    }
+
+    private int insert(UUID uuid, long now) {
+        // keep the load factor under 1/2; expired entries go first, growing is the last resort
+        if ((size + 1) * 2 > used.length) {
+            purge(now);
+            if ((size + 1) * 2 > used.length)
+                rehash(used.length * 2);
+        }
+        long hi = uuid.getMostSignificantBits(), lo = uuid.getLeastSignificantBits();
+        int mask = used.length - 1;
+        int i = hash(hi, lo) & mask;
+        while (used[i]) {
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        msb[i] = hi;
+        lsb[i] = lo;
+        // all other abilities start out ready
+        for (int k = 0; k < KINDS; k++) {
+            expiry[i * KINDS + k] = now;
+        }
+        size++;
+        return i;
+    }
+
+    // backward-shift deletion: no tombstones, probe chains stay short
+    private void remove(int slot) {
+        int mask = used.length - 1;
+        int hole = slot;
+        int i = (slot + 1) & mask;
+        while (used[i]) {
+            int home = hash(msb[i], lsb[i]) & mask;
+            // move i into the hole unless its home lies cyclically in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                used[hole] = true;
+                msb[hole] = msb[i];
+                lsb[hole] = lsb[i];
+                System.arraycopy(expiry, i * KINDS, expiry, hole * KINDS, KINDS);
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        used[hole] = false;
+        size--;
+    }
+
+    private boolean allExpired(int slot, long now) {
+        for (int k = 0; k < KINDS; k++) {
+            if (expiry[slot * KINDS + k] - now > 0)
+                return false;
+        }
+        return true;
+    }
+
+    private void purge(long now) {
+        for (int i = 0; i < used.length;) {
+            // remove() may shift a later entry into i, so only advance when i stays
+            if (used[i] && allExpired(i, now))
+                remove(i);
+            else
+                i++;
+        }
+    }
+
+    private void rehash(int capacity) {
+        boolean[] oldUsed = used;
+        long[] oldMsb = msb, oldLsb = lsb, oldExpiry = expiry;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldUsed.length; j++) {
+            if (!oldUsed[j])
+                continue;
+            int i = hash(oldMsb[j], oldLsb[j]) & mask;
+            while (used[i]) {
+                i = (i + 1) & mask;
+            }
+            used[i] = true;
+            msb[i] = oldMsb[j];
+            lsb[i] = oldLsb[j];
+            System.arraycopy(oldExpiry, j * KINDS, expiry, i * KINDS, KINDS);
+            size++;
+        }
+    }
+}
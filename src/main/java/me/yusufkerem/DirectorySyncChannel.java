@@ -0,0 +1,166 @@
+package me.yusufkerem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * {@link SyncChannel} over a directory every server can reach: each server
+ * appends {@code "<uuid> <version>\n"} lines to its own {@code <node>.bus}
+ * file and tails everyone else's. Good enough for a handful of servers on one
+ * host or a network share, and for testing without any extra infrastructure.
+ * <p>
+ * A bus file is truncated once it passes {@link #MAX_BUS_BYTES}; readers notice
+ * the file got shorter and start over from the top. Messages written in the
+ * same poll interval as a truncation can be missed, which only delays that
+ * update (see {@link SyncChannel}).
+ */
+final class DirectorySyncChannel implements SyncChannel {
+
+    private static final String SUFFIX = ".bus";
+    private static final long MAX_BUS_BYTES = 1 << 20;
+
+    private final Logger logger;
+    private final Path dir;
+    private final String node;
+    private final long pollNanos;
+    private final FileChannel out;
+    // read position in every other server's bus file; only touched by the poller
+    private final Map<Path, Long> offsets = new HashMap<>();
+    private final Map<Path, StringBuilder> partial = new HashMap<>();
+
+    private volatile boolean running;
+    private Thread poller;
+    private Receiver receiver;
+
+    DirectorySyncChannel(Logger logger, Path dir, String node, long pollMillis) throws IOException {
+        this.logger = logger;
+        this.dir = dir;
+        this.node = node;
+        this.pollNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(10L, pollMillis));
+        Files.createDirectories(dir);
+        this.out = FileChannel.open(dir.resolve(node + SUFFIX), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    String node() {
+        return node;
+    }
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        // only changes from now on matter; whatever is on disk already is in the store
+        for (Path file : busFiles()) {
+            try {
+                offsets.put(file, Files.size(file));
+            } catch (IOException ignored) {
+            }
+        }
+        running = true;
+        poller = new Thread(this::run, "CATSMPMC-Sync");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    @Override
+    public synchronized void publish(UUID uuid, long version) {
+        byte[] line = (uuid + " " + version + "\n").getBytes(StandardCharsets.US_ASCII);
+        try {
+            if (out.size() > MAX_BUS_BYTES)
+                out.truncate(0);
+            out.write(ByteBuffer.wrap(line));
+        } catch (IOException e) {
+            logger.warning("Could not publish a profile change to " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(pollNanos);
+            for (Path file : busFiles()) {
+                try {
+                    poll(file);
+                } catch (IOException | RuntimeException e) {
+                    logger.warning("Could not read " + file.getFileName() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // everyone's bus file but ours
+    private List<Path> busFiles() {
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(node + SUFFIX))
+                    found.add(file);
+            }
+        } catch (IOException e) {
+            logger.warning("Could not list " + dir + ": " + e.getMessage());
+        }
+        return found;
+    }
+
+    private void poll(Path file) throws IOException {
+        long size = Files.size(file);
+        long offset = offsets.getOrDefault(file, 0L);
+        if (size < offset) {
+            // truncated by its owner
+            offset = 0;
+            partial.remove(file);
+        }
+        if (size == offset)
+            return;
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(size - offset, MAX_BUS_BYTES));
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buf.hasRemaining() && in.read(buf, offset + buf.position()) > 0) {
+                // keep reading
+            }
+        }
+        offsets.put(file, offset + buf.position());
+        StringBuilder text = partial.computeIfAbsent(file, f -> new StringBuilder());
+        text.append(new String(buf.array(), 0, buf.position(), StandardCharsets.US_ASCII));
+        int start = 0;
+        for (int nl = text.indexOf("\n"); nl >= 0; nl = text.indexOf("\n", start)) {
+            deliver(text.substring(start, nl));
+            start = nl + 1;
+        }
+        text.delete(0, start);
+    }
+
+    private void deliver(String line) {
+        int space = line.indexOf(' ');
+        if (space < 0)
+            return;
+        try {
+            receiver.changed(UUID.fromString(line.substring(0, space)), Long.parseLong(line.substring(space + 1)));
+        } catch (IllegalArgumentException e) {
+            // torn line after a truncation
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (poller != null)
+            LockSupport.unpark(poller);
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
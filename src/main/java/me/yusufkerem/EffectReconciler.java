@@ -0,0 +1,181 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.bukkit.NamespacedKey;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.attribute.AttributeModifier;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityPotionEffectEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Applies the passive abilities (Purring, Claws, Health Kitty) to a player as
+ * a diff against what was applied last time, instead of removing and re-adding
+ * everything. A call for an unchanged profile compares two small records and
+ * sends nothing to the client; a changed ability touches only its own effect.
+ * <p>
+ * Health Kitty is a namespaced {@link AttributeModifier} on max health, so the
+ * base value and other plugins' modifiers are left alone. Potion effects are
+ * only removed when they are ours (infinite, ambient, no particles) and have to
+ * go down or away, so beacons and other plugins' effects survive.
+ * <p>
+ * The first call for a player (after join, respawn, milk or /reload) has
+ * nothing remembered and compares against the player's actual effects and
+ * modifiers instead, which still makes it a no-op when nothing changed.
+ */
+final class EffectReconciler implements Listener {
+
+    private static final int NONE = -1;
+    // what Health Kitty gave per level, and up to which level, before abilities.yml
+    private static final double LEGACY_HEALTH_PER_LEVEL = 2.0;
+    private static final int LEGACY_MAX_LEVEL = 5;
+    // effects from before this class were Integer.MAX_VALUE ticks long rather than infinite
+    private static final int LEGACY_MIN_DURATION = Integer.MAX_VALUE / 2;
+
+    /** What we applied: potion amplifiers ({@link #NONE} = no effect) and extra max health. */
+    private record Applied(int regeneration, int strength, double extraHealth) {
+    }
+
+    private final Plugin plugin;
+    private final NamespacedKey healthKey;
+    private final Consumer<Player> reapply;
+    private final Map<UUID, Applied> applied = new ConcurrentHashMap<>();
+
+    /**
+     * @param reapply called on the player's thread when our effects were cleared
+     *                from outside (milk, death) and have to be put back
+     */
+    EffectReconciler(Plugin plugin, Consumer<Player> reapply) {
+        this.plugin = plugin;
+        this.healthKey = new NamespacedKey(plugin, "health_kitty");
+        this.reapply = reapply;
+    }
+
+    private static Applied desired(PlayerProfile prof) {
+        AbilityTable table = AbilityTable.get();
+        Role role = prof.role();
+        // effect level 1 => amp 0, level 2 => amp 1; 0 => none
+        int regen = (int) table.effect(Ability.PURRING, role, prof.level(Ability.PURRING));
+        int strength = (int) table.effect(Ability.CLAWS, role, prof.level(Ability.CLAWS));
+        double health = table.effect(Ability.HEALTH_KITTY, role, prof.level(Ability.HEALTH_KITTY));
+        return new Applied(regen > 0 ? regen - 1 : NONE, strength > 0 ? strength - 1 : NONE, Math.max(0.0, health));
+    }
+
+    /** Brings the player's effects in line with the profile. Must run on the player's thread. */
+    void apply(Player p, PlayerProfile prof) {
+        Applied want = desired(prof);
+        Applied have = applied.get(p.getUniqueId());
+        if (want.equals(have))
+            return;
+
+        reconcile(p, PotionEffectType.REGENERATION, have == null ? ours(p, PotionEffectType.REGENERATION)
+                : have.regeneration(), want.regeneration());
+        reconcile(p, PotionEffectType.STRENGTH, have == null ? ours(p, PotionEffectType.STRENGTH)
+                : have.strength(), want.strength());
+        reconcileHealth(p, have == null ? NONE : have.extraHealth(), want.extraHealth());
+        applied.put(p.getUniqueId(), want);
+    }
+
+    /** Forgets what was applied to this player, e.g. on quit. */
+    void forget(UUID uuid) {
+        applied.remove(uuid);
+    }
+
+    // -------------------------
+    // Potion effects
+    // -------------------------
+
+    // amplifier of our effect of this type on the player, NONE if there is none
+    private static int ours(Player p, PotionEffectType type) {
+        PotionEffect cur = p.getPotionEffect(type);
+        if (cur == null || !cur.isAmbient() || cur.hasParticles())
+            return NONE;
+        return cur.isInfinite() || cur.getDuration() > LEGACY_MIN_DURATION ? cur.getAmplifier() : NONE;
+    }
+
+    private static void reconcile(Player p, PotionEffectType type, int have, int want) {
+        if (have == want)
+            return;
+        // adding never lowers an amplifier, so going down means removing first
+        if (have != NONE && want < have)
+            p.removePotionEffect(type);
+        if (want != NONE)
+            p.addPotionEffect(new PotionEffect(type, PotionEffect.INFINITE_DURATION, want, true, false, true));
+    }
+
+    // -------------------------
+    // Health Kitty
+    // -------------------------
+
+    // have < 0: unknown, read the modifier off the player
+    private void reconcileHealth(Player p, double have, double want) {
+        AttributeInstance maxHealth = p.getAttribute(Attribute.MAX_HEALTH);
+        if (maxHealth == null)
+            return;
+        if (have < 0) {
+            AttributeModifier cur = maxHealth.getModifier(healthKey);
+            have = cur == null ? 0.0 : cur.getAmount();
+            if (cur == null)
+                resetLegacyBase(maxHealth);
+        }
+        if (have == want)
+            return;
+        if (have != 0.0)
+            maxHealth.removeModifier(healthKey);
+        if (want != 0.0)
+            maxHealth.addModifier(new AttributeModifier(healthKey, want, AttributeModifier.Operation.ADD_NUMBER));
+        if (want < have && p.getHealth() > maxHealth.getValue())
+            p.setHealth(maxHealth.getValue());
+    }
+
+    // older versions set the base value to 20 + 2 per level; hand that back to the modifier
+    private static void resetLegacyBase(AttributeInstance maxHealth) {
+        double extra = maxHealth.getBaseValue() - maxHealth.getDefaultValue();
+        int levels = (int) (extra / LEGACY_HEALTH_PER_LEVEL);
+        if (extra > 0 && levels * LEGACY_HEALTH_PER_LEVEL == extra && levels <= LEGACY_MAX_LEVEL)
+            maxHealth.setBaseValue(maxHealth.getDefaultValue());
+    }
+
+    // -------------------------
+    // Effects cleared from outside
+    // -------------------------
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPotionEffect(EntityPotionEffectEvent e) {
+        // fires for every mob's effects; bail out before any map lookup
+        if (!(e.getEntity() instanceof Player p))
+            return;
+        EntityPotionEffectEvent.Action action = e.getAction();
+        if (action != EntityPotionEffectEvent.Action.REMOVED && action != EntityPotionEffectEvent.Action.CLEARED)
+            return;
+        if (e.getCause() == EntityPotionEffectEvent.Cause.PLUGIN)
+            return;
+        PotionEffectType type = e.getModifiedType();
+        if (type != PotionEffectType.REGENERATION && type != PotionEffectType.STRENGTH)
+            return;
+        if (applied.remove(p.getUniqueId()) == null)
+            return;
+        // dead players get theirs back on respawn
+        if (e.getCause() != EntityPotionEffectEvent.Cause.DEATH)
+            p.getScheduler().run(plugin, task -> reapply.accept(p), null);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent e) {
+        Player p = e.getPlayer();
+        applied.remove(p.getUniqueId());
+        // the player isn't back in the world until after this event
+        p.getScheduler().run(plugin, task -> reapply.accept(p), null);
+    }
+}
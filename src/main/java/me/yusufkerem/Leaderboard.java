@@ -0,0 +1,251 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.BloodPointRank;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Blood Point ranking of every player who has any, kept up to date as BP
+ * changes instead of sorted on demand. Players at 0 BP are not ranked and
+ * take no memory here, so the index only grows with players who can show up
+ * on it.
+ * <p>
+ * BP is bounded by {@link CATSMPMC#MAX_BP}, so there is one bucket per value.
+ * A bucket is an append-only array in the order players reached that value,
+ * which is the tie-break: whoever got there first ranks higher. Leaving a
+ * bucket leaves a hole; a Fenwick tree over the array counts the players still
+ * in it, so a rank is the size of the higher buckets plus one prefix sum, and
+ * finding the n-th player of a bucket is one tree descent. Both are O(log n);
+ * an update is a removal plus an append, also O(log n) (amortised, since a full
+ * bucket is compacted or doubled in O(n)).
+ * <p>
+ * The first {@link #TOP_CACHED} ranks are also published as an immutable list
+ * that is only rebuilt when a change reaches them, so scoreboards can read it
+ * every tick from any thread without taking the lock.
+ */
+final class Leaderboard implements PlayerProfile.ChangeListener {
+
+    static final int TOP_CACHED = 10;
+    private static final int INITIAL_BUCKET_CAPACITY = 64; // power of two
+
+    private static final class Slot {
+        int bp;
+        int pos; // index in the bucket's array
+    }
+
+    private static final class Bucket {
+        UUID[] ids = new UUID[INITIAL_BUCKET_CAPACITY];
+        int[] tree = new int[INITIAL_BUCKET_CAPACITY + 1]; // 1-based Fenwick tree of occupied positions
+        int end; // next free position
+        int live;
+
+        void add(int pos, int delta) {
+            for (int i = pos + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        // occupied positions before pos
+        int before(int pos) {
+            int sum = 0;
+            for (int i = pos; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        // position of the k-th (0-based) occupied slot
+        int select(int k) {
+            int pos = 0;
+            for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+                if (pos + step < tree.length && tree[pos + step] <= k) {
+                    pos += step;
+                    k -= tree[pos];
+                }
+            }
+            return pos;
+        }
+    }
+
+    // bucket 0 stays empty
+    private final Bucket[] buckets = new Bucket[CATSMPMC.MAX_BP + 1];
+    private final Map<UUID, Slot> slots = new HashMap<>();
+    // live changes during the startup scan, including drops to 0, which leave no slot behind; null once ready
+    private Set<UUID> changedBeforeReady = new HashSet<>();
+
+    private record Top(long version, List<BloodPointRank> ranks) {
+    }
+
+    private volatile long version;
+    private volatile Top top = new Top(-1, List.of());
+    private volatile boolean ready;
+
+    Leaderboard() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /** Called inside the profile's lock for every change; only Blood Points matter here. */
+    @Override
+    public void changed(UUID uuid, int field, int oldValue, int newValue) {
+        if (field == BpJournal.FIELD_BP)
+            update(uuid, newValue);
+    }
+
+    /** Moves the player to the end of the bucket for their new BP, or off the board at 0. */
+    synchronized void update(UUID uuid, int bp) {
+        if (changedBeforeReady != null)
+            changedBeforeReady.add(uuid);
+        move(uuid, bp);
+    }
+
+    /**
+     * Adds a player read from the store at startup, unless a live change got
+     * there first (that one is newer).
+     */
+    synchronized void seed(UUID uuid, int bp) {
+        if (!slots.containsKey(uuid) && (changedBeforeReady == null || !changedBeforeReady.contains(uuid)))
+            move(uuid, bp);
+    }
+
+    /** Marks the startup scan of the store as done. */
+    synchronized void ready() {
+        changedBeforeReady = null;
+        ready = true;
+    }
+
+    /** @return false while the startup scan is still running; ranks may be missing offline players until then */
+    boolean isReady() {
+        return ready;
+    }
+
+    /** @return 1-based rank, 0 if the player has no Blood Points (or has never played) */
+    synchronized int rank(UUID uuid) {
+        Slot slot = slots.get(uuid);
+        return slot == null ? 0 : rankOf(slot) + 1;
+    }
+
+    /** Players on the board, i.e. with at least 1 BP. */
+    synchronized int size() {
+        return slots.size();
+    }
+
+    /** Ranks {@code from + 1} to {@code from + count}, best first. */
+    synchronized List<BloodPointRank> page(int from, int count) {
+        List<BloodPointRank> out = new ArrayList<>(Math.max(0, Math.min(count, slots.size() - from)));
+        int skip = Math.max(0, from);
+        int rank = skip;
+        for (int bp = CATSMPMC.MAX_BP; bp >= 0 && out.size() < count; bp--) {
+            Bucket b = buckets[bp];
+            if (skip >= b.live) {
+                skip -= b.live;
+                continue;
+            }
+            for (int pos = b.select(skip); pos < b.end && out.size() < count; pos++) {
+                if (b.ids[pos] != null)
+                    out.add(new BloodPointRank(++rank, b.ids[pos], bp));
+            }
+            skip = 0;
+        }
+        return out;
+    }
+
+    /**
+     * The first {@link #TOP_CACHED} ranks. Lock-free unless a change reached
+     * them since the last call.
+     */
+    List<BloodPointRank> top() {
+        Top t = top;
+        if (t.version() == version)
+            return t.ranks();
+        synchronized (this) {
+            t = new Top(version, List.copyOf(page(0, TOP_CACHED)));
+            top = t;
+            return t.ranks();
+        }
+    }
+
+    // -------------------------
+    // Buckets
+    // -------------------------
+    private void move(UUID uuid, int bp) {
+        bp = Math.max(0, Math.min(bp, CATSMPMC.MAX_BP));
+        Slot slot = slots.get(uuid);
+        boolean touchesTop = false;
+        if (slot != null) {
+            touchesTop = rankOf(slot) < TOP_CACHED;
+            remove(buckets[slot.bp], slot.pos);
+        }
+        if (bp == 0) {
+            if (slot != null)
+                slots.remove(uuid);
+        } else {
+            if (slot == null) {
+                slot = new Slot();
+                slots.put(uuid, slot);
+            }
+            slot.bp = bp;
+            append(buckets[bp], uuid, slot);
+            touchesTop |= rankOf(slot) < TOP_CACHED;
+        }
+        if (touchesTop)
+            version++;
+    }
+
+    // 0-based
+    private int rankOf(Slot slot) {
+        int rank = buckets[slot.bp].before(slot.pos);
+        for (int bp = CATSMPMC.MAX_BP; bp > slot.bp; bp--) {
+            rank += buckets[bp].live;
+        }
+        return rank;
+    }
+
+    private static void remove(Bucket b, int pos) {
+        b.ids[pos] = null;
+        b.add(pos, -1);
+        b.live--;
+    }
+
+    private void append(Bucket b, UUID uuid, Slot slot) {
+        if (b.end == b.ids.length)
+            // mostly holes: squeeze them out; mostly players: make room
+            rebuild(b, b.live * 2 <= b.ids.length ? b.ids.length : b.ids.length * 2);
+        slot.pos = b.end++;
+        b.ids[slot.pos] = uuid;
+        b.add(slot.pos, 1);
+        b.live++;
+    }
+
+    private void rebuild(Bucket b, int capacity) {
+        UUID[] ids = new UUID[capacity];
+        int[] tree = new int[capacity + 1];
+        int n = 0;
+        for (int pos = 0; pos < b.end; pos++) {
+            UUID id = b.ids[pos];
+            if (id == null)
+                continue;
+            ids[n] = id;
+            slots.get(id).pos = n;
+            n++;
+        }
+        // linear Fenwick build: every occupied position counts 1, pushed up to its parent
+        for (int i = 1; i <= capacity; i++) {
+            if (i <= n)
+                tree[i]++;
+            int parent = i + (i & -i);
+            if (parent <= capacity)
+                tree[parent] += tree[i];
+        }
+        b.ids = ids;
+        b.tree = tree;
+        b.end = n;
+    }
+}
@@ -0,0 +1,461 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Imports the old {@code players.<uuid>} layout of data.yml into a profile
+ * store: automatically on startup, via /catsmp migrate, or offline through
+ * {@link #main(String[])}.
+ * <p>
+ * The file is read as a stream of YAML events, so only one chunk of raw
+ * records is in memory at a time, never the whole tree. Each chunk is
+ * validated and converted on a fork/join pool while the next one is parsed,
+ * then written to the store in a single batch. The source file is renamed to
+ * {@code <name>.migrated} afterwards so an import never runs twice.
+ */
+final class LegacyMigrator {
+
+    private static final int CHUNK_SIZE = 4096;
+    // records per leaf task when a chunk is split across the pool
+    private static final int LEAF_SIZE = 256;
+    // problems listed individually; the rest are only counted
+    private static final int MAX_LOGGED_PROBLEMS = 50;
+
+    /** Where converted batches go: a store, or through the running plugin's writer. */
+    interface Sink {
+        void save(List<ProfileSnapshot> batch) throws IOException;
+    }
+
+    /** Called roughly every 10% of the file and once at the end. */
+    interface Progress {
+        void update(long bytesRead, long totalBytes, long records);
+    }
+
+    /** Outcome of one import. Counters are updated from the pool's threads. */
+    static final class Report {
+        final LongAdder imported = new LongAdder();
+        final LongAdder corrected = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        private final List<String> problems = new ArrayList<>();
+        private final LongAdder problemCount = new LongAdder();
+
+        private void problem(String uuid, String message, boolean fatal) {
+            problemCount.increment();
+            synchronized (problems) {
+                if (problems.size() < MAX_LOGGED_PROBLEMS)
+                    problems.add(uuid + ": " + message + (fatal ? " (skipped)" : " (fixed)"));
+            }
+        }
+
+        List<String> problems() {
+            synchronized (problems) {
+                return new ArrayList<>(problems);
+            }
+        }
+
+        long problemCount() {
+            return problemCount.sum();
+        }
+
+        @Override
+        public String toString() {
+            return imported.sum() + " imported (" + corrected.sum() + " corrected), " + rejected.sum()
+                    + " rejected, " + skipped.sum() + " skipped";
+        }
+    }
+
+    private LegacyMigrator() {
+    }
+
+    /** Startup path: import everything, log the result and rename the file. */
+    static int migrate(Logger logger, File legacy, ProfileStore target) throws IOException {
+        Report report = importFile(legacy, target::replace, uuid -> false, (read, total, records) -> logger
+                .info(String.format(Locale.ROOT, "Migrating %s: %d%% (%d records)", legacy.getName(),
+                        total == 0 ? 100 : read * 100 / total, records)));
+        log(logger, legacy, report);
+        markMigrated(legacy);
+        return (int) report.imported.sum();
+    }
+
+    static void log(Logger logger, File legacy, Report report) {
+        for (String p : report.problems()) {
+            logger.warning(legacy.getName() + ": " + p);
+        }
+        long more = report.problemCount() - report.problems().size();
+        if (more > 0)
+            logger.warning(legacy.getName() + ": ... and " + more + " more problems");
+        logger.info(legacy.getName() + ": " + report);
+    }
+
+    static void markMigrated(File legacy) throws IOException {
+        File done = new File(legacy.getParentFile(), legacy.getName() + ".migrated");
+        if (!legacy.renameTo(done))
+            throw new IOException("Could not rename " + legacy.getName() + " to " + done.getName());
+    }
+
+    /**
+     * Streams {@code legacy} into {@code target}. Pass a null target to only
+     * validate. Records for which {@code skip} is true (e.g. players who are
+     * online right now) are left alone.
+     */
+    static Report importFile(File legacy, Sink target, Predicate<UUID> skip, Progress progress)
+            throws IOException {
+        Report report = new Report();
+        long total = legacy.length();
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(legacy.toPath()));
+                Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            LoaderOptions options = new LoaderOptions();
+            // the default limit (3MB) is for the whole stream, not per document
+            options.setCodePointLimit(Integer.MAX_VALUE);
+            Iterator<Event> events = new Yaml(options).parse(reader).iterator();
+
+            List<String> keys = new ArrayList<>(CHUNK_SIZE);
+            List<Object> values = new ArrayList<>(CHUNK_SIZE);
+            ForkJoinTask<?> running = null;
+            ProfileSnapshot[] converted = null;
+            long records = 0;
+            long nextReport = total / 10;
+
+            if (seekPlayers(events)) {
+                Event e;
+                while ((e = events.next()).getEventId() != Event.ID.MappingEnd) {
+                    keys.add(String.valueOf(readNode(events, e)));
+                    values.add(readNode(events, events.next()));
+                    records++;
+                    if (keys.size() == CHUNK_SIZE) {
+                        // parse the next chunk while this one converts
+                        finish(running, converted, target, report);
+                        converted = new ProfileSnapshot[keys.size()];
+                        running = pool.submit(new Convert(keys, values, converted, 0, keys.size(), skip, report));
+                        keys = new ArrayList<>(CHUNK_SIZE);
+                        values = new ArrayList<>(CHUNK_SIZE);
+                        if (in.count >= nextReport) {
+                            progress.update(in.count, total, records);
+                            nextReport = in.count + total / 10;
+                        }
+                    }
+                }
+            }
+            finish(running, converted, target, report);
+            converted = new ProfileSnapshot[keys.size()];
+            pool.invoke(new Convert(keys, values, converted, 0, keys.size(), skip, report));
+            finish(null, converted, target, report);
+            progress.update(total, total, records);
+        } catch (RuntimeException ex) {
+            // SnakeYAML reports syntax errors unchecked
+            throw new IOException("Could not parse " + legacy.getName() + ": " + ex.getMessage(), ex);
+        } finally {
+            pool.shutdown();
+        }
+        return report;
+    }
+
+    private static void finish(ForkJoinTask<?> running, ProfileSnapshot[] converted, Sink target,
+            Report report) throws IOException {
+        if (running != null)
+            running.join();
+        if (converted == null)
+            return;
+        List<ProfileSnapshot> batch = new ArrayList<>(converted.length);
+        for (ProfileSnapshot snap : converted) {
+            if (snap != null)
+                batch.add(snap);
+        }
+        if (target != null && !batch.isEmpty())
+            target.save(batch);
+        report.imported.add(batch.size());
+    }
+
+    // -------------------------
+    // Streaming YAML
+    // -------------------------
+
+    // advances to just after the MappingStart of the top-level "players" section
+    private static boolean seekPlayers(Iterator<Event> events) {
+        while (events.hasNext()) {
+            Event e = events.next();
+            if (e.getEventId() == Event.ID.MappingStart)
+                break;
+            if (e.getEventId() == Event.ID.StreamEnd)
+                return false;
+        }
+        while (events.hasNext()) {
+            Event key = events.next();
+            if (key.getEventId() == Event.ID.MappingEnd)
+                return false;
+            Event value = events.next();
+            if (key instanceof ScalarEvent s && s.getValue().equals("players")
+                    && value.getEventId() == Event.ID.MappingStart)
+                return true;
+            skipNode(events, value);
+        }
+        return false;
+    }
+
+    // one record as plain maps/lists/strings; aliases become null
+    private static Object readNode(Iterator<Event> events, Event first) {
+        switch (first.getEventId()) {
+            case Scalar:
+                return ((ScalarEvent) first).getValue();
+            case MappingStart: {
+                Map<String, Object> map = new LinkedHashMap<>();
+                Event e;
+                while ((e = events.next()).getEventId() != Event.ID.MappingEnd) {
+                    map.put(String.valueOf(readNode(events, e)), readNode(events, events.next()));
+                }
+                return map;
+            }
+            case SequenceStart: {
+                List<Object> list = new ArrayList<>();
+                Event e;
+                while ((e = events.next()).getEventId() != Event.ID.SequenceEnd) {
+                    list.add(readNode(events, e));
+                }
+                return list;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static void skipNode(Iterator<Event> events, Event first) {
+        int depth = 0;
+        Event e = first;
+        while (true) {
+            switch (e.getEventId()) {
+                case MappingStart, SequenceStart -> depth++;
+                case MappingEnd, SequenceEnd -> depth--;
+                default -> {
+                }
+            }
+            if (depth == 0)
+                return;
+            e = events.next();
+        }
+    }
+
+    // -------------------------
+    // Validation / conversion
+    // -------------------------
+    private static final class Convert extends RecursiveAction {
+        private final List<String> keys;
+        private final List<Object> values;
+        private final ProfileSnapshot[] out;
+        private final int from, to;
+        private final Predicate<UUID> skip;
+        private final Report report;
+
+        Convert(List<String> keys, List<Object> values, ProfileSnapshot[] out, int from, int to,
+                Predicate<UUID> skip, Report report) {
+            this.keys = keys;
+            this.values = values;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.skip = skip;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Convert(keys, values, out, from, mid, skip, report),
+                        new Convert(keys, values, out, mid, to, skip, report));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                out[i] = convert(keys.get(i), values.get(i), skip, report);
+            }
+        }
+    }
+
+    static ProfileSnapshot convert(String uuidStr, Object value, Predicate<UUID> skip, Report report) {
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(uuidStr);
+        } catch (IllegalArgumentException ex) {
+            report.problem(uuidStr, "not a UUID", true);
+            report.rejected.increment();
+            return null;
+        }
+        if (!(value instanceof Map<?, ?> sec)) {
+            report.problem(uuidStr, "not a section", true);
+            report.rejected.increment();
+            return null;
+        }
+        if (skip.test(uuid)) {
+            report.skipped.increment();
+            return null;
+        }
+        boolean fixed = false;
+
+        Role role;
+        try {
+            role = Role.valueOf(str(sec.get("role"), "PASSIVE").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            report.problem(uuidStr, "unknown role '" + sec.get("role") + "'", true);
+            report.rejected.increment();
+            return null;
+        }
+
+        int bp;
+        try {
+            bp = Integer.parseInt(str(sec.get("bloodpoints"), "3"));
+        } catch (NumberFormatException ex) {
+            report.problem(uuidStr, "bloodpoints '" + sec.get("bloodpoints") + "' is not a number", true);
+            report.rejected.increment();
+            return null;
+        }
+        if (bp < 0 || bp > CATSMPMC.MAX_BP) {
+            report.problem(uuidStr, "bloodpoints " + bp + " outside 0.." + CATSMPMC.MAX_BP, false);
+            bp = Math.max(0, Math.min(bp, CATSMPMC.MAX_BP));
+            fixed = true;
+        }
+
+        boolean zoomCombo = !str(sec.get("zoomcombo"), "true").equalsIgnoreCase("false");
+
+        byte[] levels = new byte[Ability.count()];
+        if (sec.get("abilities") instanceof Map<?, ?> abilities) {
+            for (Map.Entry<?, ?> en : abilities.entrySet()) {
+                Ability ability = Ability.byKey(String.valueOf(en.getKey()));
+                if (ability == null) {
+                    report.problem(uuidStr, "unknown ability '" + en.getKey() + "'", false);
+                    fixed = true;
+                    continue;
+                }
+                int lvl;
+                try {
+                    lvl = Integer.parseInt(str(en.getValue(), "0"));
+                } catch (NumberFormatException ex) {
+                    report.problem(uuidStr, ability.key + " level '" + en.getValue() + "' is not a number", false);
+                    fixed = true;
+                    continue;
+                }
+                if (lvl < 0 || lvl > Ability.LEVEL_LIMIT) {
+                    report.problem(uuidStr, ability.key + " level " + lvl + " outside 0.." + Ability.LEVEL_LIMIT,
+                            false);
+                    lvl = Math.max(0, Math.min(lvl, Ability.LEVEL_LIMIT));
+                    fixed = true;
+                }
+                levels[ability.ordinal()] = (byte) lvl;
+            }
+        }
+
+        if (fixed)
+            report.corrected.increment();
+        return new ProfileSnapshot(uuid, role, bp, zoomCombo, levels);
+    }
+
+    private static String str(Object o, String def) {
+        return o == null ? def : o.toString().trim();
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        // only read by the parsing thread
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+    }
+
+    // -------------------------
+    // Offline import
+    // -------------------------
+
+    /**
+     * {@code LegacyMigrator <data.yml> <plugin data folder> [sharded|binary|validate]}
+     * <p>
+     * Writes players/ or profiles.dat into the given folder, the same layout
+     * the plugin uses, so the result can be dropped into plugins/CATSMPMC/.
+     * Run with the server stopped; see scripts/import-legacy.sh.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LegacyMigrator <data.yml> <output folder> [sharded|binary|validate]");
+            System.exit(2);
+        }
+        File legacy = new File(args[0]);
+        File out = new File(args[1]);
+        String type = args.length > 2 ? args[2].toLowerCase(Locale.ROOT) : "sharded";
+        if (!legacy.isFile()) {
+            System.err.println(legacy + " does not exist");
+            System.exit(2);
+        }
+
+        ProfileStore target = switch (type) {
+            case "validate" -> null;
+            case "binary" -> {
+                out.mkdirs();
+                yield new BinaryProfileStore(new File(out, "profiles.dat"));
+            }
+            case "sharded" -> new ShardedProfileStore(new File(out, "players"));
+            default -> {
+                System.err.println("Unknown type '" + type + "' (sharded, binary or validate)");
+                System.exit(2);
+                yield null;
+            }
+        };
+
+        Logger logger = Logger.getLogger("CATSMPMC");
+        long start = System.nanoTime();
+        Report report;
+        try {
+            report = importFile(legacy, target == null ? null : target::replace, uuid -> false,
+                    (read, total, records) -> System.out.printf(Locale.ROOT, "%3d%%  %d records%n",
+                            total == 0 ? 100 : read * 100 / total, records));
+        } finally {
+            if (target != null)
+                target.close();
+        }
+        log(logger, legacy, report);
+        System.out.printf(Locale.ROOT, "Done in %.1fs%n", (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,255 @@
+package me.yusufkerem;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.Style;
+import net.kyori.adventure.text.format.TextColor;
+import net.kyori.adventure.text.format.TextDecoration;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Notifications sent during play (kills, Rabies, Zoom, upgrades), loaded from
+ * messages.yml and compiled once into Adventure components.
+ * <p>
+ * A template's {@code &} color codes are resolved when it is compiled: the
+ * text between placeholders becomes ready-made components, and each
+ * {@code {placeholder}} remembers the style in effect where it appears. Sending
+ * a message only wraps the placeholder values in text components; nothing is
+ * parsed or serialised, and a message without placeholders is the same
+ * component every time.
+ * <p>
+ * A message can go to the action bar instead of chat, and can have a per-player
+ * cooldown that drops repeats (cooldown spam while a player holds the combo).
+ */
+final class Messages {
+
+    /** Every message sent through here, with its built-in text and placeholder names. */
+    enum Key {
+        KILL_REWARD("kill-reward", "&6You gained 1 Blood Point! ({bp}/{max})", "bp", "max"),
+        RABIES_TRIGGERED("rabies-triggered", "&4Rabies triggered!"),
+        ZOOM("zoom", "&bZoom!"),
+        ZOOM_NOT_UPGRADED("zoom-not-upgraded", "&cYou have not upgraded Zoom yet."),
+        ZOOM_COOLDOWN("zoom-cooldown", "&eZoom is on cooldown. {seconds}s remaining.", "seconds"),
+        UPGRADE_NO_BLOOD_POINTS("upgrade-no-blood-points", "&cYou don't have enough Blood Points!"),
+        UPGRADE_MAX_LEVEL("upgrade-max-level", "&eThis ability is already at max level!"),
+        UPGRADED("upgraded", "&aUpgraded {ability} to level {level}!", "ability", "level"),
+        UPGRADED_BLOOD_POINTS("upgraded-blood-points", "&6Blood Points: {bp}/{max}", "bp", "max");
+
+        final String path;
+        final String defaultText;
+        final String[] placeholders;
+
+        Key(String path, String defaultText, String... placeholders) {
+            this.path = path;
+            this.defaultText = defaultText;
+            this.placeholders = placeholders;
+        }
+    }
+
+    private static final int KEYS = Key.values().length;
+    private static final NamedTextColor[] LEGACY_COLORS = { NamedTextColor.BLACK, NamedTextColor.DARK_BLUE,
+            NamedTextColor.DARK_GREEN, NamedTextColor.DARK_AQUA, NamedTextColor.DARK_RED, NamedTextColor.DARK_PURPLE,
+            NamedTextColor.GOLD, NamedTextColor.GRAY, NamedTextColor.DARK_GRAY, NamedTextColor.BLUE,
+            NamedTextColor.GREEN, NamedTextColor.AQUA, NamedTextColor.RED, NamedTextColor.LIGHT_PURPLE,
+            NamedTextColor.YELLOW, NamedTextColor.WHITE };
+
+    /**
+     * A compiled message. {@code parts} holds the fixed text, with null where
+     * a placeholder goes; {@code slots} and {@code styles} say which argument
+     * and which style fill that position. {@code fixed} is set instead when
+     * there are no placeholders at all.
+     */
+    private record Template(Component fixed, Component[] parts, int[] slots, Style[] styles, boolean actionBar,
+            long cooldownNanos) {
+
+        Component render(Object[] args) {
+            if (fixed != null)
+                return fixed;
+            Component[] out = parts.clone();
+            for (int i = 0; i < out.length; i++) {
+                if (out[i] == null)
+                    out[i] = Component.text(slots[i] < args.length ? String.valueOf(args[slots[i]]) : "", styles[i]);
+            }
+            return Component.textOfChildren(out);
+        }
+    }
+
+    private final Logger logger;
+    // swapped as a whole on load; senders read whichever table is current
+    private volatile Template[] table;
+    // per player, when each rate-limited message was last sent (System.nanoTime, 0 = never)
+    private final Map<UUID, long[]> lastSent = new ConcurrentHashMap<>();
+
+    /** Starts out with the built-in texts until {@link #load} is called. */
+    Messages(Logger logger) {
+        this.logger = logger;
+        Template[] t = new Template[KEYS];
+        for (Key key : Key.values()) {
+            t[key.ordinal()] = compile(key, key.defaultText, false, 0L);
+        }
+        this.table = t;
+    }
+
+    /** Compiles messages.yml; messages missing from it keep their built-in text. */
+    void load(File file) {
+        load(YamlConfiguration.loadConfiguration(file));
+    }
+
+    /**
+     * <pre>
+     * kill-reward: "&amp;6You gained 1 Blood Point! ({bp}/{max})"
+     * zoom-cooldown:
+     *   text: "&amp;eZoom is on cooldown. {seconds}s remaining."
+     *   action-bar: true     # above the hotbar instead of in chat
+     *   cooldown-ms: 1000    # per player: repeats within this window are dropped
+     * </pre>
+     */
+    void load(ConfigurationSection sec) {
+        Template[] t = new Template[KEYS];
+        for (Key key : Key.values()) {
+            String text = key.defaultText;
+            boolean actionBar = false;
+            long cooldownMs = 0L;
+            ConfigurationSection c = sec.getConfigurationSection(key.path);
+            if (c != null) {
+                text = c.getString("text", text);
+                actionBar = c.getBoolean("action-bar", false);
+                cooldownMs = Math.max(0L, c.getLong("cooldown-ms", 0L));
+            } else {
+                text = sec.getString(key.path, text);
+            }
+            t[key.ordinal()] = compile(key, text, actionBar, TimeUnit.MILLISECONDS.toNanos(cooldownMs));
+        }
+        table = t;
+    }
+
+    /**
+     * Sends a message; {@code args} fill the key's placeholders in the order
+     * they are declared in {@link Key}.
+     */
+    void send(Player p, Key key, Object... args) {
+        Template t = table[key.ordinal()];
+        if (t.cooldownNanos() > 0) {
+            long now = System.nanoTime();
+            long[] last = lastSent.computeIfAbsent(p.getUniqueId(), u -> new long[KEYS]);
+            // two threads racing here at worst let one repeat through
+            long prev = last[key.ordinal()];
+            if (prev != 0L && now - prev < t.cooldownNanos())
+                return;
+            last[key.ordinal()] = now;
+        }
+        Component c = t.render(args);
+        if (t.actionBar())
+            p.sendActionBar(c);
+        else
+            p.sendMessage(c);
+    }
+
+    /** Drops the player's rate-limit state (on quit). */
+    void forget(UUID uuid) {
+        lastSent.remove(uuid);
+    }
+
+    // -------------------------
+    // Compiling
+    // -------------------------
+    private Template compile(Key key, String text, boolean actionBar, long cooldownNanos) {
+        List<Component> parts = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<Style> styles = new ArrayList<>();
+        StringBuilder buf = new StringBuilder();
+        Style style = Style.empty();
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            char ch = text.charAt(i);
+            if ((ch == '&' || ch == '§') && i + 1 < len) {
+                int hexEnd = i + 8;
+                Style next = text.charAt(i + 1) == '#' && hexEnd <= len ? hex(text.substring(i + 2, hexEnd))
+                        : legacy(style, text.charAt(i + 1));
+                if (next != null) {
+                    flush(buf, style, parts, slots, styles);
+                    style = next;
+                    i += text.charAt(i + 1) == '#' ? 7 : 1;
+                    continue;
+                }
+            } else if (ch == '{') {
+                int end = text.indexOf('}', i);
+                int slot = end < 0 ? -1 : Arrays.asList(key.placeholders).indexOf(text.substring(i + 1, end));
+                if (slot >= 0) {
+                    flush(buf, style, parts, slots, styles);
+                    parts.add(null);
+                    slots.add(slot);
+                    styles.add(style);
+                    i = end;
+                    continue;
+                }
+                if (end > i)
+                    logger.warning("messages.yml: " + key.path + " has no placeholder " + text.substring(i, end + 1)
+                            + " (has: " + String.join(", ", key.placeholders) + ")");
+            }
+            buf.append(ch);
+        }
+        flush(buf, style, parts, slots, styles);
+
+        if (!parts.contains(null)) {
+            Component fixed = parts.size() == 1 ? parts.get(0)
+                    : Component.textOfChildren(parts.toArray(new Component[0]));
+            return new Template(fixed, null, null, null, actionBar, cooldownNanos);
+        }
+        int[] slotArr = new int[parts.size()];
+        Style[] styleArr = new Style[parts.size()];
+        for (int i = 0; i < parts.size(); i++) {
+            slotArr[i] = slots.get(i);
+            styleArr[i] = styles.get(i);
+        }
+        return new Template(null, parts.toArray(new Component[0]), slotArr, styleArr, actionBar, cooldownNanos);
+    }
+
+    // fixed text so far becomes one component; slot/style are unused (-1/null) for fixed parts
+    private static void flush(StringBuilder buf, Style style, List<Component> parts, List<Integer> slots,
+            List<Style> styles) {
+        if (buf.isEmpty())
+            return;
+        parts.add(Component.text(buf.toString(), style));
+        slots.add(-1);
+        styles.add(null);
+        buf.setLength(0);
+    }
+
+    // &0-&f set a color and clear formatting, &k-&o add formatting, &r resets; null if not a code
+    private static Style legacy(Style style, char code) {
+        int color = Character.digit(code, 16);
+        if (color >= 0)
+            return Style.style(LEGACY_COLORS[color]);
+        return switch (Character.toLowerCase(code)) {
+            case 'k' -> style.decoration(TextDecoration.OBFUSCATED, true);
+            case 'l' -> style.decoration(TextDecoration.BOLD, true);
+            case 'm' -> style.decoration(TextDecoration.STRIKETHROUGH, true);
+            case 'n' -> style.decoration(TextDecoration.UNDERLINED, true);
+            case 'o' -> style.decoration(TextDecoration.ITALIC, true);
+            case 'r' -> Style.empty();
+            default -> null;
+        };
+    }
+
+    // &#rrggbb; null if not six hex digits
+    private static Style hex(String rgb) {
+        for (int i = 0; i < rgb.length(); i++) {
+            if (Character.digit(rgb.charAt(i), 16) < 0)
+                return null;
+        }
+        return Style.style(TextColor.color(Integer.parseInt(rgb, 16)));
+    }
+}
@@ -0,0 +1,171 @@
+package me.yusufkerem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead latency recording for event handlers, persistence and commands.
+ * <p>
+ * Each {@link Timer} keeps a log2 histogram of durations in {@link LongAdder}
+ * buckets, so recording is contention free from any thread. While recording
+ * is off, {@link Timer#start()} is a single volatile read and
+ * {@link Timer#stop(long)} returns immediately.
+ */
+final class Metrics {
+
+    // bucket i counts durations below 2^i ns; the last bucket (~34s) is open ended
+    private static final int BUCKETS = 36;
+
+    private volatile boolean enabled;
+    // registered during startup, iterated by /catsmp stats and the export task
+    private final List<Timer> timers = new CopyOnWriteArrayList<>();
+
+    Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** @param kind groups timers in the output: event, storage or command */
+    Timer timer(String kind, String name) {
+        Timer t = new Timer(kind, name);
+        timers.add(t);
+        return t;
+    }
+
+    Collection<Timer> timers() {
+        return timers;
+    }
+
+    void reset() {
+        for (Timer t : timers) {
+            t.reset();
+        }
+    }
+
+    final class Timer {
+        final String kind;
+        final String name;
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        private Timer(String kind, String name) {
+            this.kind = kind;
+            this.name = name;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /** @return a start stamp to pass to {@link #stop(long)}, or 0 while recording is off */
+        long start() {
+            return enabled ? System.nanoTime() : 0L;
+        }
+
+        void stop(long start) {
+            if (start != 0L)
+                record(System.nanoTime() - start);
+        }
+
+        /** For durations the caller already measured; dropped while recording is off. */
+        void record(long nanos) {
+            if (!enabled)
+                return;
+            int bucket = Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+            buckets[bucket].increment();
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        double avgNanos() {
+            long n = count.sum();
+            return n == 0 ? 0.0 : totalNanos.sum() / (double) n;
+        }
+
+        long maxNanos() {
+            return maxNanos.get();
+        }
+
+        /** Upper bound of the bucket holding the given quantile (0..1). */
+        long percentileNanos(double q) {
+            long n = count.sum();
+            if (n == 0)
+                return 0L;
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank)
+                    return i == BUCKETS - 1 ? maxNanos() : 1L << i;
+            }
+            return maxNanos();
+        }
+
+        private void reset() {
+            for (LongAdder b : buckets) {
+                b.reset();
+            }
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+    }
+
+    // -------------------------
+    // Output
+    // -------------------------
+    static String formatNanos(double nanos) {
+        if (nanos < 1_000)
+            return String.format(Locale.ROOT, "%.0fns", nanos);
+        if (nanos < 1_000_000)
+            return String.format(Locale.ROOT, "%.1fµs", nanos / 1_000);
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000);
+    }
+
+    /** Prometheus text exposition format, one histogram family for all timers. */
+    String toPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("# HELP catsmpmc_duration_seconds Time spent in CATSMPMC handlers, storage and commands.\n");
+        sb.append("# TYPE catsmpmc_duration_seconds histogram\n");
+        for (Timer t : timers) {
+            String labels = "kind=\"" + t.kind + "\",name=\"" + t.name + "\"";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                cumulative += t.buckets[i].sum();
+                sb.append("catsmpmc_duration_seconds_bucket{").append(labels).append(",le=\"")
+                        .append(String.format(Locale.ROOT, "%.9g", (1L << i) / 1e9)).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            long count = t.count();
+            sb.append("catsmpmc_duration_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count)
+                    .append('\n');
+            sb.append("catsmpmc_duration_seconds_sum{").append(labels).append("} ")
+                    .append(String.format(Locale.ROOT, "%.9f", t.totalNanos.sum() / 1e9)).append('\n');
+            sb.append("catsmpmc_duration_seconds_count{").append(labels).append("} ").append(count).append('\n');
+        }
+        return sb.toString();
+    }
+
+    void export(Path file) throws IOException {
+        AtomicFiles.write(file, toPrometheus());
+    }
+}
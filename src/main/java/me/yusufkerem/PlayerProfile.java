@@ -0,0 +1,299 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * In-memory state of one loaded player. Ability levels are a byte per
+ * {@link Ability} ordinal so the combat handlers can read them without boxing
+ * or map lookups.
+ * <p>
+ * On Folia different region threads can touch the same profile (a kill, an
+ * admin command, the write-behind flush), so every read-modify-write goes
+ * through a synchronized method here. Plain reads are lock-free.
+ * <p>
+ * Changes to Blood Points, levels and role are passed to a
+ * {@link ChangeListener} (the {@link BpJournal}, the {@link Leaderboard})
+ * inside the same lock, so listeners see them in the order they happened.
+ * <p>
+ * After each change the whole state is also published as an immutable
+ * {@link CatSmpApi.PlayerData}, which is what {@link CatSmpApi} readers get:
+ * one volatile read, no lock, and never half of an upgrade.
+ */
+final class PlayerProfile {
+
+    /** Sees every change to Blood Points ({@link BpJournal#FIELD_BP}), role and levels; must be quick. */
+    interface ChangeListener {
+        void changed(UUID uuid, int field, int oldValue, int newValue);
+
+        /** The published data changed; once per change, after the field-by-field calls for it. */
+        default void published(CatSmpApi.PlayerData before, CatSmpApi.PlayerData after) {
+        }
+
+        /** @return a listener calling each non-null one in turn, or null if there are none */
+        static ChangeListener of(ChangeListener... listeners) {
+            ChangeListener[] all = Arrays.stream(listeners).filter(Objects::nonNull).toArray(ChangeListener[]::new);
+            if (all.length <= 1)
+                return all.length == 0 ? null : all[0];
+            return new ChangeListener() {
+                @Override
+                public void changed(UUID uuid, int field, int oldValue, int newValue) {
+                    for (ChangeListener l : all) {
+                        l.changed(uuid, field, oldValue, newValue);
+                    }
+                }
+
+                @Override
+                public void published(CatSmpApi.PlayerData before, CatSmpApi.PlayerData after) {
+                    for (ChangeListener l : all) {
+                        l.published(before, after);
+                    }
+                }
+            };
+        }
+    }
+
+    enum UpgradeResult {
+        UPGRADED, NO_BLOOD_POINTS, MAX_LEVEL
+    }
+
+    /**
+     * What {@link #upgrade} did, read inside the same lock: the ability's
+     * level and the BP before and after. Nothing changes unless it is
+     * {@code UPGRADED}.
+     */
+    record Upgrade(UpgradeResult result, int level, int before, int after) {
+    }
+
+    final UUID uuid;
+    private volatile Role role;
+    private volatile int bloodPoints;
+    private volatile boolean zoomCombo;
+    private final byte[] levels = new byte[Ability.count()];
+    // derived from role + levels, read by the damage listener on every hit
+    private volatile CombatModifiers combat;
+    private final ChangeListener listener; // may be null
+    // the state as of the last finished change, for readers that must not lock
+    private volatile CatSmpApi.PlayerData data;
+    // > 0 while assign() applies several changes as one; guarded by this
+    private int batching;
+    // shared-store version this state is based on (SharedProfileStore), guarded by this
+    private long version;
+
+    PlayerProfile(UUID uuid, Role role) {
+        this(uuid, role, null);
+    }
+
+    /** A brand-new player. The starting values are reported too, so a crash before the first save keeps the role. */
+    PlayerProfile(UUID uuid, Role role, ChangeListener listener) {
+        this.uuid = uuid;
+        this.role = role;
+        this.bloodPoints = 3;
+        this.zoomCombo = true;
+        this.listener = listener;
+        rebuildCombat();
+        changed(BpJournal.FIELD_ROLE, -1, role.ordinal());
+        changed(BpJournal.FIELD_BP, -1, bloodPoints);
+        publish();
+    }
+
+    PlayerProfile(ProfileSnapshot snap) {
+        this(snap, null);
+    }
+
+    PlayerProfile(ProfileSnapshot snap, ChangeListener listener) {
+        this.uuid = snap.uuid();
+        this.role = snap.role();
+        this.bloodPoints = snap.bloodPoints();
+        this.zoomCombo = snap.zoomCombo();
+        this.listener = listener;
+        this.version = snap.version();
+        for (Ability a : Ability.values()) {
+            levels[a.ordinal()] = (byte) snap.level(a);
+        }
+        rebuildCombat();
+        publish();
+    }
+
+    private void changed(int field, int oldValue, int newValue) {
+        if (listener != null && oldValue != newValue)
+            listener.changed(uuid, field, oldValue, newValue);
+    }
+
+    // under the lock (or in a constructor), at the end of every change
+    private void publish() {
+        if (batching > 0)
+            return;
+        Map<Ability, Integer> lvls = new EnumMap<>(Ability.class);
+        for (Ability a : Ability.values()) {
+            lvls.put(a, (int) levels[a.ordinal()]);
+        }
+        CatSmpApi.PlayerData before = data;
+        CatSmpApi.PlayerData after = new CatSmpApi.PlayerData(uuid, role, bloodPoints, zoomCombo, lvls);
+        if (after.equals(before))
+            return;
+        data = after;
+        if (listener != null && before != null)
+            listener.published(before, after);
+    }
+
+    /** Everything about this player as of the last finished change. */
+    CatSmpApi.PlayerData data() {
+        return data;
+    }
+
+    Role role() {
+        return role;
+    }
+
+    synchronized void setRole(Role role) {
+        changed(BpJournal.FIELD_ROLE, this.role.ordinal(), role.ordinal());
+        this.role = role;
+        rebuildCombat();
+        publish();
+    }
+
+    CombatModifiers combat() {
+        return combat;
+    }
+
+    synchronized void rebuildCombat() {
+        combat = CombatModifiers.of(AbilityTable.get(), role, level(Ability.PROTECTIVE_FUR), level(Ability.RABIES));
+    }
+
+    int level(Ability a) {
+        return levels[a.ordinal()];
+    }
+
+    synchronized void setLevel(Ability a, int level) {
+        changed(BpJournal.field(a), levels[a.ordinal()], level);
+        levels[a.ordinal()] = (byte) level;
+        rebuildCombat();
+        publish();
+    }
+
+    // -------------------------
+    // Blood points
+    // -------------------------
+    int bloodPoints() {
+        return bloodPoints;
+    }
+
+    synchronized void setBloodPoints(int bp) {
+        int prev = bloodPoints;
+        bloodPoints = Math.max(0, Math.min(bp, CATSMPMC.MAX_BP));
+        changed(BpJournal.FIELD_BP, prev, bloodPoints);
+        publish();
+    }
+
+    /** Sets (clamped to 0..MAX_BP) and returns the value before the change. */
+    synchronized int getAndSetBloodPoints(int bp) {
+        int prev = bloodPoints;
+        setBloodPoints(bp);
+        return prev;
+    }
+
+    /** Adds delta (clamped to 0..MAX_BP) and returns the value before the change. */
+    synchronized int getAndAddBloodPoints(int delta) {
+        int prev = bloodPoints;
+        bloodPoints = Math.max(0, Math.min(prev + delta, CATSMPMC.MAX_BP));
+        changed(BpJournal.FIELD_BP, prev, bloodPoints);
+        publish();
+        return prev;
+    }
+
+    /** Takes {@code amount} BP if there are that many; returns what is left, or -1 and takes nothing. */
+    synchronized int spendBloodPoints(int amount) {
+        if (bloodPoints < amount)
+            return -1;
+        bloodPoints -= amount;
+        changed(BpJournal.FIELD_BP, bloodPoints + amount, bloodPoints);
+        publish();
+        return bloodPoints;
+    }
+
+    /** Spends the ability's cost in BP and raises it one level, or neither. */
+    synchronized Upgrade upgrade(Ability a) {
+        AbilityTable.Def def = AbilityTable.get().def(a);
+        int before = bloodPoints;
+        int lvl = levels[a.ordinal()];
+        if (before < def.cost())
+            return new Upgrade(UpgradeResult.NO_BLOOD_POINTS, lvl, before, before);
+        if (lvl >= def.maxLevel())
+            return new Upgrade(UpgradeResult.MAX_LEVEL, lvl, before, before);
+        levels[a.ordinal()] = (byte) (lvl + 1);
+        bloodPoints = before - def.cost();
+        changed(BpJournal.FIELD_BP, before, bloodPoints);
+        changed(BpJournal.field(a), lvl, lvl + 1);
+        rebuildCombat();
+        publish();
+        return new Upgrade(UpgradeResult.UPGRADED, lvl + 1, before, bloodPoints);
+    }
+
+    // -------------------------
+    // Zoom combo toggle
+    // -------------------------
+    boolean zoomCombo() {
+        return zoomCombo;
+    }
+
+    synchronized boolean toggleZoomCombo() {
+        zoomCombo = !zoomCombo;
+        publish();
+        return zoomCombo;
+    }
+
+    synchronized ProfileSnapshot snapshot() {
+        return new ProfileSnapshot(uuid, role, bloodPoints, zoomCombo, levels, version);
+    }
+
+    synchronized long version() {
+        return version;
+    }
+
+    /** The snapshot based on {@code basedOn} was saved as {@code version}; later saves build on that. */
+    synchronized void saved(long basedOn, long version) {
+        if (this.version == basedOn)
+            this.version = version;
+    }
+
+    /**
+     * Folds in a change another server saved: everything that changed from
+     * {@code base} to {@code newer} is applied on top of our unsaved changes,
+     * and the profile is now based on {@code newer}. Listeners see the
+     * resulting changes as usual; the profile is not marked dirty.
+     */
+    synchronized void rebase(ProfileSnapshot base, ProfileSnapshot newer) {
+        if (newer.version() <= version)
+            return;
+        assign(ProfileSnapshot.merge(base, snapshot(), newer));
+        version = newer.version();
+    }
+
+    /**
+     * Takes over everything but the version from {@code snap} (a rebase, or
+     * /catsmp restore); listeners see each resulting change as usual, and
+     * API readers see them all at once.
+     */
+    synchronized void assign(ProfileSnapshot snap) {
+        batching++;
+        try {
+            if (snap.role() != role)
+                setRole(snap.role());
+            zoomCombo = snap.zoomCombo();
+            for (Ability a : Ability.values()) {
+                if (snap.level(a) != level(a))
+                    setLevel(a, snap.level(a));
+            }
+            setBloodPoints(snap.bloodPoints());
+        } finally {
+            batching--;
+        }
+        publish();
+    }
+}
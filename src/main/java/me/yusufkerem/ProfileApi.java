@@ -0,0 +1,140 @@
+package me.yusufkerem;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link CatSmpApi} the plugin registers with the ServicesManager.
+ * <p>
+ * Reads go straight to the {@link CatSmpApi.PlayerData} each loaded
+ * {@link PlayerProfile} publishes: a concurrent map lookup (the online map,
+ * then the offline cache) and a volatile read, from any thread. Spending runs
+ * under the profile's own lock, like every other change to it.
+ * <p>
+ * As a {@link PlayerProfile.ChangeListener} this sees each published change
+ * inside the profile's lock, which is what keeps them in order; it only hands
+ * them to one background thread there, so a slow listener in another plugin
+ * never holds up a tick thread or a profile.
+ */
+final class ProfileApi implements CatSmpApi, PlayerProfile.ChangeListener {
+
+    /** What the API may see and do in the plugin. */
+    interface Host {
+        /** The loaded profile (online or in the offline cache), or null; never blocks. */
+        PlayerProfile loaded(UUID uuid);
+
+        /** Like {@link #loaded}, else read from storage; null if never saved. May block. */
+        PlayerProfile lookup(UUID uuid);
+
+        /** Blood Points were spent through {@link #trySpend}: audit and save it. */
+        void spent(UUID uuid, int before, int after);
+
+        void runAsync(Runnable task);
+    }
+
+    private final Logger logger;
+    private final Host host;
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // delivers changes one at a time, in the order the profiles published them
+    private final ExecutorService events = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "CATSMPMC-Api");
+        t.setDaemon(true);
+        return t;
+    });
+
+    ProfileApi(Logger logger, Host host) {
+        this.logger = logger;
+        this.host = host;
+    }
+
+    @Override
+    public PlayerData get(UUID uuid) {
+        PlayerProfile prof = host.loaded(uuid);
+        return prof == null ? null : prof.data();
+    }
+
+    @Override
+    public CompletableFuture<PlayerData> load(UUID uuid) {
+        PlayerData data = get(uuid);
+        if (data != null)
+            return CompletableFuture.completedFuture(data);
+        CompletableFuture<PlayerData> future = new CompletableFuture<>();
+        host.runAsync(() -> {
+            try {
+                PlayerProfile prof = host.lookup(uuid);
+                future.complete(prof == null ? null : prof.data());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public boolean trySpend(UUID uuid, int amount) {
+        if (amount <= 0)
+            throw new IllegalArgumentException("amount must be positive, not " + amount);
+        // never create a profile for a player who has none
+        PlayerProfile prof = host.lookup(uuid);
+        if (prof == null)
+            return false;
+        int left = prof.spendBloodPoints(amount);
+        if (left < 0)
+            return false;
+        host.spent(uuid, left + amount, left);
+        return true;
+    }
+
+    @Override
+    public void addListener(ChangeListener listener) {
+        listeners.add(Objects.requireNonNull(listener, "listener"));
+    }
+
+    @Override
+    public void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    // -------------------------
+    // PlayerProfile.ChangeListener (under the profile's lock)
+    // -------------------------
+
+    @Override
+    public void changed(UUID uuid, int field, int oldValue, int newValue) {
+        // the published data covers it
+    }
+
+    @Override
+    public void published(PlayerData before, PlayerData after) {
+        if (listeners.isEmpty())
+            return;
+        try {
+            events.execute(() -> deliver(before, after));
+        } catch (RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
+
+    private void deliver(PlayerData before, PlayerData after) {
+        for (ChangeListener l : listeners) {
+            try {
+                l.changed(before, after);
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "CatSmpApi listener " + l.getClass().getName() + " failed", t);
+            }
+        }
+    }
+
+    /** Stops delivering changes; ones still queued are dropped. */
+    void close() {
+        events.shutdownNow();
+    }
+}
@@ -0,0 +1,344 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Scheduled backups of every profile under backups/, for rolling one player
+ * (or everyone) back with /catsmp restore.
+ * <p>
+ * Every batch the write-behind writer saves is remembered here, newest
+ * snapshot per player. A backup is captured on the writer thread between two
+ * batches: a delta takes the profiles saved since the previous backup, a full
+ * backup reads every profile from the store. No save runs meanwhile, so either
+ * is the store at one point in time, made of immutable snapshots; tick threads
+ * never wait for it. Compressing and writing the file happens afterwards on
+ * the calling background thread.
+ * <p>
+ * Each backup is one gzip stream, {@code <id>.full.gz} or
+ * {@code <id>.delta.gz}, where the id is the UTC time it was taken
+ * (yyyyMMdd-HHmmss), so names sort oldest first:
+ *
+ * <pre>
+ * int    magic "CATB", int version
+ * byte   kind: 0 = full, 1 = delta
+ * long   taken at, epoch millis
+ * short  n, then n ability keys (UTF): the order of the level bytes below
+ * per profile: byte 1, uuid (2 longs), flags (2 = zoomcombo, 4 = aggressive), blood points, n levels
+ * byte   0, then the profile count (int)
+ * </pre>
+ *
+ * Reading a delta means reading the last full backup before it and every
+ * delta in between, in order. The first backup after a start is always full:
+ * saves made after the previous run's last backup are not known here.
+ */
+final class ProfileBackups {
+
+    private static final int MAGIC = 0x43415442; // "CATB"
+    private static final int VERSION = 1;
+    private static final String FULL = ".full.gz";
+    private static final String DELTA = ".delta.gz";
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.ROOT);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final int FLAG_ZOOMCOMBO = 2;
+    private static final int FLAG_AGGRESSIVE = 4;
+
+    /** A backup on disk. */
+    record Backup(String id, boolean full, Path file) {
+    }
+
+    private final Logger logger;
+    private final Path dir;
+    private final ProfileStore store;
+    private final ProfileWriter writer;
+    private final int fullEvery;
+    private final long retentionMillis;
+
+    // profiles saved since the last backup; only touched on the writer thread
+    private Map<UUID, ProfileSnapshot> changed = new HashMap<>();
+    // deltas written since the last full backup; -1 = the next one has to be full. Guarded by this
+    private int sinceFull = -1;
+
+    // stats
+    private volatile String lastId;
+    private volatile int lastProfiles;
+    private volatile long lastBytes;
+    private volatile long lastMillis;
+    private volatile long failures;
+
+    /**
+     * @param fullEvery every n-th backup is full, the others are deltas
+     */
+    ProfileBackups(Logger logger, Path dir, ProfileStore store, ProfileWriter writer, int fullEvery,
+            long retentionHours) {
+        this.logger = logger;
+        this.dir = dir;
+        this.store = store;
+        this.writer = writer;
+        this.fullEvery = Math.max(1, fullEvery);
+        this.retentionMillis = TimeUnit.HOURS.toMillis(Math.max(1L, retentionHours));
+        writer.onSaved(this::saved);
+    }
+
+    // writer thread
+    private void saved(List<ProfileSnapshot> batch) {
+        for (ProfileSnapshot snap : batch) {
+            changed.put(snap.uuid(), snap);
+        }
+    }
+
+    /**
+     * Takes a backup and writes it, then deletes backups past the retention
+     * period. Blocks until the file is written, so never on a tick thread.
+     *
+     * @param full a full backup even if a delta is due
+     */
+    synchronized Backup take(boolean full) throws IOException {
+        long start = System.nanoTime();
+        boolean isFull = full || sinceFull < 0 || sinceFull + 1 >= fullEvery;
+        Collection<ProfileSnapshot> profiles;
+        try {
+            profiles = writer.whenIdle(() -> capture(isFull)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the profile writer");
+        } catch (ExecutionException e) {
+            failures++;
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+
+        Backup backup;
+        try {
+            Files.createDirectories(dir);
+            backup = newBackup(isFull);
+            write(backup, profiles);
+            lastBytes = Files.size(backup.file());
+        } catch (IOException e) {
+            // a lost delta would leave a hole in every later one; start over with a full backup
+            sinceFull = -1;
+            failures++;
+            throw e;
+        }
+        sinceFull = isFull ? 0 : sinceFull + 1;
+        lastId = backup.id();
+        lastProfiles = profiles.size();
+        lastMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        try {
+            prune();
+        } catch (IOException e) {
+            logger.warning("Could not delete old backups: " + e.getMessage());
+        }
+        return backup;
+    }
+
+    // writer thread, between two batches: changed and the store agree
+    private Collection<ProfileSnapshot> capture(boolean full) throws IOException {
+        if (!full) {
+            Collection<ProfileSnapshot> delta = changed.values();
+            changed = new HashMap<>();
+            return delta;
+        }
+        List<ProfileSnapshot> all = new ArrayList<>();
+        store.scanProfiles(all::add);
+        changed.clear();
+        return all;
+    }
+
+    private Backup newBackup(boolean full) {
+        String base = LocalDateTime.now(ZoneOffset.UTC).format(ID_FORMAT);
+        String id = base;
+        for (int n = 2; Files.exists(dir.resolve(id + FULL)) || Files.exists(dir.resolve(id + DELTA)); n++) {
+            id = base + "-" + n;
+        }
+        return new Backup(id, full, dir.resolve(id + (full ? FULL : DELTA)));
+    }
+
+    private static void write(Backup backup, Collection<ProfileSnapshot> profiles) throws IOException {
+        AtomicFiles.write(backup.file(), out -> {
+            GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip, BUFFER_SIZE));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeByte(backup.full() ? 0 : 1);
+            data.writeLong(System.currentTimeMillis());
+            data.writeShort(Ability.count());
+            for (Ability a : Ability.values()) {
+                data.writeUTF(a.key);
+            }
+            for (ProfileSnapshot snap : profiles) {
+                data.writeByte(1);
+                data.writeLong(snap.uuid().getMostSignificantBits());
+                data.writeLong(snap.uuid().getLeastSignificantBits());
+                int flags = 0;
+                if (snap.zoomCombo())
+                    flags |= FLAG_ZOOMCOMBO;
+                if (snap.role() == Role.AGGRESSIVE)
+                    flags |= FLAG_AGGRESSIVE;
+                data.writeByte(flags);
+                data.writeByte(snap.bloodPoints());
+                for (Ability a : Ability.values()) {
+                    data.writeByte(snap.level(a));
+                }
+            }
+            data.writeByte(0);
+            data.writeInt(profiles.size());
+            data.flush();
+            gzip.finish();
+        });
+    }
+
+    // past the retention period, except the full backup (and deltas) that the oldest kept delta is read from
+    private void prune() throws IOException {
+        List<Backup> all = list();
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        int keep = 0;
+        while (keep < all.size() && Files.getLastModifiedTime(all.get(keep).file()).toMillis() < cutoff) {
+            keep++;
+        }
+        if (keep == all.size())
+            return;
+        while (keep > 0 && !all.get(keep).full()) {
+            keep--;
+        }
+        for (int i = 0; i < keep; i++) {
+            Files.deleteIfExists(all.get(i).file());
+        }
+    }
+
+    // -------------------------
+    // Reading (/catsmp restore)
+    // -------------------------
+
+    /** Backups on disk, oldest first. */
+    List<Backup> list() throws IOException {
+        if (!Files.isDirectory(dir))
+            return List.of();
+        List<Backup> out = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(FULL))
+                    out.add(new Backup(name.substring(0, name.length() - FULL.length()), true, file));
+                else if (name.endsWith(DELTA))
+                    out.add(new Backup(name.substring(0, name.length() - DELTA.length()), false, file));
+            }
+        }
+        out.sort(Comparator.comparing(Backup::id));
+        return out;
+    }
+
+    /**
+     * Profiles as they were in backup {@code id}. With {@code only} set, just
+     * that player's, so nobody else is read into memory; empty if the backup
+     * doesn't have them.
+     */
+    Map<UUID, ProfileSnapshot> read(String id, UUID only) throws IOException {
+        List<Backup> all = list();
+        int end = 0;
+        while (end < all.size() && !all.get(end).id().equals(id)) {
+            end++;
+        }
+        if (end == all.size())
+            throw new IOException("No backup named " + id);
+        int start = end;
+        while (start >= 0 && !all.get(start).full()) {
+            start--;
+        }
+        if (start < 0)
+            throw new IOException("The full backup " + id + " builds on is gone");
+        Map<UUID, ProfileSnapshot> out = new HashMap<>();
+        for (int i = start; i <= end; i++) {
+            read(all.get(i).file(), only, out);
+        }
+        return out;
+    }
+
+    // later files overwrite what earlier ones put into the map
+    private static void read(Path file, UUID only, Map<UUID, ProfileSnapshot> into) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException(file.getFileName() + " is not a CATSMPMC backup (or an unsupported version)");
+            in.readByte(); // kind, also in the name
+            in.readLong(); // taken at
+            // abilities added since are 0, removed ones are skipped
+            Ability[] layout = new Ability[in.readUnsignedShort()];
+            for (int i = 0; i < layout.length; i++) {
+                layout[i] = Ability.byKey(in.readUTF());
+            }
+            int count = 0;
+            while (in.readByte() != 0) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                int flags = in.readByte();
+                int bp = in.readByte();
+                byte[] levels = new byte[Ability.count()];
+                for (Ability a : layout) {
+                    byte lvl = in.readByte();
+                    if (a != null)
+                        levels[a.ordinal()] = lvl;
+                }
+                count++;
+                if (only == null || only.equals(uuid))
+                    into.put(uuid, new ProfileSnapshot(uuid,
+                            (flags & FLAG_AGGRESSIVE) != 0 ? Role.AGGRESSIVE : Role.PASSIVE, bp,
+                            (flags & FLAG_ZOOMCOMBO) != 0, levels));
+            }
+            if (in.readInt() != count)
+                throw new IOException(file.getFileName() + " has a wrong profile count");
+        } catch (EOFException e) {
+            throw new IOException(file.getFileName() + " is truncated", e);
+        }
+    }
+
+    // -------------------------
+    // Stats (/catsmp storage)
+    // -------------------------
+
+    /** Id of the last backup taken since startup, or null. */
+    String lastId() {
+        return lastId;
+    }
+
+    int lastProfiles() {
+        return lastProfiles;
+    }
+
+    long lastBytes() {
+        return lastBytes;
+    }
+
+    long lastMillis() {
+        return lastMillis;
+    }
+
+    long failureCount() {
+        return failures;
+    }
+}
@@ -0,0 +1,116 @@
+package me.yusufkerem;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Size-bounded LRU of offline players' profiles: players who just left, and
+ * offline players an admin command or API call asked about. Online players
+ * are never in here; their profiles are pinned in the plugin's profile map.
+ * <p>
+ * A profile is about 200 bytes, so the default 1000 entries stay well under
+ * a megabyte. The eviction callback runs under the cache lock, while the
+ * evicted profile is still visible to {@link #peek(UUID)}, so unsaved
+ * changes can be snapshotted on the way out.
+ * <p>
+ * The LRU order needs the lock; {@link #peek(UUID)} doesn't. It reads a
+ * concurrent mirror of the entries, updated inside the lock, so API readers
+ * on any thread never wait for a cache miss being filled.
+ */
+final class ProfileCache {
+
+    private final int capacity;
+    private final Consumer<UUID> onEvict;
+    // insertion order, with get() re-inserting: head = least recently used
+    private final LinkedHashMap<UUID, PlayerProfile> map = new LinkedHashMap<>();
+    // same entries, for peek(); only written under the lock
+    private final ConcurrentHashMap<UUID, PlayerProfile> index = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ProfileCache(int capacity, Consumer<UUID> onEvict) {
+        this.capacity = Math.max(0, capacity);
+        this.onEvict = onEvict;
+    }
+
+    /** Counted lookup that marks the entry as recently used. */
+    synchronized PlayerProfile get(UUID uuid) {
+        PlayerProfile prof = map.remove(uuid);
+        if (prof == null) {
+            misses.increment();
+            return null;
+        }
+        map.put(uuid, prof);
+        hits.increment();
+        return prof;
+    }
+
+    /** Lookup without touching stats or recency (write-behind snapshots, the API); never blocks. */
+    PlayerProfile peek(UUID uuid) {
+        return index.get(uuid);
+    }
+
+    /** @return the profile already cached for this player, or {@code prof} after adding it */
+    synchronized PlayerProfile putIfAbsent(UUID uuid, PlayerProfile prof) {
+        PlayerProfile existing = map.get(uuid);
+        if (existing != null)
+            return existing;
+        map.put(uuid, prof);
+        index.put(uuid, prof);
+        evictOverflow();
+        return prof;
+    }
+
+    synchronized void put(UUID uuid, PlayerProfile prof) {
+        map.remove(uuid);
+        map.put(uuid, prof);
+        index.put(uuid, prof);
+        evictOverflow();
+    }
+
+    synchronized PlayerProfile remove(UUID uuid) {
+        index.remove(uuid);
+        return map.remove(uuid);
+    }
+
+    private void evictOverflow() {
+        for (Iterator<Map.Entry<UUID, PlayerProfile>> it = map.entrySet().iterator(); map.size() > capacity
+                && it.hasNext();) {
+            UUID uuid = it.next().getKey();
+            onEvict.accept(uuid);
+            it.remove();
+            index.remove(uuid);
+            evictions.increment();
+        }
+    }
+
+    // -------------------------
+    // Stats (/catsmp storage)
+    // -------------------------
+    synchronized int size() {
+        return map.size();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+}
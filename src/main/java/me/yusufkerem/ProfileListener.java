@@ -0,0 +1,357 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import me.yusufkerem.Messages.Key;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.util.Vector;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Where profiles meet the game: loading one at login and pinning it while the
+ * player is online, handing it to the offline cache on quit, Blood Points for
+ * kills, the upgrade menu and the Zoom dash.
+ * <p>
+ * Like {@link CombatListener} and {@link ComboEngine} it only needs the
+ * components it is given, not the plugin, so the load generator in
+ * benchmarks/ drives these same handlers with fake players.
+ */
+final class ProfileListener implements Listener {
+
+    private final Logger logger;
+    private final ProfileStore store;
+    private final ProfileWriter writer;
+    // online players' profiles (pinned); everyone else is in the offline cache or the store
+    private final Map<UUID, PlayerProfile> profiles;
+    private final ProfileCache offline;
+    private final PlayerProfile.ChangeListener changes;
+    private final Cooldowns cooldowns;
+    private final ComboEngine combos;
+    private final EffectReconciler effects; // null: no potion effects or attributes (no server registry)
+    private final Messages messages;
+    private final AuditLog audit; // may be null
+    // profiles read during async pre-login, picked up by onPlayerJoin
+    private final Map<UUID, ProfileSnapshot> preloaded = new ConcurrentHashMap<>();
+
+    private final Metrics.Timer preLoginTimer;
+    private final Metrics.Timer joinTimer;
+    private final Metrics.Timer quitTimer;
+    private final Metrics.Timer deathTimer;
+    private final Metrics.Timer inventoryClickTimer;
+    private final Metrics.Timer savePlayerTimer;
+
+    ProfileListener(Logger logger, ProfileStore store, ProfileWriter writer, Map<UUID, PlayerProfile> profiles,
+            ProfileCache offline, PlayerProfile.ChangeListener changes, Cooldowns cooldowns, ComboEngine combos,
+            EffectReconciler effects, Messages messages, AuditLog audit, Metrics metrics) {
+        this.logger = logger;
+        this.store = store;
+        this.writer = writer;
+        this.profiles = profiles;
+        this.offline = offline;
+        this.changes = changes;
+        this.cooldowns = cooldowns;
+        this.combos = combos;
+        this.effects = effects;
+        this.messages = messages;
+        this.audit = audit;
+        this.preLoginTimer = metrics.timer("event", "onPreLogin");
+        this.joinTimer = metrics.timer("event", "onPlayerJoin");
+        this.quitTimer = metrics.timer("event", "onPlayerQuit");
+        this.deathTimer = metrics.timer("event", "onPlayerDeath");
+        this.inventoryClickTimer = metrics.timer("event", "onInventoryClick");
+        this.savePlayerTimer = metrics.timer("storage", "savePlayer");
+    }
+
+    // -------------------------
+    // Player join / quit
+    // -------------------------
+    // read the profile off the main thread while the player is still logging in
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        long t = preLoginTimer.start();
+        try {
+            UUID uuid = e.getUniqueId();
+            // left by an earlier login that never got to join: stale by now, whatever happens next
+            preloaded.remove(uuid);
+            // a write still in flight would make the file stale; onPlayerJoin reads it from the writer instead.
+            // A cached profile is used as-is on join, no need to read anything.
+            if (e.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED || writer.isWriting(uuid)
+                    || offline.peek(uuid) != null)
+                return;
+            try {
+                ProfileSnapshot snap = store.load(e.getUniqueId());
+                if (snap != null)
+                    preloaded.put(e.getUniqueId(), snap);
+            } catch (IOException | IllegalArgumentException ex) {
+                logger.warning("Could not preload profile " + e.getUniqueId() + ": " + ex.getMessage());
+            }
+        } finally {
+            preLoginTimer.stop(t);
+        }
+    }
+
+    // denied after pre-login (whitelist, ban, full server): they won't join, so drop what was read for them
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent e) {
+        if (e.getResult() != PlayerLoginEvent.Result.ALLOWED)
+            preloaded.remove(e.getPlayer().getUniqueId());
+    }
+
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent e) {
+        long t = joinTimer.start();
+        try {
+            Player p = e.getPlayer();
+            UUID uuid = p.getUniqueId();
+
+            // if not in saved data -> new player; random role and starting BP 3
+            if (!loadProfile(uuid))
+                profile(uuid);
+
+            // apply abilities to the player
+            applyAbilities(p);
+
+            // ensure saved data exists
+            savePlayer(uuid);
+        } finally {
+            joinTimer.stop(t);
+        }
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent e) {
+        long t = quitTimer.start();
+        try {
+            unloadProfile(e.getPlayer().getUniqueId());
+        } finally {
+            quitTimer.stop(t);
+        }
+    }
+
+    /** True while a profile read at pre-login waits for the player to join. */
+    boolean isPreloaded(UUID uuid) {
+        return preloaded.containsKey(uuid);
+    }
+
+    // newest known state: unsaved write-behind data first, then the store
+    ProfileSnapshot readProfile(UUID uuid) {
+        ProfileSnapshot snap = writer.unsaved(uuid);
+        if (snap != null)
+            return snap;
+        try {
+            return store.load(uuid);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warning("Could not load profile " + uuid + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Pins the player's saved profile; false if they have none yet. */
+    boolean loadProfile(UUID uuid) {
+        ProfileSnapshot pre = preloaded.remove(uuid);
+        // still cached from their last visit (or an admin lookup): pin that same instance
+        PlayerProfile cached = offline.remove(uuid);
+        if (cached != null) {
+            profiles.put(uuid, cached);
+            return true;
+        }
+        ProfileSnapshot snap = writer.unsaved(uuid);
+        if (snap == null)
+            snap = pre != null ? pre : readProfile(uuid);
+        if (snap == null)
+            return false;
+        profiles.put(uuid, new PlayerProfile(snap, changes));
+        return true;
+    }
+
+    // moves the profile to the offline cache; into the cache first so a flush always finds it
+    private void unloadProfile(UUID uuid) {
+        PlayerProfile prof = profiles.get(uuid);
+        if (prof != null)
+            offline.put(uuid, prof);
+        profiles.remove(uuid);
+        preloaded.remove(uuid);
+        cooldowns.clear(uuid);
+        combos.remove(uuid);
+        if (effects != null)
+            effects.forget(uuid);
+        messages.forget(uuid);
+    }
+
+    /** Loaded profile, or a fresh one (random role, 3 BP) if this player has none yet. */
+    PlayerProfile profile(UUID uuid) {
+        return profiles.computeIfAbsent(uuid,
+                u -> new PlayerProfile(u, ThreadLocalRandom.current().nextBoolean() ? Role.PASSIVE : Role.AGGRESSIVE,
+                        changes));
+    }
+
+    /** Profile changed -> queue it for the next write-behind flush. */
+    void savePlayer(UUID uuid) {
+        long t = savePlayerTimer.start();
+        try {
+            writer.markDirty(uuid);
+        } finally {
+            savePlayerTimer.stop(t);
+        }
+    }
+
+    private void audit(UUID player, AuditLog.Reason reason, UUID actor, int before, int after, Ability ability) {
+        if (audit != null)
+            audit.record(player, reason, actor, before, after, ability);
+    }
+
+    // -------------------------
+    // Death handling for BP gain/loss
+    // -------------------------
+    @EventHandler
+    public void onPlayerDeath(PlayerDeathEvent e) {
+        long t = deathTimer.start();
+        try {
+            Player victim = e.getEntity();
+            Player killer = victim.getKiller();
+            if (killer != null && killer.getUniqueId() != null) {
+                UUID vUuid = victim.getUniqueId();
+                UUID kUuid = killer.getUniqueId();
+                PlayerProfile vProf = profile(vUuid);
+                PlayerProfile kProf = profile(kUuid);
+
+                // victim loses 1 (down to 0); each step is atomic on its own profile,
+                // so simultaneous kills can't lose or duplicate a point
+                int vBP = vProf.getAndAddBloodPoints(-1);
+                if (vBP > 0) {
+                    audit(vUuid, AuditLog.Reason.DEATH, kUuid, vBP, vBP - 1, null);
+                    int kPrev = kProf.getAndAddBloodPoints(1);
+                    int kBP = Math.min(kPrev + 1, CATSMPMC.MAX_BP);
+                    audit(kUuid, AuditLog.Reason.KILL, vUuid, kPrev, kBP, null);
+                    messages.send(killer, Key.KILL_REWARD, kBP, CATSMPMC.MAX_BP);
+                }
+
+                // save both
+                savePlayer(kUuid);
+                savePlayer(vUuid);
+            }
+        } finally {
+            deathTimer.stop(t);
+        }
+    }
+
+    // -------------------------
+    // Upgrade GUI
+    // -------------------------
+    void openUpgradeMenu(Player p) {
+        p.openInventory(new UpgradeMenu(profile(p.getUniqueId())).getInventory());
+    }
+
+    @EventHandler
+    public void onInventoryClick(InventoryClickEvent event) {
+        // every click on the server lands here; anything that isn't our menu leaves on this check
+        if (!(event.getInventory().getHolder(false) instanceof UpgradeMenu menu))
+            return;
+        long t = inventoryClickTimer.start();
+        try {
+            event.setCancelled(true); // Prevent taking items
+            if (!(event.getWhoClicked() instanceof Player player))
+                return;
+
+            Ability ability = menu.abilityAt(event.getRawSlot());
+            if (ability == null)
+                return;
+            UUID uuid = player.getUniqueId();
+            PlayerProfile prof = profile(uuid);
+            // role changed while the menu was open
+            if (ability.role() != prof.role()) {
+                player.closeInventory();
+                return;
+            }
+
+            // spend the cost and raise the level in one step; the numbers are from inside it, so
+            // another change to this profile (a kill on another region thread) can't skew the audit
+            PlayerProfile.Upgrade upgrade = prof.upgrade(ability);
+            switch (upgrade.result()) {
+                case NO_BLOOD_POINTS -> messages.send(player, Key.UPGRADE_NO_BLOOD_POINTS);
+                case MAX_LEVEL -> messages.send(player, Key.UPGRADE_MAX_LEVEL);
+                case UPGRADED -> {
+                    int level = upgrade.level();
+                    audit(uuid, AuditLog.Reason.UPGRADE, null, upgrade.before(), upgrade.after(), ability);
+                    messages.send(player, Key.UPGRADED, UpgradeMenu.label(ability), level);
+                    messages.send(player, Key.UPGRADED_BLOOD_POINTS, upgrade.after(), CATSMPMC.MAX_BP);
+
+                    // Apply new abilities
+                    applyAbilities(player);
+
+                    // Save player data
+                    savePlayer(uuid);
+
+                    // only the clicked item changed
+                    menu.refresh(ability, level);
+                }
+            }
+        } finally {
+            inventoryClickTimer.stop(t);
+        }
+    }
+
+    // -------------------------
+    // Apply abilities to player (auto apply on join and after upgrades)
+    // -------------------------
+    /** Must run on the player's thread. */
+    void applyAbilities(Player p) {
+        PlayerProfile prof = profile(p.getUniqueId());
+        prof.rebuildCombat();
+
+        // only what changed since the last call reaches the client
+        if (effects != null)
+            effects.apply(p, prof);
+        combos.refresh(p, prof);
+    }
+
+    // -------------------------
+    // Ability combos and the Zoom dash (/zoom)
+    // -------------------------
+
+    /** A configured key combo completed; see ComboEngine. */
+    void triggerCombo(Player p, Ability ability) {
+        if (ability == Ability.ZOOM)
+            triggerDash(p);
+    }
+
+    void triggerDash(Player p) {
+        PlayerProfile prof = profile(p.getUniqueId());
+        AbilityTable.Def zoom = AbilityTable.get().def(Ability.ZOOM);
+        int zoomLvl = prof.level(Ability.ZOOM);
+        if (zoomLvl <= 0) {
+            messages.send(p, Key.ZOOM_NOT_UPGRADED);
+            return;
+        }
+
+        if (!cooldowns.tryStart(p.getUniqueId(), Ability.ZOOM, zoom.cooldownMs(), TimeUnit.MILLISECONDS)) {
+            long left = (cooldowns.remainingMillis(p.getUniqueId(), Ability.ZOOM) + 999) / 1000;
+            messages.send(p, Key.ZOOM_COOLDOWN, left);
+            return;
+        }
+
+        // blocks per level from abilities.yml; levels past the max dash as far as the max
+        double dist = zoom.effect(zoomLvl);
+        Vector dir = p.getLocation().getDirection().clone().normalize().multiply(dist);
+        // small upward push so player doesn't immediately hit ground if they dash on
+        // ground
+        dir.setY(Math.max(0.2, dir.getY()));
+        p.setVelocity(dir);
+        messages.send(p, Key.ZOOM);
+    }
+}
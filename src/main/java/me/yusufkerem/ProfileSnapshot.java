@@ -0,0 +1,104 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+
+import java.util.UUID;
+
+/**
+ * Immutable copy of a player's saved state, taken under the profile's lock so
+ * it can be written out by the background writer without touching live
+ * profiles.
+ * <p>
+ * {@link #version()} is the shared-store version the state is based on (see
+ * {@link SharedProfileStore}); it is 0 with every other store.
+ */
+final class ProfileSnapshot {
+
+    private final UUID uuid;
+    private final Role role;
+    private final int bloodPoints;
+    private final boolean zoomCombo;
+    private final byte[] levels;
+    private final long version;
+
+    ProfileSnapshot(UUID uuid, Role role, int bloodPoints, boolean zoomCombo, byte[] levels) {
+        this(uuid, role, bloodPoints, zoomCombo, levels, 0L);
+    }
+
+    ProfileSnapshot(UUID uuid, Role role, int bloodPoints, boolean zoomCombo, byte[] levels, long version) {
+        this(uuid, role, bloodPoints, zoomCombo, version, levels.clone());
+    }
+
+    // levels is not copied: nobody else has it
+    private ProfileSnapshot(UUID uuid, Role role, int bloodPoints, boolean zoomCombo, long version, byte[] levels) {
+        this.uuid = uuid;
+        this.role = role;
+        this.bloodPoints = bloodPoints;
+        this.zoomCombo = zoomCombo;
+        this.levels = levels;
+        this.version = version;
+    }
+
+    /** For stores that decode into a new array anyway: {@code levels} is kept, not copied. */
+    static ProfileSnapshot owning(UUID uuid, Role role, int bloodPoints, boolean zoomCombo, byte[] levels) {
+        return new ProfileSnapshot(uuid, role, bloodPoints, zoomCombo, 0L, levels);
+    }
+
+    /** What a brand-new {@link PlayerProfile} starts with. */
+    static ProfileSnapshot fresh(UUID uuid, Role role) {
+        return new ProfileSnapshot(uuid, role, 3, true, 0L, new byte[Ability.count()]);
+    }
+
+    UUID uuid() {
+        return uuid;
+    }
+
+    Role role() {
+        return role;
+    }
+
+    int bloodPoints() {
+        return bloodPoints;
+    }
+
+    boolean zoomCombo() {
+        return zoomCombo;
+    }
+
+    int level(Ability a) {
+        return levels[a.ordinal()];
+    }
+
+    long version() {
+        return version;
+    }
+
+    ProfileSnapshot withVersion(long version) {
+        return new ProfileSnapshot(uuid, role, bloodPoints, zoomCombo, version, levels);
+    }
+
+    /**
+     * Three-way merge for two servers that changed the same profile: what
+     * {@code ours} changed since {@code base} is applied on top of
+     * {@code theirs}. Blood Points and levels add up (clamped), role and the
+     * combo toggle take our value only if we changed it. Without a base (both
+     * created the profile) theirs wins.
+     */
+    static ProfileSnapshot merge(ProfileSnapshot base, ProfileSnapshot ours, ProfileSnapshot theirs) {
+        if (base == null)
+            return theirs;
+        int bp = Math.max(0, Math.min(theirs.bloodPoints + ours.bloodPoints - base.bloodPoints, CATSMPMC.MAX_BP));
+        byte[] levels = new byte[Ability.count()];
+        for (Ability a : Ability.values()) {
+            int lvl = theirs.level(a) + ours.level(a) - base.level(a);
+            levels[a.ordinal()] = (byte) Math.max(0, Math.min(lvl, Ability.LEVEL_LIMIT));
+        }
+        return new ProfileSnapshot(theirs.uuid, ours.role != base.role ? ours.role : theirs.role, bp,
+                ours.zoomCombo != base.zoomCombo ? ours.zoomCombo : theirs.zoomCombo, levels, theirs.version);
+    }
+
+    @Override
+    public String toString() {
+        return "ProfileSnapshot[" + uuid + ", " + role + ", bp=" + bloodPoints + "]";
+    }
+}
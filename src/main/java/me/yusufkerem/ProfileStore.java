@@ -0,0 +1,61 @@
+package me.yusufkerem;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Backend that persists player profiles. Only online players (and the odd
+ * profile an admin command asks for) are kept in memory; everything else lives
+ * here and is loaded on demand.
+ * <p>
+ * {@link #load(UUID)} may be called from any thread (async pre-login, admin
+ * commands); {@link #save(List)} is only called from the write-behind writer
+ * thread.
+ */
+interface ProfileStore {
+
+    /** @return the stored profile, or null if this player has never been saved */
+    ProfileSnapshot load(UUID uuid) throws IOException;
+
+    void save(List<ProfileSnapshot> batch) throws IOException;
+
+    /**
+     * Like {@link #save}, but for data that is meant to win over what is
+     * stored (a legacy import, journal replay): a snapshot not based on any
+     * stored version is written as is instead of merged. Only stores that
+     * merge concurrent changes tell the two apart.
+     */
+    default void replace(List<ProfileSnapshot> batch) throws IOException {
+        save(batch);
+    }
+
+    /**
+     * Passes the UUID and Blood Points of every stored profile to
+     * {@code action}, possibly from several threads at once. Reads the whole
+     * store, so only at startup and never on a tick thread (leaderboard).
+     */
+    void scanBloodPoints(ObjIntConsumer<UUID> action) throws IOException;
+
+    /**
+     * Passes every stored profile to {@code action}, one at a time on the
+     * calling thread. Reads the whole store, for full backups only; the
+     * default finds the players with {@link #scanBloodPoints} and loads each.
+     */
+    default void scanProfiles(Consumer<ProfileSnapshot> action) throws IOException {
+        Set<UUID> uuids = ConcurrentHashMap.newKeySet();
+        scanBloodPoints((uuid, bp) -> uuids.add(uuid));
+        for (UUID uuid : uuids) {
+            ProfileSnapshot snap = load(uuid);
+            if (snap != null)
+                action.accept(snap);
+        }
+    }
+
+    default void close() {
+    }
+}
@@ -0,0 +1,268 @@
+package me.yusufkerem;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind persistence in front of a {@link ProfileStore}.
+ * <p>
+ * Mutations only mark a profile dirty. {@link #flush()} runs periodically,
+ * snapshots every dirty profile and hands the batch to a single background
+ * thread which saves it to the store. Many changes to the same player between
+ * two flushes therefore cost one write. A batch the store fails to save is
+ * staged again and retried on the next flush, unless a newer snapshot of the
+ * same player is already on its way.
+ * <p>
+ * Every method may be called from any thread (Folia region threads, the async
+ * flush timer).
+ */
+final class ProfileWriter {
+
+    private final Logger logger;
+    private final ProfileStore store;
+    private final Function<UUID, ProfileSnapshot> snapshotter;
+    private final Metrics.Timer flushTimer;
+
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    // snapshots of profiles that were unloaded before their next flush
+    private final Map<UUID, ProfileSnapshot> staged = new ConcurrentHashMap<>();
+    // queued or being written; lets a rejoining player see data not yet on disk
+    private final Map<UUID, ProfileSnapshot> pending = new ConcurrentHashMap<>();
+    // sees every batch the store accepted (ProfileBackups); may be null
+    private volatile Consumer<List<ProfileSnapshot>> savedListener;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "CATSMPMC-ProfileWriter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // stats
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushNanosTotal = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+    private volatile int lastBatchSize;
+
+    ProfileWriter(Logger logger, ProfileStore store, Function<UUID, ProfileSnapshot> snapshotter,
+            Metrics.Timer flushTimer) {
+        this.logger = logger;
+        this.store = store;
+        this.snapshotter = snapshotter;
+        this.flushTimer = flushTimer;
+    }
+
+    /** Marks a profile as changed; it is written on the next flush. */
+    void markDirty(UUID uuid) {
+        dirty.add(uuid);
+    }
+
+    /**
+     * Called right before a profile is dropped from memory: if it has unsaved
+     * changes they are snapshotted now so the next flush still writes them.
+     * Holds the flush lock, so a flush that just took the player off the dirty
+     * set snapshots them before they can be dropped.
+     */
+    synchronized void release(UUID uuid) {
+        if (dirty.remove(uuid)) {
+            ProfileSnapshot snap = snapshotter.apply(uuid);
+            if (snap != null)
+                staged.put(uuid, snap);
+        }
+    }
+
+    /**
+     * Drops the player's unsaved changes, for when their stored profile is
+     * replaced from outside (an import). Call it on the writer thread
+     * ({@link #whenIdle}): by then nothing queued earlier, not even a failed
+     * batch staged for a retry, can still write the old data.
+     */
+    void forget(UUID uuid) {
+        dirty.remove(uuid);
+        staged.remove(uuid);
+    }
+
+    /** Latest state not yet persisted by the store, or null if the store is up to date. */
+    ProfileSnapshot unsaved(UUID uuid) {
+        ProfileSnapshot snap = staged.get(uuid);
+        return snap != null ? snap : pending.get(uuid);
+    }
+
+    /** {@code listener} is called on the writer thread with every batch the store accepted. */
+    void onSaved(Consumer<List<ProfileSnapshot>> listener) {
+        savedListener = listener;
+    }
+
+    /** True while a snapshot of this profile is queued or being written. */
+    boolean isWriting(UUID uuid) {
+        return pending.containsKey(uuid);
+    }
+
+    /** Snapshots all dirty profiles and queues them for the writer thread. */
+    synchronized void flush() {
+        if (dirty.isEmpty() && staged.isEmpty())
+            return;
+        List<ProfileSnapshot> batch = new ArrayList<>(dirty.size() + staged.size());
+        // remove entry by entry: anything marked while we iterate stays for the next flush
+        for (Iterator<ProfileSnapshot> it = staged.values().iterator(); it.hasNext();) {
+            batch.add(it.next());
+            it.remove();
+        }
+        for (Iterator<UUID> it = dirty.iterator(); it.hasNext();) {
+            UUID uuid = it.next();
+            it.remove();
+            ProfileSnapshot snap = snapshotter.apply(uuid);
+            if (snap != null)
+                batch.add(snap);
+        }
+        if (batch.isEmpty())
+            return;
+
+        for (ProfileSnapshot snap : batch) {
+            pending.put(snap.uuid(), snap);
+        }
+        inFlight.addAndGet(batch.size());
+        executor.execute(() -> write(batch));
+    }
+
+    /**
+     * Flushes and blocks until everything queued so far has been written (or
+     * the timeout passes). Must not be called from a tick thread.
+     *
+     * @return false on timeout
+     */
+    boolean flushAndWait(long timeoutSeconds) {
+        flush();
+        // single writer thread: once this runs, every earlier batch is done
+        Future<?> barrier = executor.submit(() -> {
+        });
+        try {
+            barrier.get(timeoutSeconds, TimeUnit.SECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Flushes, then runs {@code task} on the writer thread once that batch and
+     * everything before it is saved. No save runs at the same time, so the
+     * task sees the store at one point in time; changes made meanwhile wait in
+     * the dirty set.
+     */
+    <T> Future<T> whenIdle(Callable<T> task) {
+        flush();
+        return executor.submit(task);
+    }
+
+    /**
+     * Final flush on disable: queues whatever is dirty and waits up to the given
+     * timeout for the writer to finish.
+     */
+    void shutdown(long timeoutSeconds) {
+        flush();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                logger.severe("Timed out after " + timeoutSeconds + "s waiting for player data to be written ("
+                        + inFlight.get() + " profiles pending).");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+        store.close();
+    }
+
+    // -------------------------
+    // Writer thread
+    // -------------------------
+    private void write(List<ProfileSnapshot> batch) {
+        long start = System.nanoTime();
+        try {
+            store.save(batch);
+            Consumer<List<ProfileSnapshot>> listener = savedListener;
+            if (listener != null)
+                listener.accept(batch);
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            logger.severe("Failed to save player data, retrying on the next flush: " + e.getMessage());
+            for (ProfileSnapshot snap : batch) {
+                // only if nothing newer is queued behind us; a newer staged snapshot wins too.
+                // Staged before it leaves pending, so unsaved() never misses it
+                if (pending.get(snap.uuid()) == snap)
+                    staged.putIfAbsent(snap.uuid(), snap);
+            }
+        } finally {
+            long took = System.nanoTime() - start;
+            flushTimer.record(took);
+            lastFlushNanos = took;
+            if (took > maxFlushNanos)
+                maxFlushNanos = took;
+            flushNanosTotal.addAndGet(took);
+            flushCount.incrementAndGet();
+            lastBatchSize = batch.size();
+            inFlight.addAndGet(-batch.size());
+            for (ProfileSnapshot snap : batch) {
+                // a newer snapshot may have been queued meanwhile; only drop our own
+                pending.remove(snap.uuid(), snap);
+            }
+        }
+    }
+
+    // -------------------------
+    // Stats (/catsmp storage)
+    // -------------------------
+    int dirtyCount() {
+        return dirty.size() + staged.size();
+    }
+
+    int inFlightCount() {
+        return inFlight.get();
+    }
+
+    /** Batches that failed to save since startup. */
+    long failureCount() {
+        return failures.get();
+    }
+
+    long flushCount() {
+        return flushCount.get();
+    }
+
+    int lastBatchSize() {
+        return lastBatchSize;
+    }
+
+    double lastFlushMillis() {
+        return lastFlushNanos / 1_000_000.0;
+    }
+
+    double maxFlushMillis() {
+        return maxFlushNanos / 1_000_000.0;
+    }
+
+    double avgFlushMillis() {
+        long n = flushCount.get();
+        return n == 0 ? 0.0 : flushNanosTotal.get() / (double) n / 1_000_000.0;
+    }
+}
@@ -0,0 +1,107 @@
+package me.yusufkerem;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+
+/**
+ * One small YAML file per player under {@code players/<xx>/<uuid>.yml}, where
+ * {@code xx} is the first two hex digits of the UUID so no single directory
+ * grows to hundreds of thousands of entries. Loading or saving a profile only
+ * touches that player's file.
+ */
+final class ShardedProfileStore implements ProfileStore {
+
+    private final Path root;
+
+    ShardedProfileStore(File root) {
+        this.root = root.toPath();
+    }
+
+    Path root() {
+        return root;
+    }
+
+    private Path fileFor(UUID uuid) {
+        String id = uuid.toString();
+        return root.resolve(id.substring(0, 2)).resolve(id + ".yml");
+    }
+
+    @Override
+    public ProfileSnapshot load(UUID uuid) {
+        Path file = fileFor(uuid);
+        if (!Files.isRegularFile(file))
+            return null;
+        return YamlProfileStore.read(uuid, YamlConfiguration.loadConfiguration(file.toFile()));
+    }
+
+    @Override
+    public void save(List<ProfileSnapshot> batch) throws IOException {
+        IOException failure = null;
+        for (ProfileSnapshot snap : batch) {
+            YamlConfiguration yml = new YamlConfiguration();
+            YamlProfileStore.write(yml, snap);
+            Path file = fileFor(snap.uuid());
+            try {
+                Files.createDirectories(file.getParent());
+                AtomicFiles.write(file, yml.saveToString());
+            } catch (IOException e) {
+                // keep going so one bad file doesn't block the rest of the batch
+                failure = e;
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    // shards in parallel; each file is a few lines, so pick out the one we need instead of parsing YAML
+    @Override
+    public void scanBloodPoints(ObjIntConsumer<UUID> action) throws IOException {
+        if (!Files.isDirectory(root))
+            return;
+        try (Stream<Path> shards = Files.list(root)) {
+            shards.filter(Files::isDirectory).toList().parallelStream().forEach(shard -> {
+                try (Stream<Path> files = Files.list(shard)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        scanFile(file, action);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void scanFile(Path file, ObjIntConsumer<UUID> action) throws IOException {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(".yml"))
+            return;
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(name.substring(0, name.length() - 4));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        int bp = 3; // same default as YamlProfileStore.read
+        for (String line : Files.readAllLines(file)) {
+            if (line.startsWith("bloodpoints:")) {
+                try {
+                    bp = Math.min(Integer.parseInt(line.substring(12).trim()), CATSMPMC.MAX_BP);
+                } catch (NumberFormatException ignored) {
+                }
+                break;
+            }
+        }
+        action.accept(uuid, bp);
+    }
+}
@@ -0,0 +1,367 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Profile store shared by several servers behind a proxy (storage.type:
+ * shared). One small versioned file per player under
+ * {@code <directory>/profiles/<xx>/<uuid>.dat}.
+ * <p>
+ * Saves are compare-and-set: under the shard's file lock the current version
+ * is read, and the snapshot is only written as is if it is based on that
+ * version. Otherwise another server saved in between, and our changes since
+ * the version we started from are merged on top of theirs
+ * ({@link ProfileSnapshot#merge}); a player this server created while
+ * another already had them counts as changed from a new player's defaults.
+ * Only {@link #replace} (an import, journal replay) writes over the file as
+ * is. Either way the file gets the next version
+ * and the other servers hear about it through the {@link SyncChannel}; they
+ * rebase a loaded copy of the profile, or forget their merge base if they
+ * have none. A snapshot that is neither current nor mergeable is never
+ * written over the other server's data; the profile is reloaded instead.
+ * <p>
+ * To merge, the store remembers the newest version it has seen of every
+ * profile this server loaded or saved ({@code known}). Only the
+ * compare-and-set of one profile is locked, together with the remote changes
+ * to it: saves come from the writer thread, remote changes from the channel's
+ * thread and loads from any thread, and they only wait for each other when
+ * they touch the same shard.
+ */
+final class SharedProfileStore implements ProfileStore {
+
+    /** What the store needs to know about this server's in-memory profiles. */
+    interface Local {
+        /** Loaded profile (online or offline cache), or null. */
+        PlayerProfile loaded(UUID uuid);
+
+        /** An unloaded profile still has a snapshot waiting to be saved. */
+        boolean hasUnsaved(UUID uuid);
+
+        /** A snapshot was too old to merge: the loaded profile has been rebased, save it again. */
+        void resave(UUID uuid);
+
+        /** A loaded profile took on another server's changes. */
+        void rebased(UUID uuid);
+    }
+
+    private static final int MAGIC = 0x43415453; // "CATS"
+    private static final int FORMAT = 1;
+    // one per shard directory. FileLocks belong to the whole JVM, so a second lock on the same
+    // .lock file from this process would throw instead of waiting: these make it wait
+    private static final Object[] SHARD_LOCKS = new Object[256];
+
+    static {
+        for (int i = 0; i < SHARD_LOCKS.length; i++) {
+            SHARD_LOCKS[i] = new Object();
+        }
+    }
+
+    private final Logger logger;
+    private final Path root;
+    private final SyncChannel channel;
+    private final Map<UUID, ProfileSnapshot> known = new ConcurrentHashMap<>();
+    private volatile Local local;
+
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder resaves = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder remoteUpdates = new LongAdder();
+
+    SharedProfileStore(Logger logger, Path dir, SyncChannel channel) throws IOException {
+        this.logger = logger;
+        this.root = dir.resolve("profiles");
+        this.channel = channel;
+        Files.createDirectories(root);
+    }
+
+    /** Starts listening to the other servers; until then nothing is rebased. */
+    void start(Local local) {
+        this.local = local;
+        channel.start(this::remoteChanged);
+    }
+
+    private Path fileFor(UUID uuid) {
+        String id = uuid.toString();
+        return root.resolve(id.substring(0, 2)).resolve(id + ".dat");
+    }
+
+    // the shard is the first two hex digits of the uuid
+    private static Object shardLock(UUID uuid) {
+        return SHARD_LOCKS[(int) (uuid.getMostSignificantBits() >>> 56)];
+    }
+
+    // a load racing a save must not put an older version back
+    private void remember(ProfileSnapshot snap) {
+        known.merge(snap.uuid(), snap, (old, newer) -> newer.version() >= old.version() ? newer : old);
+    }
+
+    // -------------------------
+    // ProfileStore
+    // -------------------------
+    // files are replaced by rename, so a read needs no lock
+    @Override
+    public ProfileSnapshot load(UUID uuid) throws IOException {
+        ProfileSnapshot snap = read(uuid);
+        if (snap != null)
+            remember(snap);
+        return snap;
+    }
+
+    @Override
+    public void save(List<ProfileSnapshot> batch) throws IOException {
+        save(batch, false);
+    }
+
+    @Override
+    public void replace(List<ProfileSnapshot> batch) throws IOException {
+        save(batch, true);
+    }
+
+    private void save(List<ProfileSnapshot> batch, boolean replace) throws IOException {
+        List<ProfileSnapshot> written = new ArrayList<>(batch.size());
+        IOException failure = null;
+        for (ProfileSnapshot snap : batch) {
+            try {
+                ProfileSnapshot w;
+                synchronized (shardLock(snap.uuid())) {
+                    w = saveOne(snap, replace);
+                }
+                if (w != null)
+                    written.add(w);
+            } catch (IOException e) {
+                // keep going so one bad file doesn't block the rest of the batch
+                failure = e;
+            }
+        }
+        for (ProfileSnapshot w : written) {
+            channel.publish(w.uuid(), w.version());
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    // null if nothing was written; holds the shard lock
+    private ProfileSnapshot saveOne(ProfileSnapshot snap, boolean replace) throws IOException {
+        UUID uuid = snap.uuid();
+        Path file = fileFor(uuid);
+        Files.createDirectories(file.getParent());
+        try (FileChannel lockFile = FileChannel.open(file.resolveSibling(".lock"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE); FileLock ignored = lockFile.lock()) {
+            ProfileSnapshot cur = read(uuid);
+            long curVersion = cur == null ? 0L : cur.version();
+            ProfileSnapshot before = known.get(uuid);
+            PlayerProfile prof = local == null ? null : local.loaded(uuid);
+            ProfileSnapshot toWrite = snap;
+            long basedOn = snap.version();
+            // version 0: not based on anything we read. An import or replay writes over the file; a player
+            // created here while another server already had them merges against a new player's defaults
+            // (unless the loaded profile has taken theirs on since: then it is saved again below)
+            if (snap.version() == 0 && !replace && (prof == null || prof.version() == 0))
+                before = ProfileSnapshot.fresh(uuid, snap.role());
+            if ((snap.version() != 0 || !replace) && cur != null && snap.version() != curVersion) {
+                if (before != null && before.version() == snap.version()) {
+                    toWrite = ProfileSnapshot.merge(before, snap, cur);
+                    merges.increment();
+                    rebaseLoaded(uuid, before, cur);
+                    basedOn = curVersion;
+                } else if (prof != null && prof.version() != snap.version()) {
+                    // the loaded profile was rebased since this snapshot; it has both sides now
+                    resaves.increment();
+                    local.resave(uuid);
+                    return null;
+                } else {
+                    // nothing to merge against: writing it would throw away the other server's changes
+                    conflicts.increment();
+                    logger.warning("No merge base for " + uuid + " (version " + snap.version() + " vs "
+                            + curVersion + "), not saving it; reloading the profile from the shared store");
+                    known.put(uuid, cur);
+                    rebaseLoaded(uuid, null, cur);
+                    return null;
+                }
+            }
+            toWrite = toWrite.withVersion(curVersion + 1);
+            AtomicFiles.write(file, encode(toWrite));
+            known.put(uuid, toWrite);
+            saves.increment();
+            if (prof != null) {
+                if (replace && snap.version() == 0 && prof.version() != 0)
+                    // written from outside the profile (migration, replay): the profile takes it on
+                    rebaseLoaded(uuid, before, toWrite);
+                else
+                    prof.saved(basedOn, toWrite.version());
+            }
+            return toWrite;
+        }
+    }
+
+    private void rebaseLoaded(UUID uuid, ProfileSnapshot base, ProfileSnapshot newer) {
+        PlayerProfile prof = local == null ? null : local.loaded(uuid);
+        if (prof == null)
+            return;
+        if (base == null || base.version() != prof.version())
+            // never saved here: what it did since it was created goes on top of theirs
+            base = prof.version() == 0 ? ProfileSnapshot.fresh(uuid, prof.role()) : null;
+        prof.rebase(base, newer);
+        local.rebased(uuid);
+    }
+
+    // another server saved this profile
+    private void remoteChanged(UUID uuid, long version) {
+        synchronized (shardLock(uuid)) {
+            rebaseRemote(uuid, version);
+        }
+    }
+
+    private void rebaseRemote(UUID uuid, long version) {
+        ProfileSnapshot base = known.get(uuid);
+        if (base != null && base.version() >= version)
+            return;
+        if (local.loaded(uuid) == null) {
+            // nothing to update; keep the base only while an unsaved snapshot may still need it to merge
+            if (!local.hasUnsaved(uuid))
+                known.remove(uuid);
+            return;
+        }
+        try {
+            ProfileSnapshot newer = read(uuid);
+            if (newer == null)
+                return;
+            remoteUpdates.increment();
+            rebaseLoaded(uuid, base, newer);
+            known.put(uuid, newer);
+        } catch (IOException e) {
+            logger.warning("Could not read " + uuid + " after a change on another server: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void scanBloodPoints(ObjIntConsumer<UUID> action) throws IOException {
+        try (Stream<Path> shards = Files.list(root)) {
+            shards.filter(Files::isDirectory).toList().parallelStream().forEach(shard -> {
+                try (Stream<Path> files = Files.list(shard)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        String name = file.getFileName().toString();
+                        if (!name.endsWith(".dat"))
+                            continue;
+                        UUID uuid;
+                        try {
+                            uuid = UUID.fromString(name.substring(0, name.length() - 4));
+                        } catch (IllegalArgumentException e) {
+                            // not ours (a copy, an editor's backup): leave it alone
+                            continue;
+                        }
+                        ProfileSnapshot snap = read(uuid);
+                        if (snap != null)
+                            action.accept(snap.uuid(), snap.bloodPoints());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() {
+        channel.close();
+    }
+
+    // -------------------------
+    // File format
+    // -------------------------
+    private ProfileSnapshot read(UUID uuid) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(fileFor(uuid));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != FORMAT)
+                throw new IOException(uuid + ".dat is not a CATSMPMC shared profile");
+            long version = in.readLong();
+            Role role = Role.valueOf(in.readUTF());
+            int bp = Math.min(in.readUnsignedByte(), CATSMPMC.MAX_BP);
+            boolean zoomCombo = in.readBoolean();
+            byte[] levels = new byte[Ability.count()];
+            for (int i = in.readUnsignedByte(); i > 0; i--) {
+                Ability a = Ability.byKey(in.readUTF());
+                int lvl = in.readUnsignedByte();
+                // abilities removed since are dropped
+                if (a != null)
+                    levels[a.ordinal()] = (byte) Math.min(lvl, Ability.LEVEL_LIMIT);
+            }
+            return new ProfileSnapshot(uuid, role, bp, zoomCombo, levels, version);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(uuid + ".dat: " + e.getMessage(), e);
+        }
+    }
+
+    // abilities by key, so adding or reordering them never breaks old files
+    private static byte[] encode(ProfileSnapshot snap) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT);
+            out.writeLong(snap.version());
+            out.writeUTF(snap.role().name());
+            out.writeByte(snap.bloodPoints());
+            out.writeBoolean(snap.zoomCombo());
+            out.writeByte(Ability.count());
+            for (Ability a : Ability.values()) {
+                out.writeUTF(a.key);
+                out.writeByte(snap.level(a));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    // -------------------------
+    // Stats (/catsmp storage)
+    // -------------------------
+    long saveCount() {
+        return saves.sum();
+    }
+
+    long mergeCount() {
+        return merges.sum();
+    }
+
+    long resaveCount() {
+        return resaves.sum();
+    }
+
+    /** Saves dropped because there was no merge base; the profile was reloaded instead. */
+    long conflictCount() {
+        return conflicts.sum();
+    }
+
+    long remoteUpdateCount() {
+        return remoteUpdates.sum();
+    }
+}
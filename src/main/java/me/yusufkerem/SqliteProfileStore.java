@@ -0,0 +1,270 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.sqlite.SQLiteConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Embedded SQLite database in profiles.db (storage.type: sqlite). The driver
+ * is fetched by the server through the libraries section of plugin.yml.
+ * <p>
+ * One table, one row per player and one column per ability, so leaderboard
+ * style questions ({@link #topBloodPoints}, {@link #maxedOut}) are answered by
+ * the database instead of loading every profile. The database runs in WAL mode:
+ * saves go through a single write connection and upsert a whole batch in one
+ * transaction (from the write-behind writer thread, never a tick thread),
+ * while loads and queries borrow one of a few read connections from a small
+ * pool.
+ */
+final class SqliteProfileStore implements ProfileStore {
+
+    private static final String TABLE = "profiles";
+    // how long a load waits for a free read connection before giving up
+    private static final long BORROW_TIMEOUT_SECONDS = 10;
+    private static final String SELECT_COLUMNS = selectColumns();
+
+    private final String url;
+    private final Connection writeConn;
+    private final PreparedStatement upsert;
+    private final BlockingQueue<Connection> readers;
+    private final List<Connection> allReaders = new ArrayList<>();
+
+    SqliteProfileStore(File file, int readPoolSize) throws IOException {
+        this.url = "jdbc:sqlite:" + file.getAbsolutePath();
+        try {
+            // the server's library loader puts the driver on our class path, not the system one
+            Class.forName("org.sqlite.JDBC");
+            writeConn = open(false);
+            try (Statement st = writeConn.createStatement()) {
+                st.execute("PRAGMA journal_mode=WAL");
+                // a saved batch must survive power loss: journal compaction deletes its records afterwards
+                st.execute("PRAGMA synchronous=FULL");
+                st.execute(createTableSql());
+                st.execute("CREATE INDEX IF NOT EXISTS idx_" + TABLE + "_bp ON " + TABLE
+                        + " (blood_points DESC, updated_at)");
+            }
+            writeConn.setAutoCommit(false);
+            upsert = writeConn.prepareStatement(upsertSql());
+
+            int size = Math.max(1, readPoolSize);
+            readers = new ArrayBlockingQueue<>(size);
+            for (int i = 0; i < size; i++) {
+                Connection c = open(true);
+                allReaders.add(c);
+                readers.add(c);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("SQLite driver not found (is the server allowed to download libraries?)", e);
+        } catch (SQLException e) {
+            close();
+            throw new IOException("Could not open " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    // read-only is an open flag: the driver refuses setReadOnly() on a connection that is already open
+    private Connection open(boolean readOnly) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(5000);
+        config.setReadOnly(readOnly);
+        return config.createConnection(url);
+    }
+
+    // -------------------------
+    // SQL
+    // -------------------------
+    private static String column(Ability a) {
+        return "lvl_" + a.key;
+    }
+
+    private static String selectColumns() {
+        StringBuilder sb = new StringBuilder("uuid, role, blood_points, zoom_combo");
+        for (Ability a : Ability.values()) {
+            sb.append(", ").append(column(a));
+        }
+        return sb.toString();
+    }
+
+    private static String createTableSql() {
+        StringBuilder sb = new StringBuilder("CREATE TABLE IF NOT EXISTS " + TABLE + " (")
+                .append("uuid TEXT PRIMARY KEY, role TEXT NOT NULL, blood_points INTEGER NOT NULL, ")
+                .append("zoom_combo INTEGER NOT NULL, updated_at INTEGER NOT NULL");
+        for (Ability a : Ability.values()) {
+            sb.append(", ").append(column(a)).append(" INTEGER NOT NULL DEFAULT 0");
+        }
+        return sb.append(')').toString();
+    }
+
+    private static String upsertSql() {
+        StringBuilder cols = new StringBuilder("uuid, role, blood_points, zoom_combo, updated_at");
+        StringBuilder params = new StringBuilder("?, ?, ?, ?, ?");
+        StringBuilder updates = new StringBuilder("role = excluded.role, blood_points = excluded.blood_points, "
+                + "zoom_combo = excluded.zoom_combo, updated_at = excluded.updated_at");
+        for (Ability a : Ability.values()) {
+            cols.append(", ").append(column(a));
+            params.append(", ?");
+            updates.append(", ").append(column(a)).append(" = excluded.").append(column(a));
+        }
+        return "INSERT INTO " + TABLE + " (" + cols + ") VALUES (" + params + ") ON CONFLICT(uuid) DO UPDATE SET "
+                + updates;
+    }
+
+    private static ProfileSnapshot read(ResultSet rs) throws SQLException {
+        byte[] levels = new byte[Ability.count()];
+        for (Ability a : Ability.values()) {
+            levels[a.ordinal()] = (byte) rs.getInt(column(a));
+        }
+        return new ProfileSnapshot(UUID.fromString(rs.getString("uuid")), Role.valueOf(rs.getString("role")),
+                rs.getInt("blood_points"), rs.getInt("zoom_combo") != 0, levels);
+    }
+
+    // -------------------------
+    // ProfileStore
+    // -------------------------
+    @Override
+    public ProfileSnapshot load(UUID uuid) throws IOException {
+        Connection c = borrow();
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT " + SELECT_COLUMNS + " FROM " + TABLE + " WHERE uuid = ?")) {
+            ps.setString(1, uuid.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? read(rs) : null;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not load " + uuid + ": " + e.getMessage(), e);
+        } finally {
+            readers.add(c);
+        }
+    }
+
+    // normally the writer thread; migration and journal replay also write, so serialise on writeConn
+    @Override
+    public synchronized void save(List<ProfileSnapshot> batch) throws IOException {
+        if (batch.isEmpty())
+            return;
+        long now = System.currentTimeMillis();
+        try {
+            for (ProfileSnapshot snap : batch) {
+                upsert.setString(1, snap.uuid().toString());
+                upsert.setString(2, snap.role().name());
+                upsert.setInt(3, snap.bloodPoints());
+                upsert.setInt(4, snap.zoomCombo() ? 1 : 0);
+                upsert.setLong(5, now);
+                int i = 6;
+                for (Ability a : Ability.values()) {
+                    upsert.setInt(i++, snap.level(a));
+                }
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+            writeConn.commit();
+        } catch (SQLException e) {
+            try {
+                writeConn.rollback();
+            } catch (SQLException ignored) {
+            }
+            throw new IOException("Could not save " + batch.size() + " profiles: " + e.getMessage(), e);
+        }
+    }
+
+    // oldest change first, so equal BP keeps the same order as topBloodPoints
+    @Override
+    public void scanBloodPoints(ObjIntConsumer<UUID> action) throws IOException {
+        Connection c = borrow();
+        try (Statement st = c.createStatement();
+                ResultSet rs = st.executeQuery("SELECT uuid, blood_points FROM " + TABLE + " ORDER BY updated_at")) {
+            while (rs.next()) {
+                action.accept(UUID.fromString(rs.getString(1)), rs.getInt(2));
+            }
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            readers.add(c);
+        }
+    }
+
+    // -------------------------
+    // Queries (/catsmp query), run off the tick thread
+    // -------------------------
+
+    /** Highest Blood Points first; ties go to the profile that has gone longest without a change. */
+    List<ProfileSnapshot> topBloodPoints(int limit) throws IOException {
+        return query("SELECT " + SELECT_COLUMNS + " FROM " + TABLE + " ORDER BY blood_points DESC, updated_at LIMIT ?",
+                limit);
+    }
+
+    /** Players whose level in the given ability is at its maximum. */
+    List<ProfileSnapshot> maxedOut(Ability a, int limit) throws IOException {
+        return query("SELECT " + SELECT_COLUMNS + " FROM " + TABLE + " WHERE " + column(a) + " >= " + a.maxLevel()
+                + " ORDER BY updated_at LIMIT ?", limit);
+    }
+
+    int count() throws IOException {
+        Connection c = borrow();
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + TABLE)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            readers.add(c);
+        }
+    }
+
+    private List<ProfileSnapshot> query(String sql, int limit) throws IOException {
+        Connection c = borrow();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            List<ProfileSnapshot> out = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(read(rs));
+                }
+            }
+            return out;
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            readers.add(c);
+        }
+    }
+
+    private Connection borrow() throws IOException {
+        try {
+            Connection c = readers.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (c == null)
+                throw new IOException("No free database connection after " + BORROW_TIMEOUT_SECONDS + "s");
+            return c;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a database connection", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Connection c : allReaders) {
+            try {
+                c.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        try {
+            if (writeConn != null)
+                writeConn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package me.yusufkerem;
+
+import java.util.UUID;
+
+/**
+ * Tells the other servers sharing a {@link SharedProfileStore} that a profile
+ * was saved, so they can drop or rebase their copy instead of reloading
+ * everything. Messages are only hints ("uuid is now at version n"); the
+ * store itself is the source of truth, so a lost message only delays an
+ * update until the profile is next loaded or saved.
+ * <p>
+ * {@link DirectorySyncChannel} works over a shared directory; a proxy
+ * plugin-messaging or Redis pub/sub channel would implement this same
+ * interface.
+ */
+interface SyncChannel {
+
+    interface Receiver {
+        void changed(UUID uuid, long version);
+    }
+
+    /** Starts delivering other servers' messages to {@code receiver}, on a thread of the channel's choosing. */
+    void start(Receiver receiver);
+
+    /** Announces a save; must not block for long (called by the writer thread). */
+    void publish(UUID uuid, long version);
+
+    default void close() {
+    }
+}
@@ -0,0 +1,110 @@
+package me.yusufkerem;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The /catsmp upgrade GUI. The menu is its own {@link InventoryHolder}, so the
+ * click listener recognises it with one instanceof check instead of comparing
+ * titles, and maps the clicked slot straight to an {@link Ability}.
+ * <p>
+ * Items never change for a given (ability, level) and {@link AbilityTable},
+ * so each table builds them once and they are reused; the server copies an
+ * item when it is put into an inventory.
+ */
+final class UpgradeMenu implements InventoryHolder {
+
+    static final String TITLE = ChatColor.DARK_PURPLE + "CATSMP Upgrade Menu";
+    private static final int SIZE = 9;
+
+    private final Inventory inventory;
+    private final Ability[] bySlot = new Ability[SIZE];
+
+    UpgradeMenu(PlayerProfile prof) {
+        inventory = Bukkit.createInventory(this, SIZE, TITLE);
+        AbilityTable table = AbilityTable.get();
+        Ability[] abilities = table.abilities(prof.role());
+        // up to four: slot 1, then every other slot; more than that side by side
+        int step = abilities.length <= SIZE / 2 ? 2 : 1;
+        int slot = step - 1;
+        for (Ability a : abilities) {
+            if (slot >= SIZE)
+                break;
+            bySlot[slot] = a;
+            inventory.setItem(slot, table.item(a, prof.level(a)));
+            slot += step;
+        }
+    }
+
+    @Override
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+    /** @return the ability shown in the given raw slot, or null for empty slots and the player's own inventory */
+    Ability abilityAt(int rawSlot) {
+        return rawSlot >= 0 && rawSlot < SIZE ? bySlot[rawSlot] : null;
+    }
+
+    /** Swaps the item for one ability after an upgrade; the menu stays open. */
+    void refresh(Ability a, int level) {
+        for (int slot = 0; slot < SIZE; slot++) {
+            if (bySlot[slot] == a)
+                inventory.setItem(slot, item(a, level));
+        }
+    }
+
+    static ItemStack item(Ability a, int level) {
+        return AbilityTable.get().item(a, level);
+    }
+
+    // name shown in chat, e.g. "Upgraded Purring (Regen) to level 2!"
+    static String label(Ability a) {
+        return AbilityTable.get().def(a).name();
+    }
+
+    // -------------------------
+    // Item templates
+    // -------------------------
+    // [ability ordinal][level], for AbilityTable#item
+    static ItemStack[][] buildTemplates(AbilityTable table) {
+        ItemStack[][] templates = new ItemStack[Ability.count()][];
+        for (Ability a : Ability.values()) {
+            AbilityTable.Def def = table.def(a);
+            templates[a.ordinal()] = new ItemStack[def.maxLevel() + 1];
+            for (int lvl = 0; lvl <= def.maxLevel(); lvl++) {
+                templates[a.ordinal()][lvl] = makeGuiItemWithLevel(def, lvl);
+            }
+        }
+        return templates;
+    }
+
+    private static ItemStack makeGuiItemWithLevel(AbilityTable.Def def, int currentLevel) {
+        ItemStack it = new ItemStack(def.material());
+        ItemMeta meta = it.getItemMeta();
+        if (meta != null) {
+            meta.setDisplayName(def.color() + def.name());
+
+            List<String> lore = new ArrayList<>();
+            lore.add(ChatColor.GRAY + def.description());
+            lore.add(ChatColor.YELLOW + "Current Level: " + ChatColor.WHITE + currentLevel + "/" + def.maxLevel());
+
+            if (currentLevel >= def.maxLevel()) {
+                lore.add(ChatColor.GREEN + "✓ MAX LEVEL");
+            } else {
+                lore.add(ChatColor.AQUA + "Click to upgrade! (Costs " + def.cost() + " BP)");
+            }
+
+            meta.setLore(lore);
+            it.setItemMeta(meta);
+        }
+        return it;
+    }
+}
@@ -0,0 +1,91 @@
+package me.yusufkerem;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The original single-file layout: every profile under {@code players.<uuid>}
+ * in data.yml. The whole tree is kept in memory and rewritten on each flush, so
+ * this is only meant for small servers (storage.type: yaml).
+ */
+final class YamlProfileStore implements ProfileStore {
+
+    private final File file;
+    private final FileConfiguration data;
+
+    YamlProfileStore(File file) {
+        this.file = file;
+        this.data = YamlConfiguration.loadConfiguration(file);
+    }
+
+    FileConfiguration config() {
+        return data;
+    }
+
+    @Override
+    public synchronized ProfileSnapshot load(UUID uuid) {
+        return read(uuid, data.getConfigurationSection("players." + uuid));
+    }
+
+    @Override
+    public synchronized void save(List<ProfileSnapshot> batch) throws IOException {
+        for (ProfileSnapshot snap : batch) {
+            String path = "players." + snap.uuid();
+            data.set(path, null); // clear then repopulate
+            write(data.createSection(path), snap);
+        }
+        AtomicFiles.write(file.toPath(), data.saveToString());
+    }
+
+    @Override
+    public synchronized void scanBloodPoints(ObjIntConsumer<UUID> action) {
+        ConfigurationSection players = data.getConfigurationSection("players");
+        if (players == null)
+            return;
+        for (String key : players.getKeys(false)) {
+            try {
+                action.accept(UUID.fromString(key), Math.min(players.getInt(key + ".bloodpoints", 3), CATSMPMC.MAX_BP));
+            } catch (IllegalArgumentException ignored) {
+                // not a UUID
+            }
+        }
+    }
+
+    // -------------------------
+    // Shared YAML (de)serialization, also used by the sharded store
+    // -------------------------
+    static ProfileSnapshot read(UUID uuid, ConfigurationSection sec) {
+        if (sec == null)
+            return null;
+        CATSMPMC.Role role = CATSMPMC.Role.valueOf(sec.getString("role", "PASSIVE"));
+        int bp = Math.min(sec.getInt("bloodpoints", 3), CATSMPMC.MAX_BP);
+        byte[] levels = new byte[Ability.count()];
+        ConfigurationSection abSec = sec.getConfigurationSection("abilities");
+        if (abSec != null) {
+            for (String key : abSec.getKeys(false)) {
+                Ability ability = Ability.byKey(key);
+                if (ability != null)
+                    levels[ability.ordinal()] = (byte) Math.min(abSec.getInt(key, 0), Ability.LEVEL_LIMIT);
+            }
+        }
+        return new ProfileSnapshot(uuid, role, bp, sec.getBoolean("zoomcombo", true), levels);
+    }
+
+    static void write(ConfigurationSection sec, ProfileSnapshot snap) {
+        sec.set("role", snap.role().name());
+        sec.set("bloodpoints", snap.bloodPoints());
+        sec.set("zoomcombo", snap.zoomCombo());
+        for (Ability ability : Ability.values()) {
+            int lvl = snap.level(ability);
+            if (lvl > 0)
+                sec.set("abilities." + ability.key, lvl);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package me.yusufkerem;
+
+import me.yusufkerem.AuditLog.Event;
+import me.yusufkerem.AuditLog.Reason;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditLogTest {
+
+    private static final Logger LOG = Logger.getLogger("test");
+    // the smallest ring AuditLog allows
+    private static final int RING = 1024;
+
+    @TempDir
+    Path dir;
+
+    private static void awaitWritten(AuditLog audit, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (audit.writtenCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, audit.writtenCount());
+    }
+
+    @Test
+    void fullRingDropsNewEventsAndCountsThem() throws IOException {
+        // the consumer sleeps for an hour unless closed, so nothing is drained until then
+        AuditLog audit = new AuditLog(LOG, dir, RING, TimeUnit.HOURS.toMillis(1), 16, 90);
+        UUID player = UUID.randomUUID();
+        for (int i = 0; i < RING + 6; i++) {
+            audit.record(player, Reason.KILL, null, i, i + 1, null);
+        }
+        // no change, not recorded
+        audit.record(player, Reason.KILL, null, 3, 3, null);
+        assertEquals(6, audit.droppedCount());
+        assertEquals(RING + 6, audit.recordedCount());
+
+        audit.close();
+        assertEquals(RING, audit.writtenCount());
+        List<Event> history = audit.history(player, 2 * RING);
+        assertEquals(RING, history.size());
+        // the ones that made it are the oldest, newest first
+        assertEquals(RING - 1, history.get(0).before());
+        assertEquals(0, history.get(RING - 1).before());
+    }
+
+    @Test
+    void ringWrapsAroundWithoutLosingOrder() throws IOException, InterruptedException {
+        AuditLog audit = new AuditLog(LOG, dir, RING, 10, 16, 90);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), admin = UUID.randomUUID();
+        int total = 0;
+        // five laps around the ring
+        for (int lap = 0; lap < 5; lap++) {
+            for (int i = 0; i < 1000; i++) {
+                int n = lap * 1000 + i;
+                if (i % 2 == 0)
+                    audit.record(a, Reason.UPGRADE, null, n, n + 1, Ability.CLAWS);
+                else
+                    audit.record(b, Reason.ADMIN, admin, n, n - 1, null);
+                total++;
+            }
+            awaitWritten(audit, total);
+        }
+        assertEquals(0, audit.droppedCount());
+        audit.close();
+
+        List<Event> latest = audit.history(a, 3);
+        assertEquals(3, latest.size());
+        assertEquals(4998, latest.get(0).before());
+        assertEquals(4996, latest.get(1).before());
+        assertEquals(4994, latest.get(2).before());
+        assertEquals(Ability.CLAWS, latest.get(0).ability());
+        assertNull(latest.get(0).actor());
+
+        List<Event> all = audit.history(b, Integer.MAX_VALUE);
+        assertEquals(2500, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            Event e = all.get(i);
+            assertEquals(4999 - 2 * i, e.before());
+            assertEquals(e.before() - 1, e.after());
+            assertEquals(Reason.ADMIN, e.reason());
+            assertEquals(admin, e.actor());
+        }
+    }
+
+    @Test
+    void concurrentProducersKeepTheirOwnOrder() throws IOException, InterruptedException {
+        AuditLog audit = new AuditLog(LOG, dir, RING, 10, 16, 90);
+        int threads = 4, perThread = 5000;
+        List<UUID> players = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            UUID player = UUID.randomUUID();
+            players.add(player);
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    audit.record(player, Reason.SPEND, null, i, i + 1, null);
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (Thread t : producers) {
+            t.join();
+        }
+        audit.close();
+
+        assertEquals(threads * perThread, audit.recordedCount());
+        assertEquals(threads * perThread, audit.writtenCount() + audit.droppedCount());
+        long found = 0;
+        for (UUID player : players) {
+            List<Event> history = audit.history(player, Integer.MAX_VALUE);
+            found += history.size();
+            // drops may leave gaps, but never reorder one producer's events
+            for (int i = 1; i < history.size(); i++) {
+                assertTrue(history.get(i).before() < history.get(i - 1).before());
+            }
+        }
+        assertEquals(audit.writtenCount(), found);
+    }
+}
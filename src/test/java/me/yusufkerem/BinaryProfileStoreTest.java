@@ -0,0 +1,172 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryProfileStoreTest {
+
+    // offsets from the record layout in BinaryProfileStore
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+
+    @TempDir
+    Path dir;
+
+    private static List<ProfileSnapshot> profiles(int count) {
+        Random rnd = new Random(7);
+        List<ProfileSnapshot> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] levels = new byte[Ability.count()];
+            levels[Ability.CLAWS.ordinal()] = (byte) rnd.nextInt(4);
+            list.add(new ProfileSnapshot(new UUID(rnd.nextLong(), rnd.nextLong()),
+                    rnd.nextBoolean() ? Role.AGGRESSIVE : Role.PASSIVE, rnd.nextInt(CATSMPMC.MAX_BP + 1),
+                    rnd.nextBoolean(), levels));
+        }
+        return list;
+    }
+
+    private static void assertProfile(ProfileSnapshot expected, ProfileSnapshot actual) {
+        assertEquals(expected.role(), actual.role());
+        assertEquals(expected.bloodPoints(), actual.bloodPoints());
+        assertEquals(expected.zoomCombo(), actual.zoomCombo());
+        assertEquals(expected.level(Ability.CLAWS), actual.level(Ability.CLAWS));
+    }
+
+    @Test
+    void growsAndSurvivesReopen() throws IOException {
+        File file = dir.resolve("profiles.dat").toFile();
+        // past the initial 1024 slots and index size, so both the file and the index grow
+        List<ProfileSnapshot> all = profiles(5000);
+
+        BinaryProfileStore store = new BinaryProfileStore(file);
+        store.save(all.subList(0, 1000));
+        store.save(all.subList(1000, all.size()));
+        // an update keeps its slot
+        ProfileSnapshot first = all.get(0);
+        ProfileSnapshot updated = new ProfileSnapshot(first.uuid(), first.role(), 9, first.zoomCombo(),
+                new byte[Ability.count()]);
+        store.save(List.of(updated));
+        assertEquals(5000, store.size());
+        assertProfile(updated, store.load(first.uuid()));
+        assertNull(store.load(UUID.randomUUID()));
+        store.close();
+
+        store = new BinaryProfileStore(file);
+        try {
+            assertEquals(5000, store.size());
+            assertEquals(0, store.corruptRecords());
+            assertProfile(updated, store.load(first.uuid()));
+            for (ProfileSnapshot snap : all.subList(1, all.size())) {
+                assertProfile(snap, store.load(snap.uuid()));
+            }
+            Map<UUID, Integer> scanned = new HashMap<>();
+            store.scanBloodPoints(scanned::put);
+            assertEquals(5000, scanned.size());
+            assertEquals(9, scanned.get(first.uuid()));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void corruptRecordIsSkippedAndCounted() throws IOException {
+        File file = dir.resolve("profiles.dat").toFile();
+        List<ProfileSnapshot> all = profiles(3);
+        BinaryProfileStore store = new BinaryProfileStore(file);
+        store.save(all);
+        store.close();
+
+        // flip the blood points of the second record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long bp = HEADER_SIZE + RECORD_SIZE + 17;
+            raf.seek(bp);
+            int old = raf.read();
+            raf.seek(bp);
+            raf.write(old ^ 0x40);
+        }
+
+        store = new BinaryProfileStore(file);
+        try {
+            assertEquals(1, store.corruptRecords());
+            assertEquals(2, store.size());
+            assertNull(store.load(all.get(1).uuid()));
+            assertProfile(all.get(0), store.load(all.get(0).uuid()));
+            assertProfile(all.get(2), store.load(all.get(2).uuid()));
+
+            // saving the player again gives them a fresh, valid record
+            store.save(List.of(all.get(1)));
+            assertProfile(all.get(1), store.load(all.get(1).uuid()));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void loadChecksTheRecordAgain() throws IOException {
+        File file = dir.resolve("profiles.dat").toFile();
+        ProfileSnapshot snap = profiles(1).get(0);
+        BinaryProfileStore store = new BinaryProfileStore(file);
+        try {
+            store.save(List.of(snap));
+            // damaged while the store is open, e.g. by another process
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(HEADER_SIZE + 18);
+                raf.write(0x7f);
+            }
+            assertThrows(IOException.class, () -> store.load(snap.uuid()));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void versionOneFileIsUpgraded() throws IOException {
+        File file = dir.resolve("profiles.dat").toFile();
+        List<ProfileSnapshot> all = profiles(10);
+        BinaryProfileStore store = new BinaryProfileStore(file);
+        store.save(all);
+        store.close();
+
+        // what version 1 wrote: no checksums
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4);
+            raf.writeInt(1);
+            for (int slot = 0; slot < all.size(); slot++) {
+                raf.seek(HEADER_SIZE + (long) slot * RECORD_SIZE + 28);
+                raf.writeInt(0);
+            }
+        }
+
+        store = new BinaryProfileStore(file);
+        store.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(4);
+            assertEquals(2, raf.readInt());
+        }
+        store = new BinaryProfileStore(file);
+        try {
+            assertEquals(0, store.corruptRecords());
+            for (ProfileSnapshot snap : all) {
+                assertProfile(snap, store.load(snap.uuid()));
+            }
+        } finally {
+            store.close();
+        }
+    }
+}
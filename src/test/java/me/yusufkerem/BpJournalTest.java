@@ -0,0 +1,149 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.ObjIntConsumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BpJournalTest {
+
+    private static final Logger LOG = Logger.getLogger("test");
+    // segment layout from BpJournal
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 40;
+
+    private static final class MapStore implements ProfileStore {
+        final Map<UUID, ProfileSnapshot> saved = new HashMap<>();
+        int saves;
+
+        @Override
+        public ProfileSnapshot load(UUID uuid) {
+            return saved.get(uuid);
+        }
+
+        @Override
+        public void save(List<ProfileSnapshot> batch) {
+            for (ProfileSnapshot snap : batch) {
+                saved.put(snap.uuid(), snap);
+                saves++;
+            }
+        }
+
+        @Override
+        public void scanBloodPoints(ObjIntConsumer<UUID> action) {
+        }
+    }
+
+    @TempDir
+    Path dir;
+
+    private static ProfileSnapshot snap(UUID uuid, int bp) {
+        return new ProfileSnapshot(uuid, Role.PASSIVE, bp, true, new byte[Ability.count()]);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().toList();
+        }
+    }
+
+    @Test
+    void replayAppliesTheLastValueOfEachField() throws IOException {
+        UUID known = UUID.randomUUID(), fresh = UUID.randomUUID(), untouched = UUID.randomUUID();
+        MapStore store = new MapStore();
+        store.save(List.of(snap(known, 1), snap(untouched, 2)));
+
+        BpJournal journal = new BpJournal(LOG, dir, 5);
+        journal.append(known, BpJournal.FIELD_BP, 1, 2);
+        journal.append(known, BpJournal.FIELD_BP, 2, 4);
+        journal.append(known, BpJournal.field(Ability.CLAWS), 0, 2);
+        journal.append(fresh, BpJournal.FIELD_ROLE, -1, Role.AGGRESSIVE.ordinal());
+        // a change back to what the store already has
+        journal.append(untouched, BpJournal.FIELD_BP, 2, 2);
+        journal.close();
+
+        int before = store.saves;
+        assertEquals(2, BpJournal.replay(LOG, dir, store));
+        assertEquals(before + 2, store.saves);
+        assertEquals(4, store.saved.get(known).bloodPoints());
+        assertEquals(2, store.saved.get(known).level(Ability.CLAWS));
+        assertEquals(Role.AGGRESSIVE, store.saved.get(fresh).role());
+        assertEquals(3, store.saved.get(fresh).bloodPoints());
+        assertEquals(List.of(), segments());
+
+        // nothing left to replay
+        assertEquals(0, BpJournal.replay(LOG, dir, store));
+    }
+
+    @Test
+    void laterSegmentsWin() throws IOException {
+        UUID uuid = UUID.randomUUID();
+        BpJournal journal = new BpJournal(LOG, dir, 5);
+        journal.append(uuid, BpJournal.FIELD_BP, 3, 5);
+        journal.close();
+        // a restart that crashed before replay: a second segment
+        journal = new BpJournal(LOG, dir, 5);
+        journal.append(uuid, BpJournal.FIELD_BP, 5, 1);
+        journal.close();
+        assertEquals(2, segments().size());
+
+        MapStore store = new MapStore();
+        BpJournal.replay(LOG, dir, store);
+        assertEquals(1, store.saved.get(uuid).bloodPoints());
+    }
+
+    @Test
+    void replayStopsAtABadRecord() throws IOException {
+        UUID first = UUID.randomUUID(), second = UUID.randomUUID(), third = UUID.randomUUID();
+        BpJournal journal = new BpJournal(LOG, dir, 5);
+        journal.append(first, BpJournal.FIELD_BP, 3, 4);
+        journal.append(second, BpJournal.FIELD_BP, 3, 4);
+        journal.append(third, BpJournal.FIELD_BP, 3, 4);
+        journal.close();
+
+        Path segment = segments().get(0);
+        try (RandomAccessFile raf = new RandomAccessFile(segment.toFile(), "rw")) {
+            assertEquals(HEADER_SIZE + 3 * RECORD_SIZE, raf.length());
+            // damage the second record's new value
+            raf.seek(HEADER_SIZE + RECORD_SIZE + 24);
+            raf.writeInt(1);
+            // and tear the tail, as a crash mid-write would
+            raf.setLength(raf.length() - 7);
+        }
+
+        MapStore store = new MapStore();
+        assertEquals(1, BpJournal.replay(LOG, dir, store));
+        assertEquals(4, store.saved.get(first).bloodPoints());
+        assertNull(store.saved.get(second));
+        assertNull(store.saved.get(third));
+    }
+
+    @Test
+    void replayKeepsTheStoredVersion() throws IOException {
+        UUID uuid = UUID.randomUUID();
+        MapStore store = new MapStore();
+        store.save(List.of(new ProfileSnapshot(uuid, Role.PASSIVE, 2, true, new byte[Ability.count()], 7)));
+        BpJournal journal = new BpJournal(LOG, dir, 5);
+        journal.append(uuid, BpJournal.FIELD_BP, 2, 3);
+        journal.close();
+
+        BpJournal.replay(LOG, dir, store);
+        // based on what it read, so a versioned store compare-and-sets it
+        assertEquals(7, store.saved.get(uuid).version());
+        assertEquals(3, store.saved.get(uuid).bloodPoints());
+    }
+}
@@ -0,0 +1,89 @@
+package me.yusufkerem;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CooldownsTest {
+
+    // UUIDs with the same msb ^ lsb hash to the same home slot
+    private static UUID colliding(long key, long group) {
+        return new UUID(key, key ^ group);
+    }
+
+    @Test
+    void removingFromTheMiddleOfAChainKeepsTheRest() {
+        Cooldowns cooldowns = new Cooldowns();
+        UUID a = colliding(1, 0), b = colliding(2, 0), c = colliding(3, 0);
+        for (UUID uuid : List.of(a, b, c)) {
+            assertTrue(cooldowns.tryStart(uuid, Ability.ZOOM, 1, TimeUnit.HOURS));
+        }
+
+        cooldowns.clear(b);
+        assertEquals(2, cooldowns.size());
+        assertEquals(0L, cooldowns.remainingNanos(b, Ability.ZOOM));
+        // c was shifted back into b's slot and must still be found
+        assertTrue(cooldowns.remainingNanos(c, Ability.ZOOM) > 0);
+        assertFalse(cooldowns.tryStart(c, Ability.ZOOM, 1, TimeUnit.HOURS));
+        assertTrue(cooldowns.remainingNanos(a, Ability.ZOOM) > 0);
+        assertTrue(cooldowns.tryStart(b, Ability.ZOOM, 1, TimeUnit.HOURS));
+        assertEquals(3, cooldowns.size());
+    }
+
+    @Test
+    void cooldownsAreKeptPerAbility() {
+        Cooldowns cooldowns = new Cooldowns();
+        UUID uuid = UUID.randomUUID();
+        assertTrue(cooldowns.tryStart(uuid, Ability.ZOOM, 1, TimeUnit.HOURS));
+        assertTrue(cooldowns.tryStart(uuid, Ability.CLAWS, 1, TimeUnit.HOURS));
+        assertFalse(cooldowns.tryStart(uuid, Ability.CLAWS, 1, TimeUnit.HOURS));
+        assertEquals(0L, cooldowns.remainingNanos(uuid, Ability.RABIES));
+        assertEquals(1, cooldowns.size());
+    }
+
+    @Test
+    void matchesASetUnderRandomInsertsAndRemovals() {
+        Cooldowns cooldowns = new Cooldowns();
+        Random rnd = new Random(13);
+        // few hash groups, so chains are long and wrap around the end of the table
+        List<UUID> universe = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            universe.add(colliding(rnd.nextLong(), rnd.nextInt(8)));
+        }
+        Set<UUID> cooling = new HashSet<>();
+
+        for (int round = 0; round < 50; round++) {
+            for (int op = 0; op < 200; op++) {
+                UUID uuid = universe.get(rnd.nextInt(universe.size()));
+                switch (rnd.nextInt(3)) {
+                    case 0 -> assertEquals(cooling.add(uuid),
+                            cooldowns.tryStart(uuid, Ability.ZOOM, 1, TimeUnit.HOURS));
+                    case 1 -> {
+                        cooldowns.clear(uuid);
+                        cooling.remove(uuid);
+                    }
+                    // an entry that is expired at once: left for purge() or the next lookup to drop
+                    default -> {
+                        if (!cooling.contains(uuid))
+                            assertTrue(cooldowns.tryStart(uuid, Ability.ZOOM, 0, TimeUnit.NANOSECONDS));
+                    }
+                }
+            }
+            for (UUID uuid : universe) {
+                assertEquals(cooling.contains(uuid), cooldowns.remainingNanos(uuid, Ability.ZOOM) > 0, uuid::toString);
+            }
+            // the pass above dropped every expired entry
+            assertEquals(cooling.size(), cooldowns.size());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.BloodPointRank;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class LeaderboardTest {
+
+    /** The ranking done the slow way: BP descending, then whoever got there first; nobody at 0. */
+    private static final class Model {
+        final Map<UUID, int[]> entries = new HashMap<>(); // uuid -> { bp, seq }
+        int seq;
+
+        void update(UUID uuid, int bp) {
+            if (bp == 0)
+                entries.remove(uuid);
+            else
+                entries.put(uuid, new int[] { bp, seq++ });
+        }
+
+        List<BloodPointRank> ranking() {
+            List<Map.Entry<UUID, int[]>> sorted = new ArrayList<>(entries.entrySet());
+            sorted.sort(Comparator.<Map.Entry<UUID, int[]>>comparingInt(e -> -e.getValue()[0])
+                    .thenComparingInt(e -> e.getValue()[1]));
+            List<BloodPointRank> out = new ArrayList<>();
+            for (Map.Entry<UUID, int[]> e : sorted) {
+                out.add(new BloodPointRank(out.size() + 1, e.getKey(), e.getValue()[0]));
+            }
+            return out;
+        }
+    }
+
+    @Test
+    void tiesGoToWhoeverGotThereFirst() {
+        Leaderboard board = new Leaderboard();
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+        board.update(a, 3);
+        board.update(b, 3);
+        board.update(c, 4);
+        assertEquals(List.of(c, a, b), board.top().stream().map(BloodPointRank::uuid).toList());
+
+        // a leaves the bucket and comes back behind b
+        board.update(a, 2);
+        board.update(a, 3);
+        assertEquals(2, board.rank(b));
+        assertEquals(3, board.rank(a));
+        assertEquals(0, board.rank(UUID.randomUUID()));
+    }
+
+    @Test
+    void topListIsReusedUntilAChangeReachesIt() {
+        Leaderboard board = new Leaderboard();
+        for (int i = 0; i < 2 * Leaderboard.TOP_CACHED; i++) {
+            board.update(UUID.randomUUID(), CATSMPMC.MAX_BP);
+        }
+        List<BloodPointRank> top = board.top();
+        // below everyone in the top ranks
+        board.update(UUID.randomUUID(), 1);
+        assertSame(top, board.top());
+
+        UUID climber = UUID.randomUUID();
+        board.update(climber, 0);
+        board.update(climber, CATSMPMC.MAX_BP);
+        assertSame(top, board.top()); // appended behind the others with the same BP
+        board.update(top.get(0).uuid(), 0);
+        assertEquals(top.get(1).uuid(), board.top().get(0).uuid());
+    }
+
+    @Test
+    void matchesASortUnderRandomUpdates() {
+        Leaderboard board = new Leaderboard();
+        Model model = new Model();
+        Random rnd = new Random(17);
+        // enough players and moves that buckets fill up, get compacted and grow
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            players.add(UUID.randomUUID());
+        }
+
+        for (int round = 0; round < 40; round++) {
+            for (int op = 0; op < 300; op++) {
+                UUID uuid = players.get(rnd.nextInt(players.size()));
+                // skewed towards a few values so those buckets churn
+                int bp = rnd.nextInt(4) == 0 ? rnd.nextInt(CATSMPMC.MAX_BP + 1) : 2 + rnd.nextInt(2);
+                board.update(uuid, bp);
+                model.update(uuid, bp);
+            }
+            List<BloodPointRank> expected = model.ranking();
+            assertEquals(expected.size(), board.size());
+            assertEquals(expected, board.page(0, expected.size()));
+            assertEquals(expected.subList(0, Leaderboard.TOP_CACHED), board.top());
+            int from = rnd.nextInt(expected.size());
+            assertEquals(expected.subList(from, Math.min(from + 10, expected.size())), board.page(from, 10));
+            for (BloodPointRank r : expected) {
+                assertEquals(r.rank(), board.rank(r.uuid()));
+            }
+            for (UUID uuid : players) {
+                if (!model.entries.containsKey(uuid))
+                    assertEquals(0, board.rank(uuid));
+            }
+        }
+    }
+
+    @Test
+    void seedDoesNotOverwriteALiveChange() {
+        Leaderboard board = new Leaderboard();
+        UUID uuid = UUID.randomUUID(), broke = UUID.randomUUID();
+        board.update(uuid, 4);
+        board.seed(uuid, 1);
+        board.seed(UUID.randomUUID(), 2);
+        // lost everything while the scan was running: the stored value is older
+        board.update(broke, 0);
+        board.seed(broke, 3);
+        assertEquals(1, board.rank(uuid));
+        assertEquals(0, board.rank(broke));
+        assertEquals(2, board.size());
+
+        // after the scan, seeds are plain updates again
+        board.ready();
+        board.seed(broke, 3);
+        assertEquals(2, board.rank(broke));
+    }
+
+    @Test
+    void playersAtZeroAreNotKept() {
+        Leaderboard board = new Leaderboard();
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID();
+        board.seed(a, 0);
+        board.update(b, 2);
+        assertEquals(1, board.size());
+        assertEquals(0, board.rank(a));
+
+        board.update(b, 0);
+        assertEquals(0, board.size());
+        assertEquals(0, board.rank(b));
+        assertEquals(List.of(), board.top());
+        assertEquals(List.of(), board.page(0, 10));
+    }
+}
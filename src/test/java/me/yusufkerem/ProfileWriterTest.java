@@ -0,0 +1,145 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjIntConsumer;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProfileWriterTest {
+
+    private static final Logger LOG = Logger.getLogger("test");
+
+    /** Fails the next {@code failures} saves, then stores what it is given. */
+    private static final class FlakyStore implements ProfileStore {
+        final Map<UUID, ProfileSnapshot> saved = new ConcurrentHashMap<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        volatile int failures;
+
+        @Override
+        public ProfileSnapshot load(UUID uuid) {
+            return saved.get(uuid);
+        }
+
+        @Override
+        public void save(List<ProfileSnapshot> batch) throws IOException {
+            batchSizes.add(batch.size());
+            if (failures > 0) {
+                failures--;
+                throw new IOException("disk full");
+            }
+            for (ProfileSnapshot snap : batch) {
+                saved.put(snap.uuid(), snap);
+            }
+        }
+
+        @Override
+        public void scanBloodPoints(ObjIntConsumer<UUID> action) {
+        }
+    }
+
+    private static ProfileSnapshot snap(UUID uuid, int bp) {
+        return new ProfileSnapshot(uuid, Role.PASSIVE, bp, true, new byte[Ability.count()]);
+    }
+
+    @Test
+    void failedBatchIsRetriedOnTheNextFlush() {
+        FlakyStore store = new FlakyStore();
+        Map<UUID, ProfileSnapshot> live = new ConcurrentHashMap<>();
+        ProfileWriter writer = new ProfileWriter(LOG, store, live::get, new Metrics(false).timer("t", "flush"));
+        UUID uuid = UUID.randomUUID();
+
+        // an offline player evicted with unsaved changes: only the staged snapshot has them
+        live.put(uuid, snap(uuid, 4));
+        writer.markDirty(uuid);
+        writer.release(uuid);
+        live.remove(uuid);
+
+        store.failures = 1;
+        assertTrue(writer.flushAndWait(5));
+        assertNull(store.saved.get(uuid));
+        assertEquals(1, writer.failureCount());
+        assertEquals(4, writer.unsaved(uuid).bloodPoints());
+
+        assertTrue(writer.flushAndWait(5));
+        assertEquals(4, store.saved.get(uuid).bloodPoints());
+        assertNull(writer.unsaved(uuid));
+        assertEquals(List.of(1, 1), store.batchSizes);
+        writer.shutdown(5);
+    }
+
+    @Test
+    void newerSnapshotWinsOverTheRetry() {
+        FlakyStore store = new FlakyStore();
+        Map<UUID, ProfileSnapshot> live = new ConcurrentHashMap<>();
+        ProfileWriter writer = new ProfileWriter(LOG, store, live::get, new Metrics(false).timer("t", "flush"));
+        UUID uuid = UUID.randomUUID();
+
+        live.put(uuid, snap(uuid, 1));
+        writer.markDirty(uuid);
+        writer.release(uuid);
+        store.failures = 1;
+        assertTrue(writer.flushAndWait(5));
+
+        // released again with newer data before the retry
+        ProfileSnapshot newer = snap(uuid, 5);
+        live.put(uuid, newer);
+        writer.markDirty(uuid);
+        writer.release(uuid);
+        assertSame(newer, writer.unsaved(uuid));
+
+        assertTrue(writer.flushAndWait(5));
+        assertEquals(5, store.saved.get(uuid).bloodPoints());
+        writer.shutdown(5);
+    }
+
+    @Test
+    void evictionDuringFlushKeepsTheChange() throws InterruptedException {
+        FlakyStore store = new FlakyStore();
+        Map<UUID, ProfileSnapshot> live = new ConcurrentHashMap<>();
+        UUID uuid = UUID.randomUUID();
+        AtomicReference<ProfileWriter> ref = new AtomicReference<>();
+        AtomicReference<Thread> evictor = new AtomicReference<>();
+
+        // the flush has taken the player off the dirty set; before it snapshots them the
+        // offline cache evicts them, the way ProfileCache.evictOverflow does
+        ProfileWriter writer = new ProfileWriter(LOG, store, id -> {
+            if (evictor.get() == null) {
+                Thread t = new Thread(() -> {
+                    ref.get().release(id);
+                    live.remove(id);
+                });
+                evictor.set(t);
+                t.start();
+                // until it is done or waits for the flush
+                while (t.getState() != Thread.State.TERMINATED && t.getState() != Thread.State.BLOCKED) {
+                    Thread.onSpinWait();
+                }
+            }
+            return live.get(id);
+        }, new Metrics(false).timer("t", "flush"));
+        ref.set(writer);
+
+        live.put(uuid, snap(uuid, 7));
+        writer.markDirty(uuid);
+        assertTrue(writer.flushAndWait(5));
+        evictor.get().join();
+        assertTrue(writer.flushAndWait(5));
+
+        assertEquals(7, store.saved.get(uuid).bloodPoints());
+        assertNull(writer.unsaved(uuid));
+        writer.shutdown(5);
+    }
+}
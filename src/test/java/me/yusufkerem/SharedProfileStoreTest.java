@@ -0,0 +1,204 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SharedProfileStoreTest {
+
+    private static final Logger LOG = Logger.getLogger("test");
+
+    /** Two servers in one JVM; they find out about each other's saves on their next read. */
+    private static final SyncChannel SILENT = new SyncChannel() {
+        @Override
+        public void start(Receiver receiver) {
+        }
+
+        @Override
+        public void publish(UUID uuid, long version) {
+        }
+    };
+
+    @TempDir
+    Path dir;
+
+    private static ProfileSnapshot snap(UUID uuid, Role role, int bp, int claws, long version) {
+        byte[] levels = new byte[Ability.count()];
+        levels[Ability.CLAWS.ordinal()] = (byte) claws;
+        return new ProfileSnapshot(uuid, role, bp, true, levels, version);
+    }
+
+    @Test
+    void mergeAppliesOurChangesOnTopOfTheirs() {
+        UUID uuid = UUID.randomUUID();
+        ProfileSnapshot base = snap(uuid, Role.AGGRESSIVE, 2, 1, 4);
+        ProfileSnapshot ours = snap(uuid, Role.AGGRESSIVE, 4, 2, 4);
+        ProfileSnapshot theirs = snap(uuid, Role.AGGRESSIVE, 1, 1, 5);
+
+        ProfileSnapshot merged = ProfileSnapshot.merge(base, ours, theirs);
+        assertEquals(3, merged.bloodPoints());
+        assertEquals(2, merged.level(Ability.CLAWS));
+        assertEquals(5, merged.version());
+        assertSame(theirs, ProfileSnapshot.merge(null, ours, theirs));
+    }
+
+    @Test
+    void mergeClampsAndKeepsOnlyChangedFlags() {
+        UUID uuid = UUID.randomUUID();
+        ProfileSnapshot base = snap(uuid, Role.PASSIVE, 3, 0, 1);
+        // both earned BP: the sum is capped
+        ProfileSnapshot ours = new ProfileSnapshot(uuid, Role.AGGRESSIVE, 5, false, new byte[Ability.count()], 1);
+        ProfileSnapshot theirs = snap(uuid, Role.PASSIVE, 5, 0, 2);
+        ProfileSnapshot merged = ProfileSnapshot.merge(base, ours, theirs);
+        assertEquals(CATSMPMC.MAX_BP, merged.bloodPoints());
+        assertEquals(Role.AGGRESSIVE, merged.role());
+        assertFalse(merged.zoomCombo());
+
+        // both spent: never below zero
+        merged = ProfileSnapshot.merge(base, snap(uuid, Role.PASSIVE, 0, 0, 1), snap(uuid, Role.PASSIVE, 1, 0, 2));
+        assertEquals(0, merged.bloodPoints());
+        assertEquals(Role.PASSIVE, merged.role());
+    }
+
+    @Test
+    void concurrentSaveIsMergedNotOverwritten() throws IOException {
+        SharedProfileStore a = new SharedProfileStore(LOG, dir, SILENT);
+        SharedProfileStore b = new SharedProfileStore(LOG, dir, SILENT);
+        UUID uuid = UUID.randomUUID();
+
+        // version 0: a new player, written as is
+        a.save(List.of(snap(uuid, Role.AGGRESSIVE, 2, 0, 0)));
+        ProfileSnapshot seenByA = a.load(uuid);
+        ProfileSnapshot seenByB = b.load(uuid);
+        assertEquals(1, seenByA.version());
+        assertEquals(1, seenByB.version());
+
+        // a gains 1 BP and saves first
+        a.save(List.of(snap(uuid, Role.AGGRESSIVE, 3, 0, 1)));
+        assertEquals(2, a.load(uuid).version());
+
+        // b, still based on version 1, spends 2 BP on Claws: the compare fails and it merges
+        b.save(List.of(snap(uuid, Role.AGGRESSIVE, 0, 1, 1)));
+        ProfileSnapshot stored = a.load(uuid);
+        assertEquals(3, stored.version());
+        assertEquals(1, stored.bloodPoints());
+        assertEquals(1, stored.level(Ability.CLAWS));
+        assertEquals(1, b.mergeCount());
+        assertEquals(0, b.conflictCount());
+    }
+
+    @Test
+    void saveWithoutAMergeBaseIsDropped() throws IOException {
+        SharedProfileStore a = new SharedProfileStore(LOG, dir, SILENT);
+        UUID uuid = UUID.randomUUID();
+        a.save(List.of(snap(uuid, Role.PASSIVE, 2, 0, 0)));
+        a.save(List.of(snap(uuid, Role.PASSIVE, 4, 0, 1)));
+
+        // based on version 1, but this store never saw version 1
+        SharedProfileStore b = new SharedProfileStore(LOG, dir, SILENT);
+        b.save(List.of(snap(uuid, Role.PASSIVE, 0, 0, 1)));
+        assertEquals(1, b.conflictCount());
+        ProfileSnapshot stored = a.load(uuid);
+        assertEquals(2, stored.version());
+        assertEquals(4, stored.bloodPoints());
+
+        // once it has read the current version, its next save goes through
+        b.save(List.of(snap(uuid, Role.PASSIVE, 5, 0, 2)));
+        assertEquals(3, a.load(uuid).version());
+        assertEquals(1, b.saveCount());
+    }
+
+    @Test
+    void newPlayerOnTwoServersIsMergedNotOverwritten() throws IOException {
+        SharedProfileStore a = new SharedProfileStore(LOG, dir, SILENT);
+        SharedProfileStore b = new SharedProfileStore(LOG, dir, SILENT);
+        UUID uuid = UUID.randomUUID();
+
+        // a created them and saved first: rolled Aggressive, spent 1 BP on Claws there
+        a.save(List.of(snap(uuid, Role.AGGRESSIVE, 2, 1, 0)));
+        // b found no file when they joined, rolled Passive and earned 1 BP
+        b.save(List.of(snap(uuid, Role.PASSIVE, 4, 0, 0)));
+
+        ProfileSnapshot stored = a.load(uuid);
+        assertEquals(2, stored.version());
+        assertEquals(Role.AGGRESSIVE, stored.role());
+        assertEquals(3, stored.bloodPoints());
+        assertEquals(1, stored.level(Ability.CLAWS));
+        assertEquals(1, b.mergeCount());
+
+        // an import is meant to win, so it is written as is
+        b.replace(List.of(snap(uuid, Role.PASSIVE, 1, 2, 0)));
+        stored = a.load(uuid);
+        assertEquals(3, stored.version());
+        assertEquals(Role.PASSIVE, stored.role());
+        assertEquals(1, stored.bloodPoints());
+        assertEquals(2, stored.level(Ability.CLAWS));
+    }
+
+    @Test
+    void scanSkipsFilesThatAreNotProfiles() throws IOException {
+        SharedProfileStore store = new SharedProfileStore(LOG, dir, SILENT);
+        UUID uuid = UUID.randomUUID();
+        store.save(List.of(snap(uuid, Role.PASSIVE, 4, 0, 0)));
+        Path shard = dir.resolve("profiles").resolve(uuid.toString().substring(0, 2));
+        Files.writeString(shard.resolve("notes.dat"), "hello");
+        Files.copy(shard.resolve(uuid + ".dat"), shard.resolve(uuid + " (copy).dat"));
+
+        Map<UUID, Integer> scanned = new HashMap<>();
+        store.scanBloodPoints(scanned::put);
+        assertEquals(Map.of(uuid, 4), scanned);
+    }
+
+    @Test
+    void savesToOneShardFromManyThreadsWaitInsteadOfFailing() throws Exception {
+        SharedProfileStore a = new SharedProfileStore(LOG, dir, SILENT);
+        SharedProfileStore b = new SharedProfileStore(LOG, dir, SILENT);
+        Random rnd = new Random(3);
+        // every uuid starts with "ab": one shard, one .lock file
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            uuids.add(new UUID(0xabL << 56 | rnd.nextLong() >>> 8, rnd.nextLong()));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < uuids.size(); i++) {
+                UUID uuid = uuids.get(i);
+                SharedProfileStore store = i % 2 == 0 ? a : b;
+                futures.add(pool.submit(() -> {
+                    store.save(List.of(snap(uuid, Role.PASSIVE, 1, 0, 0)));
+                    return store.load(uuid);
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        for (UUID uuid : uuids) {
+            assertEquals(1, a.load(uuid).version());
+        }
+        assertEquals(64, a.saveCount() + b.saveCount());
+    }
+}
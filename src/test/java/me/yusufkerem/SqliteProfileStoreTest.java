@@ -0,0 +1,50 @@
+package me.yusufkerem;
+
+import me.yusufkerem.CATSMPMC.Role;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SqliteProfileStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void opensAndLoadsThroughReadOnlyConnections() throws Exception {
+        File file = dir.resolve("profiles.db").toFile();
+        UUID uuid = UUID.randomUUID();
+        byte[] levels = new byte[Ability.count()];
+        levels[Ability.RABIES.ordinal()] = 2;
+
+        SqliteProfileStore store = new SqliteProfileStore(file, 2);
+        try {
+            assertNull(store.load(uuid));
+            store.save(List.of(new ProfileSnapshot(uuid, Role.AGGRESSIVE, 4, false, levels)));
+            ProfileSnapshot loaded = store.load(uuid);
+            assertNotNull(loaded);
+            assertEquals(Role.AGGRESSIVE, loaded.role());
+            assertEquals(4, loaded.bloodPoints());
+            assertEquals(2, loaded.level(Ability.RABIES));
+            assertEquals(1, store.count());
+        } finally {
+            store.close();
+        }
+
+        // and again on an existing file
+        store = new SqliteProfileStore(file, 1);
+        try {
+            assertEquals(4, store.load(uuid).bloodPoints());
+        } finally {
+            store.close();
+        }
+    }
+}